@@ -0,0 +1,105 @@
+package com.oblador.keychain;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.oblador.keychain.cipherStorage.CipherStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable table of the best cipher storage for each combination of biometry requirement and requested security
+ * level. Table is built from storages ranked once by capability level and rebuilt only when device capabilities
+ * change, selection itself is an array lookup.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class CipherSelection {
+  //region Constants
+  private static final SecurityLevel[] LEVELS = SecurityLevel.values();
+  //endregion
+
+  //region Members
+  /** Best storages by [biometry requested][security level ordinal], NULL - no storage satisfies the level. */
+  private final CipherStorage[][] table = new CipherStorage[2][LEVELS.length];
+  //endregion
+
+  /**
+   * Build table for the device state.
+   *
+   * @param ranked              storages supported on the current API level, the best first. See {@link #rank(Collection)}.
+   * @param isBiometryAvailable keys bound to strong biometry can be used on the device.
+   *                            See {@link DeviceCapabilities#isAuthBoundKeyAvailable()}.
+   */
+  public CipherSelection(@NonNull final List<CipherStorage> ranked, final boolean isBiometryAvailable) {
+    for (int row = 0; row < table.length; row++) {
+      // biometric storage is skipped if biometry is not requested or not configured properly
+      final boolean isBiometry = (1 == row) && isBiometryAvailable;
+      final CipherStorage[] levels = table[row];
+
+      for (CipherStorage storage : ranked) {
+        if (storage.isBiometrySupported() && !isBiometry) continue;
+
+        for (SecurityLevel level : LEVELS) {
+          if (null == levels[level.ordinal()] && storage.securityLevel().satisfiesSafetyThreshold(level)) {
+            levels[level.ordinal()] = storage;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Order storages supported on the current API level by capability level, the best first. On equal capabilities
+   * later registered storage wins.
+   */
+  @NonNull
+  public static List<CipherStorage> rank(@NonNull final Collection<CipherStorage> storages) {
+    final List<CipherStorage> ranked = new ArrayList<>(storages.size());
+
+    for (CipherStorage storage : storages) {
+      if (storage.getMinSupportedApiLevel() <= Build.VERSION.SDK_INT) ranked.add(storage);
+    }
+
+    // sort is stable, reverse first to put later registered storage ahead of equal ones
+    Collections.reverse(ranked);
+    Collections.sort(ranked, (left, right) -> Integer.compare(right.getCapabilityLevel(), left.getCapabilityLevel()));
+
+    return Collections.unmodifiableList(ranked);
+  }
+
+  /** Get storage with the best capabilities, NULL - no storage supports current API level. */
+  @Nullable
+  public CipherStorage get(final boolean useBiometry) {
+    return get(useBiometry, SecurityLevel.ANY);
+  }
+
+  /** Get storage with the best capabilities that satisfies the level, NULL - no such storage. */
+  @Nullable
+  public CipherStorage get(final boolean useBiometry, @NonNull final SecurityLevel level) {
+    return table[useBiometry ? 1 : 0][level.ordinal()];
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder("CipherSelection{");
+    String separator = "";
+
+    for (int row = 0; row < table.length; row++) {
+      for (SecurityLevel level : LEVELS) {
+        final CipherStorage storage = table[row][level.ordinal()];
+
+        sb.append(separator).append(1 == row ? "biometry" : "none").append('/').append(level.name()).append('=')
+          .append(null == storage ? null : storage.getCipherStorageName());
+        separator = ", ";
+      }
+    }
+
+    return sb.append('}').toString();
+  }
+}
@@ -0,0 +1,208 @@
+package com.oblador.keychain;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of decrypted credentials, service to credentials. Every entry lives for a limited time, the
+ * cache keeps own copy in char arrays and zeroes them on expiration, eviction and removal.
+ *
+ * Zeroing limits only the lifetime of the cache copy. Credentials cross the bridge as immutable strings: the
+ * decryption result the entry is built from and the strings returned by each hit stay on the heap until garbage
+ * collection, the cache can not wipe them.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class CredentialsCache {
+  //region Constants
+  /** Default number of cached services. */
+  public static final int DEFAULT_CAPACITY = 8;
+  /** Default time of keeping decrypted credentials in memory. */
+  public static final long DEFAULT_TTL = TimeUnit.SECONDS.toMillis(60);
+  //endregion
+
+  //region Members
+  /** Max number of cached services. */
+  private final int capacity;
+  /** Time of keeping entry in memory, millis. */
+  private final long ttl;
+  /** Entries in access order, eldest evicted first. Guarded by itself. */
+  private final LinkedHashMap<String, Entry> entries;
+  /** Incremented on each invalidation, reads started before it should not populate the cache. */
+  private final AtomicLong generation = new AtomicLong();
+  /** Number of reads served from memory. */
+  private final AtomicLong hits = new AtomicLong();
+  /** Number of reads that went to storage. */
+  private final AtomicLong misses = new AtomicLong();
+  //endregion
+
+  public CredentialsCache() {
+    this(DEFAULT_CAPACITY, DEFAULT_TTL);
+  }
+
+  public CredentialsCache(final int capacity, final long ttlMillis) {
+    if (capacity < 1) throw new IllegalArgumentException("Capacity should be positive");
+    if (ttlMillis < 1) throw new IllegalArgumentException("TTL should be positive");
+
+    this.capacity = capacity;
+    this.ttl = ttlMillis;
+    this.entries = new LinkedHashMap<String, Entry>(capacity, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+        final boolean evict = size() > CredentialsCache.this.capacity;
+        if (evict) eldest.getValue().wipe();
+
+        return evict;
+      }
+    };
+  }
+
+  /** Get cached credentials of the service, NULL - decryption is needed. */
+  @Nullable
+  public Cached get(@NonNull final String service) {
+    Cached result = null;
+
+    synchronized (entries) {
+      final Entry entry = entries.get(service);
+
+      if (null != entry) {
+        if (entry.expiresAt > SystemClock.elapsedRealtime()) {
+          result = entry.toCached();
+        } else {
+          entries.remove(service);
+          entry.wipe();
+        }
+      }
+    }
+
+    (null == result ? misses : hits).incrementAndGet();
+
+    return result;
+  }
+
+  /** Generation to pass into {@link #put(String, String, DecryptionResult, long)}, taken before the read starts. */
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Cache credentials of the service. Ignored if cache was invalidated after the read started, otherwise entry
+   * written in between could be shadowed by the older value.
+   */
+  public void put(@NonNull final String service,
+                  @NonNull final String storage,
+                  @NonNull final DecryptionResult result,
+                  final long readGeneration) {
+    final Entry entry = new Entry(storage, result, SystemClock.elapsedRealtime() + ttl);
+
+    synchronized (entries) {
+      if (readGeneration != generation.get()) {
+        entry.wipe();
+        return;
+      }
+
+      final Entry previous = entries.put(service, entry);
+      if (null != previous) previous.wipe();
+    }
+  }
+
+  /** Forget credentials of the changed or removed service. */
+  public void remove(@NonNull final String service) {
+    synchronized (entries) {
+      generation.incrementAndGet();
+
+      final Entry entry = entries.remove(service);
+      if (null != entry) entry.wipe();
+    }
+  }
+
+  /** Wipe all entries, e.g. app goes to background or system asks to release memory. */
+  public void clear() {
+    synchronized (entries) {
+      generation.incrementAndGet();
+
+      for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+        it.next().wipe();
+        it.remove();
+      }
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public long getTtl() {
+    return ttl;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  //region Nested declarations
+
+  /** Cache hit: credentials and name of the storage that keeps them. */
+  public static final class Cached {
+    @NonNull
+    public final String storage;
+    @NonNull
+    public final DecryptionResult result;
+
+    Cached(@NonNull final String storage, @NonNull final DecryptionResult result) {
+      this.storage = storage;
+      this.result = result;
+    }
+  }
+
+  /** Cached credentials with expiration time. */
+  private static final class Entry {
+    final String storage;
+    /** Cache own copy of the credentials, zeroed on wipe. */
+    final char[] username;
+    final char[] password;
+    final SecurityLevel level;
+    /** Moment of expiration, {@link SystemClock#elapsedRealtime()} based. */
+    final long expiresAt;
+
+    Entry(@NonNull final String storage, @NonNull final DecryptionResult result, final long expiresAt) {
+      this.storage = storage;
+      this.username = result.username.toCharArray();
+      this.password = result.password.toCharArray();
+      this.level = result.getSecurityLevel();
+      this.expiresAt = expiresAt;
+    }
+
+    /** Strings of the result are new instances on each call, they are out of reach of {@link #wipe()}. */
+    @NonNull
+    Cached toCached() {
+      return new Cached(storage, new DecryptionResult(new String(username), new String(password), level));
+    }
+
+    void wipe() {
+      Arrays.fill(username, '\0');
+      Arrays.fill(password, '\0');
+    }
+  }
+  //endregion
+}
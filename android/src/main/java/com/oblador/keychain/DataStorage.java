@@ -0,0 +1,56 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+
+import java.util.Map;
+import java.util.Set;
+
+/** Persistent storage of the encrypted credentials. */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public interface DataStorage {
+  /** Encrypted credentials together with name of the cipher storage used for encryption. */
+  class ResultSet extends CipherStorage.CipherResult<byte[]> {
+    @KnownCiphers
+    public final String cipherStorageName;
+
+    public ResultSet(@KnownCiphers final String cipherStorageName, final byte[] usernameBytes, final byte[] passwordBytes) {
+      super(usernameBytes, passwordBytes);
+
+      this.cipherStorageName = cipherStorageName;
+    }
+  }
+
+  /** Get encrypted entry of the service, NULL if there is no entry. */
+  @Nullable
+  ResultSet getEncryptedEntry(@NonNull final String service);
+
+  /** Get name of the cipher storage of the service entry without reading the entry, NULL if there is no entry. */
+  @Nullable
+  @KnownCiphers
+  String getEntryCipherStorageName(@NonNull final String service);
+
+  /** Remove entry of the service. */
+  void removeEntry(@NonNull final String service);
+
+  /** Store encrypted entry of the service. */
+  void storeEncryptedEntry(@NonNull final String service, @NonNull final EncryptionResult encryptionResult);
+
+  /** Store several encrypted entries at once. */
+  void storeEncryptedEntries(@NonNull final Map<String, EncryptionResult> entries);
+
+  /**
+   * List all types of cipher which are involved in en/decryption of the data stored herein.
+   *
+   * @return set of cipher names
+   */
+  Set<String> getUsedCipherNames();
+
+  /** List all services that have an entry in this storage. */
+  @NonNull
+  Set<String> getServices();
+}
@@ -34,6 +34,14 @@ public class DeviceAvailability {
         return context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_IRIS);
     }
 
+    /** Is device protected by PIN, pattern or password. */
+    public static boolean isKeyguardSecure(@NonNull final Context context) {
+        final KeyguardManager km =
+          (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
+
+        return null != km && km.isKeyguardSecure();
+    }
+
   /** Check is permissions granted for biometric things. */
   public static boolean isPermissionsGranted(@NonNull final Context context) {
     // before api23 no permissions for biometric, no hardware == no permissions
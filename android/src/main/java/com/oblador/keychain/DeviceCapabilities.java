@@ -0,0 +1,113 @@
+package com.oblador.keychain;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable snapshot of the device capabilities that influence cipher storage selection. Probe costs several
+ * calls of the system services, so snapshot is taken once and replaced only when capabilities could change:
+ * application returns to foreground or biometric enrollment changed.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class DeviceCapabilities {
+  //region Members
+  /** Fingerprint hardware feature. */
+  public final boolean hasFingerprint;
+  /** Face recognition hardware feature. */
+  public final boolean hasFace;
+  /** Iris recognition hardware feature. */
+  public final boolean hasIris;
+  /** Class 3 (strong) biometry is enrolled and ready to authenticate. */
+  public final boolean isStrongBiometry;
+  /** Device is protected by PIN, pattern or password. */
+  public final boolean isKeyguardSecure;
+  //endregion
+
+  public DeviceCapabilities(final boolean hasFingerprint,
+                            final boolean hasFace,
+                            final boolean hasIris,
+                            final boolean isStrongBiometry,
+                            final boolean isKeyguardSecure) {
+    this.hasFingerprint = hasFingerprint;
+    this.hasFace = hasFace;
+    this.hasIris = hasIris;
+    this.isStrongBiometry = isStrongBiometry;
+    this.isKeyguardSecure = isKeyguardSecure;
+  }
+
+  /** Take snapshot of the current device state. */
+  @NonNull
+  public static DeviceCapabilities probe(@NonNull final Context context) {
+    return new DeviceCapabilities(
+      DeviceAvailability.isFingerprintAuthAvailable(context),
+      DeviceAvailability.isFaceAuthAvailable(context),
+      DeviceAvailability.isIrisAuthAvailable(context),
+      DeviceAvailability.isStrongBiometricAuthAvailable(context),
+      DeviceAvailability.isKeyguardSecure(context));
+  }
+
+  /** True - if fingerprint hardware available and configured, otherwise false. */
+  public boolean isFingerprintAuthAvailable() {
+    return isStrongBiometry && hasFingerprint;
+  }
+
+  /** True - if face recognition hardware available and configured, otherwise false. */
+  public boolean isFaceAuthAvailable() {
+    return isStrongBiometry && hasFace;
+  }
+
+  /** True - if iris recognition hardware available and configured, otherwise false. */
+  public boolean isIrisAuthAvailable() {
+    return isStrongBiometry && hasIris;
+  }
+
+  /** True - if any kind of strong biometry can be used, otherwise false. */
+  public boolean isBiometryAvailable() {
+    return isFingerprintAuthAvailable() || isFaceAuthAvailable() || isIrisAuthAvailable();
+  }
+
+  /**
+   * True - if device lock or biometry changed since the previous snapshot, keys that require user authentication
+   * could be invalidated by such change. False - no previous snapshot or nothing changed.
+   */
+  public boolean isKeyStateChanged(@Nullable final DeviceCapabilities previous) {
+    return null != previous
+      && (isStrongBiometry != previous.isStrongBiometry || isKeyguardSecure != previous.isKeyguardSecure);
+  }
+
+  /**
+   * True - if keys that require user authentication can be generated and used: device lock is set and strong
+   * biometry is ready. Without device lock keystore refuses to generate such keys.
+   */
+  public boolean isAuthBoundKeyAvailable() {
+    return isKeyguardSecure && isBiometryAvailable();
+  }
+
+  /** Get name of the strong biometry available on the device, NULL if there is none. */
+  @Nullable
+  public String getBiometryType() {
+    if (isFingerprintAuthAvailable()) {
+      return KeychainModule.FINGERPRINT_SUPPORTED_NAME;
+    } else if (isFaceAuthAvailable()) {
+      return KeychainModule.FACE_SUPPORTED_NAME;
+    } else if (isIrisAuthAvailable()) {
+      return KeychainModule.IRIS_SUPPORTED_NAME;
+    }
+
+    return null;
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    return "DeviceCapabilities{" +
+      "fingerprint=" + hasFingerprint +
+      ", face=" + hasFace +
+      ", iris=" + hasIris +
+      ", strongBiometry=" + isStrongBiometry +
+      ", keyguardSecure=" + isKeyguardSecure +
+      '}';
+  }
+}
@@ -0,0 +1,201 @@
+package com.oblador.keychain;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor of the keychain operations. Operations on the same alias run in order of submission, operations
+ * on different aliases run in parallel. Operation on several aliases (batch) waits for all of them.
+ *
+ * Pool size 0 runs operations on the calling thread, i.e. on the React Native native-modules thread.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class KeychainExecutor {
+  //region Constants
+  /** Idle time after which worker thread is released. */
+  public static final long KEEP_ALIVE_SECONDS = 30;
+  /** Thread name prefix, helps to find keychain operations in traces. */
+  public static final String THREAD_NAME = "keychain-worker";
+
+  private static final String LOG_TAG = KeychainExecutor.class.getSimpleName();
+  //endregion
+
+  //region Members
+  /** Queues of operations by alias, head of the queue is running or ready to run. Guarded by itself. */
+  private final Map<String, ArrayDeque<Operation>> queues = new HashMap<>();
+  /** Counter of created threads. */
+  private final AtomicInteger created = new AtomicInteger();
+  /** Worker threads, NULL - run on the calling thread. Guarded by queues. */
+  @Nullable
+  private ThreadPoolExecutor pool;
+  //endregion
+
+  public KeychainExecutor() {
+    this(0);
+  }
+
+  public KeychainExecutor(final int poolSize) {
+    setPoolSize(poolSize);
+  }
+
+  /** Change number of worker threads, 0 - run operations on the calling thread. */
+  public void setPoolSize(final int poolSize) {
+    if (poolSize < 0) throw new IllegalArgumentException("Pool size should be positive or zero");
+
+    ThreadPoolExecutor released = null;
+
+    synchronized (queues) {
+      if (0 == poolSize) {
+        released = pool;
+        pool = null;
+      } else if (null == pool) {
+        pool = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), this::newThread);
+        pool.allowCoreThreadTimeOut(true);
+      } else if (poolSize > pool.getMaximumPoolSize()) {
+        pool.setMaximumPoolSize(poolSize);
+        pool.setCorePoolSize(poolSize);
+      } else {
+        pool.setCorePoolSize(poolSize);
+        pool.setMaximumPoolSize(poolSize);
+      }
+    }
+
+    // already submitted operations still complete
+    if (null != released) released.shutdown();
+  }
+
+  /** Number of worker threads, 0 - operations run on the calling thread. */
+  public int getPoolSize() {
+    synchronized (queues) {
+      return (null == pool) ? 0 : pool.getMaximumPoolSize();
+    }
+  }
+
+  /** Run operation on one alias. */
+  public void execute(@NonNull final String alias, @NonNull final Runnable runnable) {
+    execute(Collections.singletonList(alias), runnable);
+  }
+
+  /** Run operation after all previously submitted operations on any of provided aliases. */
+  public void execute(@NonNull final Collection<String> aliases, @NonNull final Runnable runnable) {
+    final Operation operation = new Operation(new ArrayList<>(new LinkedHashSet<>(aliases)), runnable);
+    final boolean ready;
+
+    synchronized (queues) {
+      for (String alias : operation.aliases) {
+        ArrayDeque<Operation> queue = queues.get(alias);
+
+        if (null == queue) {
+          queue = new ArrayDeque<>();
+          queues.put(alias, queue);
+        }
+
+        queue.add(operation);
+        if (queue.size() > 1) operation.blockers++;
+      }
+
+      ready = 0 == operation.blockers;
+    }
+
+    if (ready) submit(operation);
+  }
+
+  /** Stop worker threads, already submitted operations still complete. */
+  public void shutdown() {
+    setPoolSize(0);
+  }
+
+  /** How many worker threads were created during instance lifetime. */
+  public int getCreatedThreadsCount() {
+    return created.get();
+  }
+
+  private void submit(@NonNull final Operation operation) {
+    final ThreadPoolExecutor workers;
+
+    synchronized (queues) {
+      workers = pool;
+    }
+
+    if (null == workers) {
+      run(operation);
+    } else {
+      workers.execute(() -> run(operation));
+    }
+  }
+
+  private void run(@NonNull final Operation operation) {
+    try {
+      operation.runnable.run();
+    } catch (Throwable fail) {
+      Log.e(LOG_TAG, "Keychain operation failed: " + fail.getMessage(), fail);
+    } finally {
+      for (Operation next : complete(operation)) {
+        submit(next);
+      }
+    }
+  }
+
+  /** Release aliases of the completed operation, return operations that are not blocked anymore. */
+  @NonNull
+  private List<Operation> complete(@NonNull final Operation operation) {
+    final List<Operation> ready = new ArrayList<>(1);
+
+    synchronized (queues) {
+      for (String alias : operation.aliases) {
+        final ArrayDeque<Operation> queue = queues.get(alias);
+        queue.poll();
+
+        final Operation next = queue.peek();
+
+        if (null == next) {
+          queues.remove(alias);
+        } else if (0 == --next.blockers) {
+          ready.add(next);
+        }
+      }
+    }
+
+    return ready;
+  }
+
+  @NonNull
+  private Thread newThread(@NonNull final Runnable runnable) {
+    final Thread thread = new Thread(runnable, THREAD_NAME + "-" + created.incrementAndGet());
+    thread.setDaemon(true);
+
+    return thread;
+  }
+
+  //region Nested declarations
+
+  /** Submitted operation with its aliases. */
+  private static final class Operation {
+    final List<String> aliases;
+    final Runnable runnable;
+    /** Number of aliases on which previous operations are not completed yet. Guarded by queues. */
+    int blockers;
+
+    Operation(@NonNull final List<String> aliases, @NonNull final Runnable runnable) {
+      this.aliases = aliases;
+      this.runnable = runnable;
+    }
+  }
+  //endregion
+}
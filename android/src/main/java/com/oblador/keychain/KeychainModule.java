@@ -1,50 +1,73 @@
 package com.oblador.keychain;
 
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
 import android.os.Build;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
 import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.StringDef;
+import androidx.annotation.VisibleForTesting;
 import androidx.biometric.BiometricManager;
 import androidx.biometric.BiometricPrompt.PromptInfo;
 
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
-import com.oblador.keychain.PrefsStorage.ResultSet;
+import com.oblador.keychain.DataStorage.ResultSet;
+import com.oblador.keychain.cipherStorage.CapabilitiesCache;
 import com.oblador.keychain.cipherStorage.CipherStorage;
 import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
 import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
 import com.oblador.keychain.cipherStorage.CipherStorageBase;
 import com.oblador.keychain.cipherStorage.CipherStorageFacebookConceal;
 import com.oblador.keychain.cipherStorage.CipherStorageKeystoreAesCbc;
+import com.oblador.keychain.cipherStorage.CipherStorageKeystoreAesEnvelope;
+import com.oblador.keychain.cipherStorage.CipherStorageKeystoreAesGcm;
+import com.oblador.keychain.cipherStorage.CipherStorageKeystoreRsaAesHybrid;
 import com.oblador.keychain.cipherStorage.CipherStorageKeystoreRsaEcb;
+import com.oblador.keychain.cipherStorage.KeyPool;
+import com.oblador.keychain.decryptionHandler.BatchAuthentication;
+import com.oblador.keychain.decryptionHandler.CallbackExecutor;
 import com.oblador.keychain.decryptionHandler.DecryptionResultHandler;
 import com.oblador.keychain.decryptionHandler.DecryptionResultHandlerProvider;
+import com.oblador.keychain.decryptionHandler.ResultFuture;
 import com.oblador.keychain.exceptions.CryptoFailedException;
 import com.oblador.keychain.exceptions.EmptyParameterException;
 import com.oblador.keychain.exceptions.KeyStoreAccessException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.crypto.Cipher;
 
 import static com.facebook.react.bridge.Arguments.makeNativeArray;
 
 @SuppressWarnings({"unused", "WeakerAccess", "SameParameterValue"})
-public class KeychainModule extends ReactContextBaseJavaModule {
+public class KeychainModule extends ReactContextBaseJavaModule
+  implements LifecycleEventListener, ComponentCallbacks2 {
   //region Constants
   public static final String KEYCHAIN_MODULE = "RNKeychainManager";
   public static final String FINGERPRINT_SUPPORTED_NAME = "Fingerprint";
@@ -52,6 +75,8 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   public static final String IRIS_SUPPORTED_NAME = "Iris";
   public static final String EMPTY_STRING = "";
   public static final String WARMING_UP_ALIAS = "warmingUp";
+  /** Separator of the read fingerprint parts, not expected in service names and prompt texts. */
+  private static final String FINGERPRINT_SEPARATOR = "\u0000";
 
   private static final String LOG_TAG = KeychainModule.class.getSimpleName();
 
@@ -95,6 +120,11 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     String USERNAME = "username";
     String PASSWORD = "password";
     String STORAGE = "storage";
+
+    /** Error code of the failed batch entry. */
+    String ERROR = "error";
+    /** Error message of the failed batch entry. */
+    String MESSAGE = "message";
   }
 
   /** Known error codes. */
@@ -108,7 +138,8 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   }
 
   /** Supported ciphers. */
-  @StringDef({KnownCiphers.FB, KnownCiphers.AES, KnownCiphers.RSA})
+  @StringDef({KnownCiphers.FB, KnownCiphers.AES, KnownCiphers.RSA, KnownCiphers.ENVELOPE, KnownCiphers.AES_GCM,
+    KnownCiphers.RSA_HYBRID})
   public @interface KnownCiphers {
     /** Facebook conceal compatibility lib in use. */
     String FB = "FacebookConceal";
@@ -116,6 +147,12 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     String AES = "KeystoreAESCBC";
     /** Biometric + RSA. */
     String RSA = "KeystoreRSAECB";
+    /** Keystore master key wraps in-memory AES data key. */
+    String ENVELOPE = "KeystoreAESEnvelope";
+    /** AES authenticated encryption. */
+    String AES_GCM = "KeystoreAESGCM";
+    /** Biometric + RSA wrapped AES content key. */
+    String RSA_HYBRID = "KeystoreRSAHybrid";
   }
 
   /** Secret manipulation rules. */
@@ -127,31 +164,93 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   //endregion
 
   //region Members
-  /** Name-to-instance lookup  map. */
-  private final Map<String, CipherStorage> cipherStorageMap = new HashMap<>();
-  /** Shared preferences storage. */
-  private final PrefsStorage prefsStorage;
+  /** Name-to-instance lookup  map. Keeps registration order, later registered storage wins capability ties. */
+  private final Map<String, CipherStorage> cipherStorageMap = new LinkedHashMap<>();
+  /** Storages supported on the current API level ranked by capabilities, the best first. */
+  private final List<CipherStorage> rankedStorages;
+  /** Storage of the encrypted entries. */
+  private final DataStorage dataStorage;
+  /** Results of the keystore capability probes persisted between process starts. */
+  private final CapabilitiesCache capabilitiesCache;
+  /** Pre-generated RSA keys shared by biometric storages, NULL on old API. */
+  @Nullable
+  private final KeyPool keyPool;
+  /** Reads in progress by read fingerprint. Concurrent reads of the same service share one decryption. */
+  private final ConcurrentMap<String, ResultFuture<Credentials>> inFlightReads = new ConcurrentHashMap<>();
+  /** Decrypted credentials kept in memory for repeated reads, NULL - caching is disabled. */
+  @Nullable
+  private volatile CredentialsCache credentialsCache;
+  /** Cache credentials of biometric storages too, i.e. skip the prompt while entry is cached. */
+  private volatile boolean cacheBiometricCredentials;
+  /** Locks of read-modify-write sequences on the same alias: write, reset and migration. */
+  private final StripedLocks aliasLocks = new StripedLocks();
+  /** Executor of the keychain operations, keeps order of operations on the same alias. */
+  private final KeychainExecutor executor = new KeychainExecutor();
+  /** Executor of the biometric prompt callbacks shared by all reads, released with the module. */
+  private final CallbackExecutor callbackExecutor = new CallbackExecutor();
+  /** Device capabilities with storages selected for them, NULL - stale, probed again on next access. */
+  @Nullable
+  private volatile Capabilities capabilities;
+  /** Snapshot replaced by the last invalidation, compared with the next probe to detect device state change. */
+  @Nullable
+  private volatile DeviceCapabilities staleDevice;
   //endregion
 
   //region Initialization
 
   /** Default constructor. */
   public KeychainModule(@NonNull final ReactApplicationContext reactContext) {
+    this(reactContext, new PrefsStorage(reactContext));
+  }
+
+  /** Constructor with custom storage of the encrypted entries. */
+  public KeychainModule(@NonNull final ReactApplicationContext reactContext,
+                        @NonNull final DataStorage storage) {
     super(reactContext);
-    prefsStorage = new PrefsStorage(reactContext);
+    dataStorage = storage;
+    capabilitiesCache = new CapabilitiesCache(reactContext);
 
     addCipherStorageToMap(new CipherStorageFacebookConceal(reactContext));
     addCipherStorageToMap(new CipherStorageKeystoreAesCbc());
 
     // we have a references to newer api that will fail load of app classes in old androids OS
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-      addCipherStorageToMap(new CipherStorageKeystoreRsaEcb());
+      final CipherStorageKeystoreRsaEcb rsa = new CipherStorageKeystoreRsaEcb();
+      final CipherStorageKeystoreRsaAesHybrid hybrid = new CipherStorageKeystoreRsaAesHybrid();
+
+      // both storages use keys of the same specification, assignments are kept even if pool is disabled
+      keyPool = new KeyPool(reactContext, rsa);
+      rsa.setKeyPool(keyPool);
+      hybrid.setKeyPool(keyPool);
+
+      addCipherStorageToMap(rsa);
+      // same capabilities as RSA, registered later to win the selection
+      addCipherStorageToMap(hybrid);
+      addCipherStorageToMap(new CipherStorageKeystoreAesEnvelope(reactContext));
+      // same capabilities as AES/CBC, registered later to win the selection
+      addCipherStorageToMap(new CipherStorageKeystoreAesGcm());
+    } else {
+      keyPool = null;
     }
+
+    // capabilities of the storages never change, only device capabilities do
+    rankedStorages = CipherSelection.rank(cipherStorageMap.values());
+
+    // unwrapped data keys should not outlive the foreground session
+    reactContext.addLifecycleEventListener(this);
+    // cached key handles are released when system is short of memory
+    reactContext.registerComponentCallbacks(this);
   }
 
   /** Allow initialization in chain. */
   public static KeychainModule withWarming(@NonNull final ReactApplicationContext reactContext) {
-    final KeychainModule instance = new KeychainModule(reactContext);
+    return withWarming(reactContext, new PrefsStorage(reactContext));
+  }
+
+  /** Allow initialization in chain with custom storage of the encrypted entries. */
+  public static KeychainModule withWarming(@NonNull final ReactApplicationContext reactContext,
+                                           @NonNull final DataStorage storage) {
+    final KeychainModule instance = new KeychainModule(reactContext, storage);
 
     // force initialization of the crypto api in background thread
     final Thread warmingUp = new Thread(instance::internalWarmingBestCipher, "keychain-warming-up");
@@ -204,6 +303,56 @@ public class KeychainModule extends ReactContextBaseJavaModule {
 
     return constants;
   }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onHostResume() {
+    // biometry could be enrolled or removed while application was in background
+    invalidateCapabilities();
+  }
+
+  /** Application goes to background, wipe all in-memory keys. */
+  @Override
+  public void onHostPause() {
+    wipeInMemoryKeys();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onHostDestroy() {
+    wipeInMemoryKeys();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void invalidate() {
+    getReactApplicationContext().unregisterComponentCallbacks(this);
+    callbackExecutor.shutdown();
+    executor.shutdown();
+    if (null != keyPool) keyPool.shutdown();
+    wipeInMemoryKeys();
+    super.invalidate();
+  }
+
+  /** System asks to release memory, drop everything that can be re-created on demand. */
+  @Override
+  public void onTrimMemory(final int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      trimMemory();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onLowMemory() {
+    trimMemory();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onConfigurationChanged(@NonNull final Configuration newConfig) {
+    /* nothing to do */
+  }
   //endregion
 
   //region React Methods
@@ -216,12 +365,20 @@ public class KeychainModule extends ReactContextBaseJavaModule {
       throwIfEmptyLoginPassword(username, password);
 
       final SecurityLevel level = getSecurityLevelOrDefault(options);
-      final CipherStorage storage = getSelectedStorage(options);
+      final CipherStorage storage = getSelectedStorage(options, level);
 
       throwIfInsufficientLevel(storage, level);
 
-      final EncryptionResult result = storage.encrypt(alias, username, password, level);
-      prefsStorage.storeEncryptedEntry(alias, result);
+      final ReentrantLock lock = aliasLocks.get(alias);
+      lock.lock();
+
+      try {
+        final EncryptionResult result = storage.encrypt(alias, username, password, level);
+        dataStorage.storeEncryptedEntry(alias, result);
+        forgetInFlightReads(alias);
+      } finally {
+        lock.unlock();
+      }
 
       final WritableMap results = Arguments.createMap();
       results.putString(Maps.SERVICE, alias);
@@ -249,12 +406,13 @@ public class KeychainModule extends ReactContextBaseJavaModule {
                                            @NonNull final String password,
                                            @NonNull final Promise promise) {
     final String service = getServiceOrDefault(options);
-    setGenericPassword(service, username, password, options, promise);
+    executor.execute(service, () -> setGenericPassword(service, username, password, options, promise));
   }
 
   /** Get Cipher storage instance based on user provided options. */
   @NonNull
-  private CipherStorage getSelectedStorage(@Nullable final ReadableMap options)
+  private CipherStorage getSelectedStorage(@Nullable final ReadableMap options,
+                                          @NonNull final SecurityLevel level)
     throws CryptoFailedException {
     final String accessControl = getAccessControlOrDefault(options);
     final boolean useBiometry = getUseBiometry(accessControl);
@@ -268,33 +426,91 @@ public class KeychainModule extends ReactContextBaseJavaModule {
 
     // attempt to access none existing storage will force fallback logic.
     if (null == result) {
-      result = getCipherStorageForCurrentAPILevel(useBiometry);
+      result = getCipherStorageForCurrentAPILevel(useBiometry, level);
     }
 
     return result;
   }
 
+  /**
+   * Resolve promise when decryption completes. The calling thread is not blocked by authentication prompt, other
+   * keychain calls keep flowing while the prompt is on screen.
+   */
   protected void getGenericPassword(@NonNull final String alias,
                                     @Nullable final ReadableMap options,
                                     @NonNull final Promise promise) {
+    final ResultFuture<WritableMap> credentials;
+
     try {
-      final ResultSet resultSet = prefsStorage.getEncryptedEntry(alias);
+      credentials = getCredentials(alias, options, getPromptInfo(options), null);
+    } catch (Throwable fail) {
+      rejectWithError(promise, fail);
+      return;
+    }
+
+    credentials.whenComplete((result, error) -> {
+      if (null != error) {
+        rejectWithError(promise, error);
+      } else if (null == result) {
+        promise.resolve(false);
+      } else {
+        promise.resolve(result);
+      }
+    });
+  }
+
+  /**
+   * Decrypt stored entry of the service. Completes by NULL if there is no entry for the service. Reads of the same
+   * service with the same options that start while another one is in progress join it: one decryption, one prompt.
+   */
+  @NonNull
+  private ResultFuture<WritableMap> getCredentials(@NonNull final String alias,
+                                                   @Nullable final ReadableMap options,
+                                                   @NonNull final PromptInfo promptInfo,
+                                                   @Nullable final BatchAuthentication batch) {
+    final String fingerprint = getReadFingerprint(alias, options);
+    final ResultFuture<Credentials> started = new ResultFuture<>();
+    final ResultFuture<Credentials> inFlight = inFlightReads.putIfAbsent(fingerprint, started);
+
+    if (null == inFlight) {
+      readCredentials(alias, options, promptInfo, batch).whenComplete((result, error) -> {
+        inFlightReads.remove(fingerprint, started);
+        started.complete(result, error);
+      });
+    }
+
+    // each caller gets own map, native maps can be passed to the bridge only once
+    return (null == inFlight ? started : inFlight).then(credentials -> null == credentials ? null : credentials.toMap());
+  }
+
+  /** Decrypt stored entry of the service, no sharing with other reads. */
+  @NonNull
+  private ResultFuture<Credentials> readCredentials(@NonNull final String alias,
+                                                    @Nullable final ReadableMap options,
+                                                    @NonNull final PromptInfo promptInfo,
+                                                    @Nullable final BatchAuthentication batch) {
+    try {
+      final CredentialsCache cache = credentialsCache;
+      final CredentialsCache.Cached cached = (null == cache) ? null : cache.get(alias);
+
+      if (null != cached) {
+        return ResultFuture.completed(new Credentials(alias, cached.result, cached.storage));
+      }
+
+      final long generation = (null == cache) ? 0 : cache.getGeneration();
+      final ResultSet resultSet = dataStorage.getEncryptedEntry(alias);
 
       if (resultSet == null) {
         Log.e(KEYCHAIN_MODULE, "No entry found for service: " + alias);
-        promise.resolve(false);
-        return;
+        return ResultFuture.completed(null);
       }
 
       final String storageName = resultSet.cipherStorageName;
       final String rules = getSecurityRulesOrDefault(options);
-      final PromptInfo promptInfo = getPromptInfo(options);
-
-      CipherStorage cipher = null;
+      final CipherStorage cipher;
 
-      // Only check for upgradable ciphers for FacebookConseal as that
-      // is the only cipher that can be upgraded
-      if (rules.equals(Rules.AUTOMATIC_UPGRADE) && storageName.equals(KnownCiphers.FB)){
+      // Only FacebookConseal and AES/CBC entries can be upgraded to the best available cipher
+      if (rules.equals(Rules.AUTOMATIC_UPGRADE) && isUpgradable(storageName)) {
         // get the best storage
         final String accessControl = getAccessControlOrDefault(options);
         final boolean useBiometry = getUseBiometry(accessControl);
@@ -303,59 +519,39 @@ public class KeychainModule extends ReactContextBaseJavaModule {
         cipher = getCipherStorageByName(storageName);
       }
 
-      final DecryptionResult decryptionResult = decryptCredentials(alias, cipher, resultSet, rules, promptInfo);
-
-      final WritableMap credentials = Arguments.createMap();
-      credentials.putString(Maps.SERVICE, alias);
-      credentials.putString(Maps.USERNAME, decryptionResult.username);
-      credentials.putString(Maps.PASSWORD, decryptionResult.password);
-      credentials.putString(Maps.STORAGE, cipher.getCipherStorageName());
+      final boolean cacheable = null != cache && (cacheBiometricCredentials || !isBiometric(storageName, cipher));
 
-      promise.resolve(credentials);
-    } catch (KeyStoreAccessException e) {
-      Log.e(KEYCHAIN_MODULE, e.getMessage());
+      return decryptCredentials(alias, cipher, resultSet, rules, promptInfo, batch).then(decryptionResult -> {
+        if (cacheable) cache.put(alias, cipher.getCipherStorageName(), decryptionResult, generation);
 
-      promise.reject(Errors.E_KEYSTORE_ACCESS_ERROR, e);
-    } catch (CryptoFailedException e) {
-      Log.e(KEYCHAIN_MODULE, e.getMessage());
-
-      promise.reject(Errors.E_CRYPTO_FAILED, e);
+        return new Credentials(alias, decryptionResult, cipher.getCipherStorageName());
+      });
     } catch (Throwable fail) {
-      Log.e(KEYCHAIN_MODULE, fail.getMessage(), fail);
-
-      promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+      return ResultFuture.failed(fail);
     }
   }
 
   @ReactMethod
   public void getAllGenericPasswordServices(@NonNull final Promise promise) {
+    executor.execute(Collections.emptyList(), () -> getAllGenericPasswordServicesImpl(promise));
+  }
+
+  private void getAllGenericPasswordServicesImpl(@NonNull final Promise promise) {
     try {
       Collection<String> services = doGetAllGenericPasswordServices();
       promise.resolve(makeNativeArray(services.toArray()));
 
-    } catch (KeyStoreAccessException e) {
-      promise.reject(Errors.E_KEYSTORE_ACCESS_ERROR, e);
-    }
-  }
-
-  private Collection<String> doGetAllGenericPasswordServices() throws KeyStoreAccessException {
-    final Set<String> cipherNames = prefsStorage.getUsedCipherNames();
+    } catch (Throwable fail) {
+      Log.e(KEYCHAIN_MODULE, fail.getMessage(), fail);
 
-    Collection<CipherStorage> ciphers = new ArrayList<>(cipherNames.size());
-    for (String storageName : cipherNames) {
-      final CipherStorage cipherStorage = getCipherStorageByName(storageName);
-      ciphers.add(cipherStorage);
+      promise.reject(Errors.E_UNKNOWN_ERROR, fail);
     }
+  }
 
-    Set<String> result = new HashSet<>();
-    for (CipherStorage cipher : ciphers) {
-      Set<String> aliases = cipher.getAllKeys();
-      for (String alias : aliases) {
-          if (!alias.equals(WARMING_UP_ALIAS)) {
-              result.add(alias);
-          }
-      }
-    }
+  /** Services are served from the storage index, no scan of the keystore aliases required. */
+  private Collection<String> doGetAllGenericPasswordServices() {
+    final Set<String> result = dataStorage.getServices();
+    result.remove(WARMING_UP_ALIAS);
 
     return result;
   }
@@ -364,24 +560,187 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   public void getGenericPasswordForOptions(@Nullable final ReadableMap options,
                                            @NonNull final Promise promise) {
     final String service = getServiceOrDefault(options);
-    getGenericPassword(service, options, promise);
+    executor.execute(service, () -> getGenericPassword(service, options, promise));
+  }
+
+  /**
+   * Store several credentials at once. Cipher storage is resolved once for the whole batch and all entries are
+   * written by one preferences commit. Resolves to array with result of each entry in order of provided entries:
+   * `{service, storage}` on success or `{service, error, message}` on failure.
+   */
+  @ReactMethod
+  public void setGenericPasswordsForOptions(@Nullable final ReadableMap options,
+                                            @NonNull final ReadableArray entries,
+                                            @NonNull final Promise promise) {
+    executor.execute(getEntriesAliases(entries), () -> setGenericPasswords(options, entries, promise));
+  }
+
+  protected void setGenericPasswords(@Nullable final ReadableMap options,
+                                     @NonNull final ReadableArray entries,
+                                     @NonNull final Promise promise) {
+    try {
+      final SecurityLevel level = getSecurityLevelOrDefault(options);
+      final CipherStorage storage = getSelectedStorage(options, level);
+
+      throwIfInsufficientLevel(storage, level);
+
+      final int size = entries.size();
+      final WritableArray results = Arguments.createArray();
+      final Map<String, EncryptionResult> encrypted = new LinkedHashMap<>(size);
+      final List<String> aliases = getEntriesAliases(entries);
+
+      aliasLocks.lockAll(aliases);
+
+      try {
+        for (int i = 0; i < size; i++) {
+          final ReadableMap entry = getBatchEntry(entries, i);
+          final String alias = aliases.get(i);
+
+          try {
+            if (null == entry) {
+              throw new EmptyParameterException("Batch entry should be an object with string service");
+            }
+
+            // the same key can not hold two entries, the first one wins
+            if (encrypted.containsKey(alias)) {
+              throw new EmptyParameterException("Duplicate service in the batch: " + alias);
+            }
+
+            final String username = entry.hasKey(Maps.USERNAME) ? entry.getString(Maps.USERNAME) : null;
+            final String password = entry.hasKey(Maps.PASSWORD) ? entry.getString(Maps.PASSWORD) : null;
+            throwIfEmptyLoginPassword(username, password);
+
+            encrypted.put(alias, storage.encrypt(alias, username, password, level));
+
+            final WritableMap result = Arguments.createMap();
+            result.putString(Maps.SERVICE, alias);
+            result.putString(Maps.STORAGE, storage.getCipherStorageName());
+            results.pushMap(result);
+          } catch (Throwable fail) {
+            Log.e(KEYCHAIN_MODULE, fail.getMessage(), fail);
+
+            results.pushMap(createBatchError(alias, fail));
+          }
+        }
+
+        dataStorage.storeEncryptedEntries(encrypted);
+
+        for (String alias : encrypted.keySet()) {
+          forgetInFlightReads(alias);
+        }
+      } finally {
+        aliasLocks.unlockAll(aliases);
+      }
+
+      promise.resolve(results);
+    } catch (CryptoFailedException e) {
+      Log.e(KEYCHAIN_MODULE, e.getMessage(), e);
+
+      promise.reject(Errors.E_CRYPTO_FAILED, e);
+    } catch (Throwable fail) {
+      Log.e(KEYCHAIN_MODULE, fail.getMessage(), fail);
+
+      promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+    }
+  }
+
+  /**
+   * Extract several credentials at once. Resolves to array with result of each service in order of provided
+   * services: `{service, username, password, storage}` on success, `false` if there is no entry for the service or
+   * `{service, error, message}` on failure. Biometric protected entries are unlocked by one prompt.
+   */
+  @ReactMethod
+  public void getGenericPasswordsForOptions(@Nullable final ReadableMap options,
+                                            @NonNull final ReadableArray services,
+                                            @NonNull final Promise promise) {
+    executor.execute(getServicesAliases(services), () -> getGenericPasswords(options, services, promise));
+  }
+
+  protected void getGenericPasswords(@Nullable final ReadableMap options,
+                                     @NonNull final ReadableArray services,
+                                     @NonNull final Promise promise) {
+    try {
+      final PromptInfo promptInfo = getPromptInfo(options);
+      final BatchAuthentication batch = new BatchAuthentication(getReactApplicationContext(), promptInfo, callbackExecutor);
+      final int size = services.size();
+      final List<String> aliases = getServicesAliases(services);
+      final List<ResultFuture<WritableMap>> reads = new ArrayList<>(size);
+
+      // start all reads first, biometric protected ones wait for the batch prompt
+      for (int i = 0; i < size; i++) {
+        if (ReadableType.String != services.getType(i)) {
+          reads.add(ResultFuture.failed(new EmptyParameterException("Batch service should be a string")));
+          continue;
+        }
+
+        reads.add(getCredentials(aliases.get(i), options, promptInfo, batch));
+      }
+
+      batch.authenticate();
+
+      pushResultsInOrder(aliases, reads, 0, Arguments.createArray(), promise);
+    } catch (Throwable fail) {
+      Log.e(KEYCHAIN_MODULE, fail.getMessage(), fail);
+
+      promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+    }
+  }
+
+  /**
+   * Collect results of the reads starting from provided index. Completed reads are processed in a loop, pending read
+   * (e.g. waiting for authentication) continues collecting from its completion callback.
+   */
+  private void pushResultsInOrder(@NonNull final List<String> aliases,
+                                  @NonNull final List<ResultFuture<WritableMap>> reads,
+                                  final int index,
+                                  @NonNull final WritableArray results,
+                                  @NonNull final Promise promise) {
+    final int size = reads.size();
+
+    for (int i = index; i < size; i++) {
+      final String alias = aliases.get(i);
+      final ResultFuture<WritableMap> credentials = reads.get(i);
+
+      if (!credentials.isDone()) {
+        final int next = i + 1;
+
+        credentials.whenComplete((result, error) -> {
+          pushBatchResult(results, alias, result, error);
+          pushResultsInOrder(aliases, reads, next, results, promise);
+        });
+        return;
+      }
+
+      pushBatchResult(results, alias, credentials.getResult(), credentials.getError());
+    }
+
+    promise.resolve(results);
   }
 
   protected void resetGenericPassword(@NonNull final String alias,
                                       @NonNull final Promise promise) {
+    final ReentrantLock lock = aliasLocks.get(alias);
+
     try {
-      // First we clean up the cipher storage (using the cipher storage that was used to store the entry)
-      final ResultSet resultSet = prefsStorage.getEncryptedEntry(alias);
+      lock.lock();
+
+      try {
+        // First we clean up the cipher storage (using the cipher storage that was used to store the entry)
+        final ResultSet resultSet = dataStorage.getEncryptedEntry(alias);
 
-      if (resultSet != null) {
-        final CipherStorage cipherStorage = getCipherStorageByName(resultSet.cipherStorageName);
+        if (resultSet != null) {
+          final CipherStorage cipherStorage = getCipherStorageByName(resultSet.cipherStorageName);
 
-        if (cipherStorage != null) {
-          cipherStorage.removeKey(alias);
+          if (cipherStorage != null) {
+            cipherStorage.removeKey(alias);
+          }
         }
+        // And then we remove the entry in the shared preferences
+        dataStorage.removeEntry(alias);
+        forgetInFlightReads(alias);
+      } finally {
+        lock.unlock();
       }
-      // And then we remove the entry in the shared preferences
-      prefsStorage.removeEntry(alias);
 
       promise.resolve(true);
     } catch (KeyStoreAccessException e) {
@@ -399,17 +758,21 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   public void resetGenericPasswordForOptions(@Nullable final ReadableMap options,
                                              @NonNull final Promise promise) {
     final String service = getServiceOrDefault(options);
-    resetGenericPassword(service, promise);
+    executor.execute(service, () -> resetGenericPassword(service, promise));
   }
 
   @ReactMethod
   public void hasInternetCredentialsForServer(@NonNull final String server,
                                               @NonNull final Promise promise) {
     final String alias = getAliasOrDefault(server);
+    executor.execute(alias, () -> hasInternetCredentials(alias, promise));
+  }
 
-    final ResultSet resultSet = prefsStorage.getEncryptedEntry(alias);
+  private void hasInternetCredentials(@NonNull final String alias, @NonNull final Promise promise) {
+    // entry is not decoded, cipher name is enough to answer
+    final String cipherStorageName = dataStorage.getEntryCipherStorageName(alias);
 
-    if (resultSet == null) {
+    if (cipherStorageName == null) {
       Log.e(KEYCHAIN_MODULE, "No entry found for service: " + alias);
       promise.resolve(false);
       return;
@@ -417,51 +780,49 @@ public class KeychainModule extends ReactContextBaseJavaModule {
 
     final WritableMap results = Arguments.createMap();
     results.putString(Maps.SERVICE, alias);
-    results.putString(Maps.STORAGE, resultSet.cipherStorageName);
+    results.putString(Maps.STORAGE, cipherStorageName);
 
     promise.resolve(results);
   }
 
+  /**
+   * Synchronous variant of {@link #hasInternetCredentialsForServer(String, Promise)}. Answered from in-memory index
+   * of the storage, does not wait for the pending operations on the same server.
+   *
+   * @return name of the cipher storage of the entry, NULL if there is no entry.
+   */
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @Nullable
+  public String hasInternetCredentialsForServerSync(@NonNull final String server) {
+    return dataStorage.getEntryCipherStorageName(getAliasOrDefault(server));
+  }
+
   @ReactMethod
   public void setInternetCredentialsForServer(@NonNull final String server,
                                               @NonNull final String username,
                                               @NonNull final String password,
                                               @Nullable final ReadableMap options,
                                               @NonNull final Promise promise) {
-    setGenericPassword(server, username, password, options, promise);
+    executor.execute(server, () -> setGenericPassword(server, username, password, options, promise));
   }
 
   @ReactMethod
   public void getInternetCredentialsForServer(@NonNull final String server,
                                               @Nullable final ReadableMap options,
                                               @NonNull final Promise promise) {
-    getGenericPassword(server, options, promise);
+    executor.execute(server, () -> getGenericPassword(server, options, promise));
   }
 
   @ReactMethod
   public void resetInternetCredentialsForServer(@NonNull final String server,
                                                 @NonNull final Promise promise) {
-    resetGenericPassword(server, promise);
+    executor.execute(server, () -> resetGenericPassword(server, promise));
   }
 
   @ReactMethod
   public void getSupportedBiometryType(@NonNull final Promise promise) {
     try {
-      String reply = null;
-
-      if (!DeviceAvailability.isStrongBiometricAuthAvailable(getReactApplicationContext())) {
-        reply = null;
-      } else {
-        if (isFingerprintAuthAvailable()) {
-          reply = FINGERPRINT_SUPPORTED_NAME;
-        } else if (isFaceAuthAvailable()) {
-          reply = FACE_SUPPORTED_NAME;
-        } else if (isIrisAuthAvailable()) {
-          reply = IRIS_SUPPORTED_NAME;
-        }
-      }
-
-      promise.resolve(reply);
+      promise.resolve(getCapabilities().device.getBiometryType());
     } catch (Exception e) {
       Log.e(KEYCHAIN_MODULE, e.getMessage(), e);
 
@@ -482,10 +843,76 @@ public class KeychainModule extends ReactContextBaseJavaModule {
 
     promise.resolve(getSecurityLevel(useBiometry).name());
   }
+
+  /** Synchronous variant of {@link #getSupportedBiometryType(Promise)}, answered from cached capabilities. */
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @Nullable
+  public String getSupportedBiometryTypeSync() {
+    try {
+      return getCapabilities().device.getBiometryType();
+    } catch (Throwable fail) {
+      Log.e(KEYCHAIN_MODULE, "Biometry type is unknown: " + fail.getMessage(), fail);
+
+      return null;
+    }
+  }
+
+  /** Synchronous variant of {@link #getSecurityLevel(ReadableMap, Promise)}, answered from cached capabilities. */
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @NonNull
+  public String getSecurityLevelSync(@Nullable final ReadableMap options) {
+    final String accessControl = getAccessControlOrDefault(options);
+    final boolean useBiometry = getUseBiometry(accessControl);
+
+    return getSecurityLevel(useBiometry).name();
+  }
   //endregion
 
   //region Helpers
 
+  /** Get services of the batch entries, malformed entry is mapped to the default service. */
+  @NonNull
+  private static List<String> getEntriesAliases(@NonNull final ReadableArray entries) {
+    final int size = entries.size();
+    final List<String> aliases = new ArrayList<>(size);
+
+    for (int i = 0; i < size; i++) {
+      final ReadableMap entry = getBatchEntry(entries, i);
+      aliases.add(getServiceOrDefault(entry));
+    }
+
+    return aliases;
+  }
+
+  /** Get batch entry, NULL if element is not an object or its service is not a string. */
+  @Nullable
+  private static ReadableMap getBatchEntry(@NonNull final ReadableArray entries, final int index) {
+    if (ReadableType.Map != entries.getType(index)) return null;
+
+    final ReadableMap entry = entries.getMap(index);
+
+    if (entry.hasKey(Maps.SERVICE)) {
+      final ReadableType type = entry.getType(Maps.SERVICE);
+      if (ReadableType.String != type && ReadableType.Null != type) return null;
+    }
+
+    return entry;
+  }
+
+  /** Get aliases of the batch services, malformed service is mapped to the default service. */
+  @NonNull
+  private static List<String> getServicesAliases(@NonNull final ReadableArray services) {
+    final int size = services.size();
+    final List<String> aliases = new ArrayList<>(size);
+
+    for (int i = 0; i < size; i++) {
+      final String service = (ReadableType.String == services.getType(i)) ? services.getString(i) : null;
+      aliases.add(getAliasOrDefault(service));
+    }
+
+    return aliases;
+  }
+
   /** Get service value from options. */
   @NonNull
   private static String getServiceOrDefault(@Nullable final ReadableMap options) {
@@ -591,9 +1018,127 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   }
 
   private void addCipherStorageToMap(@NonNull final CipherStorage cipherStorage) {
+    if (cipherStorage instanceof CipherStorageBase) {
+      ((CipherStorageBase) cipherStorage).setCapabilitiesCache(capabilitiesCache);
+    }
+
     cipherStorageMap.put(cipherStorage.getCipherStorageName(), cipherStorage);
   }
 
+  /** Can entries of the storage be migrated to the best available storage automatically. */
+  private static boolean isUpgradable(@KnownCiphers @NonNull final String storageName) {
+    return KnownCiphers.FB.equals(storageName) || KnownCiphers.AES.equals(storageName);
+  }
+
+  /** Drop decrypted credentials and unwrapped data keys kept in memory. */
+  /* package */ void wipeInMemoryKeys() {
+    final CredentialsCache cache = credentialsCache;
+    if (null != cache) cache.clear();
+
+    for (CipherStorage storage : cipherStorageMap.values()) {
+      if (storage instanceof CipherStorageKeystoreAesEnvelope) {
+        ((CipherStorageKeystoreAesEnvelope) storage).wipe();
+      }
+    }
+  }
+
+  /** Drop cached credentials and key handles of all storages. */
+  /* package */ void trimMemory() {
+    final CredentialsCache cache = credentialsCache;
+    if (null != cache) cache.clear();
+
+    for (CipherStorage storage : cipherStorageMap.values()) {
+      if (storage instanceof CipherStorageBase) {
+        ((CipherStorageBase) storage).trimMemory();
+      }
+    }
+  }
+
+  /** Configure time of keeping unwrapped data key in memory by envelope storage. */
+  /* package */ void setEnvelopeKeyTtl(final long ttlMillis) {
+    final CipherStorage storage = getCipherStorageByName(KnownCiphers.ENVELOPE);
+
+    if (storage instanceof CipherStorageKeystoreAesEnvelope) {
+      ((CipherStorageKeystoreAesEnvelope) storage).setKeyTtl(ttlMillis);
+    }
+  }
+
+  /** Configure number of RSA keys pre-generated in background, 0 - generate keys on first use. */
+  /* package */ void setKeyPoolDepth(final int depth) {
+    if (null != keyPool) keyPool.setTargetDepth(depth);
+  }
+
+  /** Write username and password of new entries by one cipher operation. Entries of both layouts stay readable. */
+  /* package */ void setCombinedRecords(final boolean enabled) {
+    for (CipherStorage storage : cipherStorageMap.values()) {
+      if (storage instanceof CipherStorageBase) {
+        ((CipherStorageBase) storage).setCombinedRecords(enabled);
+      }
+    }
+  }
+
+  /**
+   * Keep decrypted credentials in memory for repeated reads of the same service.
+   *
+   * @param capacity max number of cached services, 0 - disable caching.
+   * @param ttlMillis time of keeping credentials in memory.
+   * @param includeBiometric cache entries of biometric storages too, repeated reads will not show the prompt.
+   */
+  /* package */ void setCredentialsCache(final int capacity, final long ttlMillis, final boolean includeBiometric) {
+    final CredentialsCache previous = credentialsCache;
+
+    cacheBiometricCredentials = includeBiometric;
+    credentialsCache = (capacity > 0) ? new CredentialsCache(capacity, ttlMillis) : null;
+
+    if (null != previous) previous.clear();
+  }
+
+  /** Does reading of the entry involve user authentication. */
+  private boolean isBiometric(@KnownCiphers @NonNull final String storageName, @NonNull final CipherStorage current) {
+    final CipherStorage stored = getCipherStorageByName(storageName);
+
+    return current.isBiometrySupported() || (null != stored && stored.isBiometrySupported());
+  }
+
+  /** Configure number of threads running keychain operations, 0 - run on the native-modules thread. */
+  /* package */ void setExecutorPoolSize(final int poolSize) {
+    executor.setPoolSize(poolSize);
+  }
+
+  /** Metric: number of reads served by credentials cache. */
+  public long getCredentialsCacheHits() {
+    final CredentialsCache cache = credentialsCache;
+
+    return (null == cache) ? 0 : cache.getHits();
+  }
+
+  /** Metric: number of pre-generated RSA keys ready for new services. */
+  public int getKeyPoolDepth() {
+    return (null == keyPool) ? 0 : keyPool.getDepth();
+  }
+
+  /** Metric: number of key lookups served from memory by all storages. */
+  public long getKeyCacheHits() {
+    long hits = 0;
+
+    for (CipherStorage storage : cipherStorageMap.values()) {
+      if (storage instanceof CipherStorageBase) hits += ((CipherStorageBase) storage).getKeyCache().getHits();
+    }
+
+    return hits;
+  }
+
+  /** Metric: number of key lookups that went to keystore. */
+  public long getKeyCacheMisses() {
+    long misses = 0;
+
+    for (CipherStorage storage : cipherStorageMap.values()) {
+      if (storage instanceof CipherStorageBase) misses += ((CipherStorageBase) storage).getKeyCache().getMisses();
+    }
+
+    return misses;
+  }
+
   /** Extract user specified prompt info from options. */
   @NonNull
   private static PromptInfo getPromptInfo(@Nullable final ReadableMap options) {
@@ -633,17 +1178,18 @@ public class KeychainModule extends ReactContextBaseJavaModule {
    * results set then executed migration.
    */
   @NonNull
-  private DecryptionResult decryptCredentials(@NonNull final String alias,
-                                              @NonNull final CipherStorage current,
-                                              @NonNull final ResultSet resultSet,
-                                              @Rules @NonNull final String rules,
-                                              @NonNull final PromptInfo promptInfo)
-    throws CryptoFailedException, KeyStoreAccessException {
+  private ResultFuture<DecryptionResult> decryptCredentials(@NonNull final String alias,
+                                                            @NonNull final CipherStorage current,
+                                                            @NonNull final ResultSet resultSet,
+                                                            @Rules @NonNull final String rules,
+                                                            @NonNull final PromptInfo promptInfo,
+                                                            @Nullable final BatchAuthentication batch)
+    throws KeyStoreAccessException {
     final String storageName = resultSet.cipherStorageName;
 
     // The encrypted data is encrypted using the current CipherStorage, so we just decrypt and return
     if (storageName.equals(current.getCipherStorageName())) {
-      return decryptToResult(alias, current, resultSet, promptInfo);
+      return decryptToResult(alias, current, resultSet, promptInfo, batch);
     }
 
     // The encrypted data is encrypted using an older CipherStorage, so we need to decrypt the data first,
@@ -654,37 +1200,70 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     }
 
     // decrypt using the older cipher storage
-    final DecryptionResult decryptionResult = decryptToResult(alias, oldStorage, resultSet, promptInfo);
-
-    if (Rules.AUTOMATIC_UPGRADE.equals(rules)) {
-      try {
-        // encrypt using the current cipher storage
-        migrateCipherStorage(alias, current, oldStorage, decryptionResult);
-      } catch (CryptoFailedException e) {
-        Log.w(KEYCHAIN_MODULE, "Migrating to a less safe storage is not allowed. Keeping the old one");
+    return decryptToResult(alias, oldStorage, resultSet, promptInfo, batch).then(decryptionResult -> {
+      if (Rules.AUTOMATIC_UPGRADE.equals(rules)) {
+        // continuation runs on the prompt callback thread, keystore work goes back to the ordered executor
+        executor.execute(alias, () -> migrateCipherStorageQuietly(alias, current, oldStorage, decryptionResult, resultSet));
       }
-    }
 
-    return decryptionResult;
+      return decryptionResult;
+    });
   }
 
-  /** Try to decrypt with provided storage. */
-  @NonNull
-  private DecryptionResult decryptToResult(@NonNull final String alias,
-                                           @NonNull final CipherStorage storage,
-                                           @NonNull final ResultSet resultSet,
-                                           @NonNull final PromptInfo promptInfo)
-    throws CryptoFailedException {
-    final DecryptionResultHandler handler = getInteractiveHandler(storage, promptInfo);
-    storage.decrypt(handler, alias, resultSet.username, resultSet.password, SecurityLevel.ANY);
+  /** Migrate entry read by the automatic upgrade. Failure keeps the old entry, read result is not affected. */
+  private void migrateCipherStorageQuietly(@NonNull final String alias,
+                                           @NonNull final CipherStorage current,
+                                           @NonNull final CipherStorage oldStorage,
+                                           @NonNull final DecryptionResult decryptionResult,
+                                           @NonNull final ResultSet resultSet) {
+    try {
+      // encrypt using the current cipher storage
+      migrateCipherStorage(alias, current, oldStorage, decryptionResult, resultSet);
+    } catch (CryptoFailedException e) {
+      Log.w(KEYCHAIN_MODULE, "Migrating to a less safe storage is not allowed. Keeping the old one");
+    } catch (Throwable fail) {
+      Log.e(KEYCHAIN_MODULE, "Migration of the service " + alias + " failed: " + fail.getMessage(), fail);
+    }
+  }
 
-    CryptoFailedException.reThrowOnError(handler.getError());
+  /**
+   * Try to decrypt with provided storage. Future completes after user authentication if storage asks for it.
+   * Reads of a batch wait for the batch prompt instead of showing own one.
+   */
+  @NonNull
+  private ResultFuture<DecryptionResult> decryptToResult(@NonNull final String alias,
+                                                         @NonNull final CipherStorage storage,
+                                                         @NonNull final ResultSet resultSet,
+                                                         @NonNull final PromptInfo promptInfo,
+                                                         @Nullable final BatchAuthentication batch) {
+    final DecryptionResultHandler handler = (null == batch)
+      ? getInteractiveHandler(storage, promptInfo)
+      : batch.getHandler(storage);
+    final ResultFuture<DecryptionResult> decrypted = new ResultFuture<>();
 
-    if (null == handler.getResult()) {
-      throw new CryptoFailedException("No decryption results and no error. Something deeply wrong!");
+    try {
+      storage.decrypt(handler, alias, resultSet.username, resultSet.password, SecurityLevel.ANY);
+    } catch (Throwable fail) {
+      handler.onDecrypt(null, fail);
     }
 
-    return handler.getResult();
+    handler.getFuture().whenComplete((result, error) -> {
+      if (isKeyPermanentlyInvalidated(error)) {
+        // biometric enrollment changed, storage selection could be different now and spare keys are invalid too
+        invalidateCapabilities();
+        if (null != keyPool) keyPool.flush();
+      }
+
+      if (null != error) {
+        decrypted.complete(null, CryptoFailedException.wrap(error));
+      } else if (null == result) {
+        decrypted.complete(null, new CryptoFailedException("No decryption results and no error. Something deeply wrong!"));
+      } else {
+        decrypted.complete(result, null);
+      }
+    });
+
+    return decrypted;
   }
 
   /** Get instance of handler that resolves access to the keystore on system request. */
@@ -692,7 +1271,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   protected DecryptionResultHandler getInteractiveHandler(@NonNull final CipherStorage current, @NonNull final PromptInfo promptInfo) {
     ReactApplicationContext reactContext = getReactApplicationContext();
 
-    return DecryptionResultHandlerProvider.getHandler(reactContext, current, promptInfo);
+    return DecryptionResultHandlerProvider.getHandler(reactContext, current, promptInfo, callbackExecutor);
   }
 
   /** Remove key from old storage and add it to the new storage. */
@@ -701,18 +1280,59 @@ public class KeychainModule extends ReactContextBaseJavaModule {
                                           @NonNull final CipherStorage oldCipherStorage,
                                           @NonNull final DecryptionResult decryptionResult)
     throws KeyStoreAccessException, CryptoFailedException {
+    migrateCipherStorage(service, newCipherStorage, oldCipherStorage, decryptionResult, null);
+  }
+
+  /**
+   * Remove key from old storage and add it to the new storage. Migration is skipped if entry was changed after
+   * it was read, decrypted credentials are stale in that case.
+   *
+   * @param expected stored entry that was decrypted, NULL - migrate unconditionally.
+   */
+  /* package */ void migrateCipherStorage(@NonNull final String service,
+                                          @NonNull final CipherStorage newCipherStorage,
+                                          @NonNull final CipherStorage oldCipherStorage,
+                                          @NonNull final DecryptionResult decryptionResult,
+                                          @Nullable final ResultSet expected)
+    throws KeyStoreAccessException, CryptoFailedException {
+    final ReentrantLock lock = aliasLocks.get(service);
+    lock.lock();
 
-    // don't allow to degrade security level when transferring, the new
-    // storage should be as safe as the old one.
-    final EncryptionResult encryptionResult = newCipherStorage.encrypt(
-      service, decryptionResult.username, decryptionResult.password,
-      decryptionResult.getSecurityLevel());
+    try {
+      if (null != expected && !isSameEntry(expected, dataStorage.getEncryptedEntry(service))) {
+        Log.w(KEYCHAIN_MODULE, "Entry of the service was changed during read. Skipping migration");
+        return;
+      }
+
+      // don't allow to degrade security level when transferring, the new
+      // storage should be as safe as the old one.
+      final EncryptionResult encryptionResult = newCipherStorage.encrypt(
+        service, decryptionResult.username, decryptionResult.password,
+        decryptionResult.getSecurityLevel());
+
+      // store the encryption result
+      dataStorage.storeEncryptedEntry(service, encryptionResult);
+      forgetInFlightReads(service);
+
+      // clean up the old cipher storage
+      oldCipherStorage.removeKey(service);
+    } finally {
+      lock.unlock();
+    }
+  }
 
-    // store the encryption result
-    prefsStorage.storeEncryptedEntry(service, encryptionResult);
+  /** Is stored entry still the one that was read before. */
+  private static boolean isSameEntry(@NonNull final ResultSet expected, @Nullable final ResultSet actual) {
+    return null != actual
+      && expected.cipherStorageName.equals(actual.cipherStorageName)
+      && Arrays.equals(expected.username, actual.username)
+      && Arrays.equals(expected.password, actual.password);
+  }
 
-    // clean up the old cipher storage
-    oldCipherStorage.removeKey(service);
+  /** Is lock of the alias held by the current thread, exposed for tests. */
+  @VisibleForTesting
+  /* package */ boolean isAliasLocked(@NonNull final String alias) {
+    return aliasLocks.isHeldByCurrentThread(alias);
   }
 
   /**
@@ -731,38 +1351,29 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   @NonNull
   /* package */ CipherStorage getCipherStorageForCurrentAPILevel(final boolean useBiometry)
     throws CryptoFailedException {
-    final int currentApiLevel = Build.VERSION.SDK_INT;
-    final boolean isBiometry = useBiometry && (isFingerprintAuthAvailable() || isFaceAuthAvailable() || isIrisAuthAvailable());
-    CipherStorage foundCipher = null;
-
-    for (CipherStorage variant : cipherStorageMap.values()) {
-      Log.d(KEYCHAIN_MODULE, "Probe cipher storage: " + variant.getClass().getSimpleName());
-
-      // Is the cipherStorage supported on the current API level?
-      final int minApiLevel = variant.getMinSupportedApiLevel();
-      final int capabilityLevel = variant.getCapabilityLevel();
-      final boolean isSupportedApi = (minApiLevel <= currentApiLevel);
-
-      // API not supported
-      if (!isSupportedApi) continue;
+    return getCipherStorageForCurrentAPILevel(useBiometry, SecurityLevel.ANY);
+  }
 
-      // Is the API level better than the one we previously selected (if any)?
-      if (foundCipher != null && capabilityLevel < foundCipher.getCapabilityLevel()) continue;
+  /** Get the best storage that satisfies required security level. Constant time lookup in selection table. */
+  @NonNull
+  /* package */ CipherStorage getCipherStorageForCurrentAPILevel(final boolean useBiometry,
+                                                               @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+    final CipherSelection selection = getCapabilities().selection;
+    final CipherStorage storage = selection.get(useBiometry, level);
 
-      // if biometric supported but not configured properly than skip
-      if (variant.isBiometrySupported() && !isBiometry) continue;
+    if (storage != null) return storage;
 
-      // remember storage with the best capabilities
-      foundCipher = variant;
-    }
+    final CipherStorage best = selection.get(useBiometry);
 
-    if (foundCipher == null) {
+    if (best == null) {
       throw new CryptoFailedException("Unsupported Android SDK " + Build.VERSION.SDK_INT);
     }
 
-    Log.d(KEYCHAIN_MODULE, "Selected storage: " + foundCipher.getClass().getSimpleName());
+    // the best storage is too weak, raise the same error as for explicitly selected storage
+    throwIfInsufficientLevel(best, level);
 
-    return foundCipher;
+    return best;
   }
 
   /** Throw exception in case of empty credentials providing. */
@@ -797,17 +1408,17 @@ public class KeychainModule extends ReactContextBaseJavaModule {
 
   /** True - if fingerprint hardware available and configured, otherwise false. */
   /* package */ boolean isFingerprintAuthAvailable() {
-    return DeviceAvailability.isStrongBiometricAuthAvailable(getReactApplicationContext()) && DeviceAvailability.isFingerprintAuthAvailable(getReactApplicationContext());
+    return getCapabilities().device.isFingerprintAuthAvailable();
   }
 
   /** True - if face recognition hardware available and configured, otherwise false. */
   /* package */ boolean isFaceAuthAvailable() {
-    return DeviceAvailability.isStrongBiometricAuthAvailable(getReactApplicationContext()) && DeviceAvailability.isFaceAuthAvailable(getReactApplicationContext());
+    return getCapabilities().device.isFaceAuthAvailable();
   }
 
   /** True - if iris recognition hardware available and configured, otherwise false. */
   /* package */ boolean isIrisAuthAvailable() {
-    return DeviceAvailability.isStrongBiometricAuthAvailable(getReactApplicationContext()) && DeviceAvailability.isIrisAuthAvailable(getReactApplicationContext());
+    return getCapabilities().device.isIrisAuthAvailable();
   }
 
   /** Is secured hardware a part of current storage or not. */
@@ -819,6 +1430,47 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     }
   }
 
+  /** Get snapshot of the device capabilities, probe the device if snapshot is stale. */
+  @NonNull
+  private Capabilities getCapabilities() {
+    Capabilities current = capabilities;
+
+    if (null == current) {
+      final DeviceCapabilities device = DeviceCapabilities.probe(getReactApplicationContext());
+      current = new Capabilities(device, new CipherSelection(rankedStorages, device.isAuthBoundKeyAvailable()));
+      capabilities = current;
+
+      // probe happens before any storage selection, so spare keys are dropped before the next key is taken
+      if (null != keyPool && device.isKeyStateChanged(staleDevice)) keyPool.flush();
+      staleDevice = null;
+
+      // logged once per snapshot, selection itself does not log
+      Log.d(KEYCHAIN_MODULE, "Device capabilities: " + device + ", " + current.selection);
+    }
+
+    return current;
+  }
+
+  /** Drop snapshot of the device capabilities, next access probes the device again. */
+  /* package */ void invalidateCapabilities() {
+    final Capabilities stale = capabilities;
+    if (null != stale) staleDevice = stale.device;
+
+    capabilities = null;
+  }
+
+  /** Key was invalidated by the OS, happens when biometric enrollment changes. */
+  private static boolean isKeyPermanentlyInvalidated(@Nullable final Throwable error) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return false;
+
+    for (Throwable cause = error; null != cause; cause = cause.getCause()) {
+      if (cause instanceof KeyPermanentlyInvalidatedException) return true;
+      if (cause == cause.getCause()) break;
+    }
+
+    return false;
+  }
+
   /** Resolve storage to security level it provides. */
   @NonNull
   private SecurityLevel getSecurityLevel(final boolean useBiometry) {
@@ -845,5 +1497,125 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   private static String getAliasOrDefault(@Nullable final String service) {
     return service == null ? EMPTY_STRING : service;
   }
+
+  /** Get error code matching the exception type. */
+  @NonNull
+  private static String getErrorCode(@NonNull final Throwable error) {
+    if (error instanceof EmptyParameterException) return Errors.E_EMPTY_PARAMETERS;
+    if (error instanceof KeyStoreAccessException) return Errors.E_KEYSTORE_ACCESS_ERROR;
+    if (error instanceof CryptoFailedException) return Errors.E_CRYPTO_FAILED;
+
+    return Errors.E_UNKNOWN_ERROR;
+  }
+
+  /** Reject promise by error code matching the exception type. */
+  private static void rejectWithError(@NonNull final Promise promise, @NonNull final Throwable error) {
+    Log.e(KEYCHAIN_MODULE, error.getMessage(), error);
+
+    promise.reject(getErrorCode(error), error);
+  }
+
+  /** Append result of one service to the batch results: credentials, `false` or error. */
+  private static void pushBatchResult(@NonNull final WritableArray results,
+                                      @NonNull final String alias,
+                                      @Nullable final WritableMap credentials,
+                                      @Nullable final Throwable error) {
+    if (null != error) {
+      Log.e(KEYCHAIN_MODULE, error.getMessage(), error);
+
+      results.pushMap(createBatchError(alias, error));
+    } else if (null == credentials) {
+      results.pushBoolean(false);
+    } else {
+      results.pushMap(credentials);
+    }
+  }
+
+  /** Compose result of the failed batch entry. */
+  @NonNull
+  private static WritableMap createBatchError(@NonNull final String alias, @NonNull final Throwable error) {
+    final WritableMap result = Arguments.createMap();
+    result.putString(Maps.SERVICE, alias);
+    result.putString(Maps.ERROR, getErrorCode(error));
+    result.putString(Maps.MESSAGE, error.getMessage());
+
+    return result;
+  }
+
+  /** Key of the read: service and every option that changes the read result or the prompt. */
+  @NonNull
+  private static String getReadFingerprint(@NonNull final String alias, @Nullable final ReadableMap options) {
+    final ReadableMap prompt = (null != options && options.hasKey(Maps.AUTH_PROMPT)) ? options.getMap(Maps.AUTH_PROMPT) : null;
+    final StringBuilder fingerprint = new StringBuilder(alias)
+      .append(FINGERPRINT_SEPARATOR).append(getSecurityRulesOrDefault(options))
+      .append(FINGERPRINT_SEPARATOR).append(getAccessControlOrDefault(options));
+
+    for (String key : new String[]{AuthPromptOptions.TITLE, AuthPromptOptions.SUBTITLE,
+      AuthPromptOptions.DESCRIPTION, AuthPromptOptions.CANCEL}) {
+      fingerprint.append(FINGERPRINT_SEPARATOR);
+
+      if (null != prompt && prompt.hasKey(key)) fingerprint.append(prompt.getString(key));
+    }
+
+    return fingerprint.toString();
+  }
+
+  /** Entry of the service changed, reads started after this point should not join older reads or see cached value. */
+  private void forgetInFlightReads(@NonNull final String alias) {
+    final CredentialsCache cache = credentialsCache;
+    if (null != cache) cache.remove(alias);
+
+    final String prefix = alias + FINGERPRINT_SEPARATOR;
+
+    for (String fingerprint : inFlightReads.keySet()) {
+      if (fingerprint.startsWith(prefix)) inFlightReads.remove(fingerprint);
+    }
+  }
+
+  /** Number of reads in progress, exposed for tests. */
+  @VisibleForTesting
+  /* package */ int getInFlightReadsCount() {
+    return inFlightReads.size();
+  }
+  //endregion
+
+  //region Nested declarations
+
+  /** Device capabilities together with the storages selected for them. */
+  private static final class Capabilities {
+    final DeviceCapabilities device;
+    final CipherSelection selection;
+
+    Capabilities(@NonNull final DeviceCapabilities device, @NonNull final CipherSelection selection) {
+      this.device = device;
+      this.selection = selection;
+    }
+  }
+
+  /** Decrypted entry shared by concurrent reads of the service. */
+  private static final class Credentials {
+    final String service;
+    final DecryptionResult result;
+    final String storage;
+
+    Credentials(@NonNull final String service,
+                @NonNull final DecryptionResult result,
+                @NonNull final String storage) {
+      this.service = service;
+      this.result = result;
+      this.storage = storage;
+    }
+
+    @NonNull
+    WritableMap toMap() {
+      final WritableMap credentials = Arguments.createMap();
+      credentials.putString(Maps.SERVICE, service);
+      credentials.putString(Maps.USERNAME, result.username);
+      credentials.putString(Maps.PASSWORD, result.password);
+      credentials.putString(Maps.STORAGE, storage);
+
+      return credentials;
+    }
+  }
   //endregion
 }
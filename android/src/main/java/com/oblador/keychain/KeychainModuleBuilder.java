@@ -1,12 +1,34 @@
 package com.oblador.keychain;
 
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.cipherStorage.CipherStorageKeystoreAesEnvelope;
+import com.oblador.keychain.cipherStorage.KeyPool;
+
+import java.util.concurrent.TimeUnit;
 
 public class KeychainModuleBuilder {
   public static final boolean DEFAULT_USE_WARM_UP = true;
+  public static final boolean DEFAULT_USE_MAPPED_FILE_STORAGE = false;
+  public static final long DEFAULT_ENVELOPE_KEY_TTL = CipherStorageKeystoreAesEnvelope.DEFAULT_KEY_TTL;
+  public static final int DEFAULT_KEY_POOL_DEPTH = KeyPool.DEFAULT_DEPTH;
+  public static final boolean DEFAULT_USE_COMBINED_RECORDS = false;
+  /** Credentials cache is disabled by default. */
+  public static final int DEFAULT_CREDENTIALS_CACHE_CAPACITY = 0;
+  public static final long DEFAULT_CREDENTIALS_CACHE_TTL = CredentialsCache.DEFAULT_TTL;
+  public static final boolean DEFAULT_CACHE_BIOMETRIC_CREDENTIALS = false;
+  /** Keychain operations run on own threads, not on the shared native-modules thread. */
+  public static final int DEFAULT_EXECUTOR_POOL_SIZE = 2;
 
   private ReactApplicationContext reactContext;
   private boolean useWarmUp = DEFAULT_USE_WARM_UP;
+  private boolean useMappedFileStorage = DEFAULT_USE_MAPPED_FILE_STORAGE;
+  private long envelopeKeyTtl = DEFAULT_ENVELOPE_KEY_TTL;
+  private int keyPoolDepth = DEFAULT_KEY_POOL_DEPTH;
+  private boolean useCombinedRecords = DEFAULT_USE_COMBINED_RECORDS;
+  private int credentialsCacheCapacity = DEFAULT_CREDENTIALS_CACHE_CAPACITY;
+  private long credentialsCacheTtl = DEFAULT_CREDENTIALS_CACHE_TTL;
+  private boolean cacheBiometricCredentials = DEFAULT_CACHE_BIOMETRIC_CREDENTIALS;
+  private int executorPoolSize = DEFAULT_EXECUTOR_POOL_SIZE;
 
   public KeychainModuleBuilder withReactContext(ReactApplicationContext reactContext) {
     this.reactContext = reactContext;
@@ -23,13 +45,78 @@ public class KeychainModuleBuilder {
     return this;
   }
 
+  public KeychainModuleBuilder usingMappedFileStorage() {
+    useMappedFileStorage = true;
+    return this;
+  }
+
+  public KeychainModuleBuilder usingPrefsStorage() {
+    useMappedFileStorage = false;
+    return this;
+  }
+
+  public KeychainModuleBuilder withEnvelopeKeyTtl(long duration, TimeUnit unit) {
+    envelopeKeyTtl = unit.toMillis(duration);
+    return this;
+  }
+
+  public KeychainModuleBuilder withKeyPoolDepth(int depth) {
+    keyPoolDepth = depth;
+    return this;
+  }
+
+  public KeychainModuleBuilder usingCombinedRecords() {
+    useCombinedRecords = true;
+    return this;
+  }
+
+  public KeychainModuleBuilder usingSplitRecords() {
+    useCombinedRecords = false;
+    return this;
+  }
+
+  public KeychainModuleBuilder withCredentialsCache(int capacity, long ttl, TimeUnit unit) {
+    credentialsCacheCapacity = capacity;
+    credentialsCacheTtl = unit.toMillis(ttl);
+    return this;
+  }
+
+  public KeychainModuleBuilder withoutCredentialsCache() {
+    credentialsCacheCapacity = 0;
+    return this;
+  }
+
+  public KeychainModuleBuilder usingBiometricCredentialsCache() {
+    cacheBiometricCredentials = true;
+    return this;
+  }
+
+  public KeychainModuleBuilder withoutBiometricCredentialsCache() {
+    cacheBiometricCredentials = false;
+    return this;
+  }
+
+  public KeychainModuleBuilder withExecutorPoolSize(int poolSize) {
+    executorPoolSize = poolSize;
+    return this;
+  }
+
   public KeychainModule build() {
     validate();
-    if (useWarmUp) {
-      return KeychainModule.withWarming(reactContext);
-    } else {
-      return new KeychainModule(reactContext);
-    }
+    final DataStorage storage = useMappedFileStorage
+      ? new MappedFileStorage(reactContext)
+      : new PrefsStorage(reactContext);
+
+    final KeychainModule module = useWarmUp
+      ? KeychainModule.withWarming(reactContext, storage)
+      : new KeychainModule(reactContext, storage);
+    module.setEnvelopeKeyTtl(envelopeKeyTtl);
+    module.setKeyPoolDepth(keyPoolDepth);
+    module.setCombinedRecords(useCombinedRecords);
+    module.setCredentialsCache(credentialsCacheCapacity, credentialsCacheTtl, cacheBiometricCredentials);
+    module.setExecutorPoolSize(executorPoolSize);
+
+    return module;
   }
 
   private void validate() {
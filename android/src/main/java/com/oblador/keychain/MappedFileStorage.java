@@ -0,0 +1,528 @@
+package com.oblador.keychain;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Binary credentials storage, alternative to {@link PrefsStorage}.
+ *
+ * Entries are appended to a compact record file that is memory-mapped through NIO. Only the offsets of live
+ * records are kept on heap, ciphertext is read from the mapping on request. So a write costs O(entry size) instead
+ * of re-writing the whole XML file as SharedPreferences do. Removal appends a tombstone record; the file is compacted
+ * once dead records take more space than the live ones.
+ *
+ * File layout: `[magic:int][version:byte]` followed by records `[length:int][crc32:int][body]`, where body is
+ * `[type:byte][service:short+utf8]` and, for PUT records, `[cipher:short+utf8][username:int+bytes][password:int+bytes]`.
+ * Name lengths are unsigned shorts, longer names are rejected before anything is written.
+ * Record length is written last, so a record torn by process death fails the CRC check and is treated as the end
+ * of data.
+ *
+ * On first open all entries of the {@link PrefsStorage} are migrated into the file and removed from preferences.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class MappedFileStorage implements DataStorage {
+  //region Constants
+  /** Logging tag. */
+  private static final String LOG_TAG = MappedFileStorage.class.getSimpleName();
+  /** Name of the storage file. */
+  public static final String KEYCHAIN_FILE = PrefsStorage.KEYCHAIN_DATA + ".bin";
+  /** File signature, 'RNKC'. */
+  private static final int MAGIC = 0x524E4B43;
+  /** Version of the file format. */
+  private static final byte VERSION = 1;
+  /** Size of the file header: magic + version. */
+  private static final int HEADER_SIZE = 4 + 1;
+  /** Size of the record header: length + crc32. */
+  private static final int RECORD_HEADER_SIZE = 4 + 4;
+  /** Record stores the entry. */
+  private static final byte TYPE_PUT = 1;
+  /** Record removes the entry. */
+  private static final byte TYPE_DELETE = 2;
+  /** Initial size of the mapping. Default: 16Kb. */
+  private static final int INITIAL_CAPACITY = 16 * 1024;
+  /** Minimal amount of dead records bytes that triggers compaction. Default: 16Kb. */
+  private static final int COMPACTION_THRESHOLD = 16 * 1024;
+  /** Default charset encoding. */
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  /** Max length of the service or cipher name in UTF-8 bytes, the length is stored as unsigned short. */
+  public static final int MAX_NAME_LENGTH = 0xFFFF;
+  //endregion
+
+  //region Members
+  /** Storage file. */
+  @NonNull
+  private final File file;
+  /** Source of the migrated entries, NULL - nothing to migrate. */
+  @Nullable
+  private final PrefsStorage legacy;
+  /** Service name to the live record lookup. */
+  private final Map<String, Record> index = new HashMap<>();
+  /** Opened file. */
+  private RandomAccessFile raf;
+  /** Mapping of the file content. */
+  private MappedByteBuffer buffer;
+  /** Position of the data end. */
+  private int end;
+  /** Amount of bytes occupied by dead records. */
+  private int garbage;
+  //endregion
+
+  /** Default constructor. Data kept in no-backup folder, ciphertext is useless without keys of this device. */
+  public MappedFileStorage(@NonNull final ReactApplicationContext reactContext) {
+    this(new File(reactContext.getNoBackupFilesDir(), KEYCHAIN_FILE), new PrefsStorage(reactContext));
+  }
+
+  public MappedFileStorage(@NonNull final File file, @Nullable final PrefsStorage legacy) {
+    this.file = file;
+    this.legacy = legacy;
+  }
+
+  //region Overrides
+  @Override
+  @Nullable
+  public synchronized ResultSet getEncryptedEntry(@NonNull final String service) {
+    ensureOpen();
+
+    final Record record = index.get(service);
+    if (null == record) return null;
+
+    final ByteBuffer in = buffer.duplicate();
+    in.position(record.valueOffset);
+
+    final byte[] username = readBytes(in);
+    final byte[] password = readBytes(in);
+
+    return new ResultSet(record.cipherName, username, password);
+  }
+
+  @Override
+  @Nullable
+  public synchronized String getEntryCipherStorageName(@NonNull final String service) {
+    ensureOpen();
+
+    final Record record = index.get(service);
+
+    return (null == record) ? null : record.cipherName;
+  }
+
+  @Override
+  public synchronized void removeEntry(@NonNull final String service) {
+    ensureOpen();
+
+    if (!index.containsKey(service)) return;
+
+    try {
+      appendRecord(TYPE_DELETE, service, null);
+      flush();
+      compactIfNeeded();
+    } catch (IOException fail) {
+      throw new IllegalStateException("Could not remove entry of service: " + service, fail);
+    }
+  }
+
+  @Override
+  public synchronized void storeEncryptedEntry(@NonNull final String service,
+                                               @NonNull final EncryptionResult encryptionResult) {
+    ensureOpen();
+
+    try {
+      appendRecord(TYPE_PUT, service, encryptionResult);
+      flush();
+      compactIfNeeded();
+    } catch (IOException fail) {
+      throw new IllegalStateException("Could not store entry of service: " + service, fail);
+    }
+  }
+
+  @Override
+  public synchronized void storeEncryptedEntries(@NonNull final Map<String, EncryptionResult> entries) {
+    ensureOpen();
+
+    // validate the whole batch first, a rejected entry should not leave the others half-written
+    for (Map.Entry<String, EncryptionResult> entry : entries.entrySet()) {
+      encodeName(entry.getKey());
+      encodeName(entry.getValue().cipherName);
+    }
+
+    try {
+      for (Map.Entry<String, EncryptionResult> entry : entries.entrySet()) {
+        appendRecord(TYPE_PUT, entry.getKey(), entry.getValue());
+      }
+
+      flush();
+      compactIfNeeded();
+    } catch (IOException fail) {
+      throw new IllegalStateException("Could not store entries", fail);
+    }
+  }
+
+  @Override
+  public synchronized Set<String> getUsedCipherNames() {
+    ensureOpen();
+
+    final Set<String> result = new HashSet<>();
+    for (Record record : index.values()) {
+      result.add(record.cipherName);
+    }
+
+    return result;
+  }
+
+  @Override
+  @NonNull
+  public synchronized Set<String> getServices() {
+    ensureOpen();
+
+    return new HashSet<>(index.keySet());
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Open the file on first access, load index of the records and migrate legacy entries. */
+  private void ensureOpen() {
+    if (null != buffer) return;
+
+    try {
+      open();
+      migrate();
+    } catch (IOException | RuntimeException fail) {
+      // half-opened storage would never retry, next access starts from scratch
+      close();
+
+      throw new IllegalStateException("Could not open keychain file: " + file, fail);
+    }
+  }
+
+  /** Map the file and rebuild the index of live records. */
+  private void open() throws IOException {
+    final boolean isNew = !file.exists() || file.length() < HEADER_SIZE;
+
+    raf = new RandomAccessFile(file, "rw");
+    final int capacity = (int) Math.max(raf.length(), INITIAL_CAPACITY);
+    buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+    index.clear();
+    garbage = 0;
+
+    if (isNew) {
+      buffer.putInt(0, MAGIC);
+      buffer.put(4, VERSION);
+      end = HEADER_SIZE;
+      flush();
+      return;
+    }
+
+    if (buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION) {
+      throw new IOException("Unsupported format of the keychain file");
+    }
+
+    loadIndex();
+  }
+
+  /** Scan records from the beginning of the file. */
+  private void loadIndex() {
+    int position = HEADER_SIZE;
+
+    while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+      final int length = buffer.getInt(position);
+      final int bodyOffset = position + RECORD_HEADER_SIZE;
+
+      // zero length marks end of data, anything else that does not fit is a torn record
+      if (length <= 0 || bodyOffset + length > buffer.capacity()) break;
+
+      final ByteBuffer in = buffer.duplicate();
+      in.position(bodyOffset);
+      in.limit(bodyOffset + length);
+
+      final byte[] body = new byte[length];
+      in.get(body);
+
+      if (crc(body) != buffer.getInt(position + 4)) {
+        Log.w(LOG_TAG, "Corrupted record at " + position + ", dropping the rest of the file.");
+        break;
+      }
+
+      in.position(bodyOffset);
+      final byte type = in.get();
+      final String service = readString(in);
+      final int size = RECORD_HEADER_SIZE + length;
+
+      if (TYPE_PUT == type) {
+        final String cipherName = readString(in);
+        putRecord(service, new Record(position, size, in.position(), cipherName));
+      } else {
+        removeRecord(service);
+        garbage += size;
+      }
+
+      position += size;
+    }
+
+    end = position;
+  }
+
+  /**
+   * Move all entries of the preferences into the file. Entries already present in the file win. Entry that can not
+   * be read is left in preferences and skipped, it does not block migration of the others.
+   */
+  private void migrate() throws IOException {
+    if (null == legacy) return;
+
+    final Set<String> services = legacy.getServices();
+    if (services.isEmpty()) return;
+
+    final Set<String> migrated = new HashSet<>();
+
+    for (String service : services) {
+      if (index.containsKey(service)) {
+        migrated.add(service);
+        continue;
+      }
+
+      final ResultSet entry;
+      try {
+        entry = legacy.getEncryptedEntry(service);
+      } catch (RuntimeException fail) {
+        Log.w(LOG_TAG, "Could not read legacy entry of service: " + service + ", skipping it.", fail);
+        continue;
+      }
+
+      if (null != entry) {
+        appendRecord(TYPE_PUT, service, new EncryptionResult(entry.username, entry.password, entry.cipherStorageName));
+      }
+      migrated.add(service);
+    }
+
+    flush();
+    legacy.removeEntries(migrated);
+
+    Log.i(LOG_TAG, "Migrated " + migrated.size() + " of " + services.size() + " entries from shared preferences.");
+  }
+
+  /** Append record to the end of data and update index. Record length is written last. */
+  private void appendRecord(final byte type,
+                            @NonNull final String service,
+                            @Nullable final EncryptionResult entry) throws IOException {
+    final byte[] serviceBytes = encodeName(service);
+    int length = 1 + 2 + serviceBytes.length;
+
+    byte[] cipherBytes = null;
+    if (null != entry) {
+      cipherBytes = encodeName(entry.cipherName);
+      length += 2 + cipherBytes.length + 4 + entry.username.length + 4 + entry.password.length;
+    }
+
+    final ByteBuffer body = ByteBuffer.allocate(length);
+    body.put(type);
+    body.putShort((short) serviceBytes.length).put(serviceBytes);
+
+    int valueOffset = 0;
+    if (null != entry) {
+      body.putShort((short) cipherBytes.length).put(cipherBytes);
+      valueOffset = body.position();
+      body.putInt(entry.username.length).put(entry.username);
+      body.putInt(entry.password.length).put(entry.password);
+    }
+
+    final int position = end;
+    final int size = RECORD_HEADER_SIZE + length;
+    ensureCapacity(position + size + RECORD_HEADER_SIZE);
+
+    final ByteBuffer out = buffer.duplicate();
+    out.position(position + 4);
+    out.putInt(crc(body.array()));
+    out.put(body.array());
+    // terminate data, a zero length is the end marker for the next scan
+    out.putInt(0);
+    buffer.putInt(position, length);
+
+    end = position + size;
+
+    if (null != entry) {
+      putRecord(service, new Record(position, size, position + RECORD_HEADER_SIZE + valueOffset, entry.cipherName));
+    } else {
+      removeRecord(service);
+      garbage += size;
+    }
+  }
+
+  /** Register live record, previous record of the service becomes dead. */
+  private void putRecord(@NonNull final String service, @NonNull final Record record) {
+    final Record previous = index.put(service, record);
+    if (null != previous) garbage += previous.size;
+  }
+
+  /** Drop live record of the service. */
+  private void removeRecord(@NonNull final String service) {
+    final Record previous = index.remove(service);
+    if (null != previous) garbage += previous.size;
+  }
+
+  /**
+   * Grow the file and re-map it if there is no enough space for required size.
+   *
+   * Java has no API to unmap a buffer, previous mapping is released only when it is garbage collected. So the
+   * storage keeps a single reference to the mapping (readers work on short-living duplicates under the lock) and
+   * drops it before the re-map. Capacity doubles, so number of re-maps is logarithmic to the file size.
+   */
+  private void ensureCapacity(final int required) throws IOException {
+    if (required <= buffer.capacity()) return;
+
+    int capacity = buffer.capacity();
+    while (capacity < required) capacity *= 2;
+
+    buffer.force();
+    buffer = null;
+
+    try {
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    } catch (IOException fail) {
+      // next access opens the file again
+      close();
+      throw fail;
+    }
+  }
+
+  /** Rewrite only live records into a new file when dead records take more space than live ones. */
+  private void compactIfNeeded() throws IOException {
+    if (garbage < COMPACTION_THRESHOLD || garbage < (end - HEADER_SIZE) / 2) return;
+
+    final File temp = new File(file.getPath() + ".tmp");
+    if (temp.exists() && !temp.delete()) {
+      throw new IOException("Could not remove stale file: " + temp);
+    }
+
+    try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).put(VERSION).flip();
+      out.getChannel().write(header);
+
+      for (Record record : index.values()) {
+        final ByteBuffer in = buffer.duplicate();
+        in.position(record.offset);
+        in.limit(record.offset + record.size);
+        out.getChannel().write(in);
+      }
+
+      out.getFD().sync();
+    }
+
+    close();
+
+    if (!temp.renameTo(file)) {
+      throw new IOException("Could not replace keychain file by compacted version");
+    }
+
+    open();
+  }
+
+  /** Persist mapped changes. */
+  private void flush() {
+    buffer.force();
+  }
+
+  /** Release file and mapping. */
+  private void close() {
+    buffer = null;
+    index.clear();
+
+    if (null != raf) {
+      try {
+        raf.close();
+      } catch (IOException ignored) {
+        /* nothing to do */
+      }
+      raf = null;
+    }
+  }
+
+  @VisibleForTesting
+  /* package */ synchronized int getGarbageSize() {
+    ensureOpen();
+    return garbage;
+  }
+
+  @VisibleForTesting
+  /* package */ synchronized long getFileSize() {
+    ensureOpen();
+    return end;
+  }
+  //endregion
+
+  //region Static methods
+
+  private static int crc(@NonNull final byte[] bytes) {
+    final CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length);
+    return (int) crc.getValue();
+  }
+
+  /** Get UTF-8 bytes of the service or cipher name, throws if the name does not fit the record field. */
+  @NonNull
+  private static byte[] encodeName(@NonNull final String name) {
+    final byte[] bytes = name.getBytes(UTF8);
+
+    if (bytes.length > MAX_NAME_LENGTH) {
+      throw new IllegalArgumentException("Name is too long: " + bytes.length + " bytes, max " + MAX_NAME_LENGTH);
+    }
+
+    return bytes;
+  }
+
+  @NonNull
+  private static String readString(@NonNull final ByteBuffer in) {
+    final byte[] bytes = new byte[in.getShort() & 0xFFFF];
+    in.get(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  @NonNull
+  private static byte[] readBytes(@NonNull final ByteBuffer in) {
+    final byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return bytes;
+  }
+  //endregion
+
+  //region Nested declarations
+
+  /** Location of the live record in the file. */
+  private static final class Record {
+    /** Position of the record header. */
+    final int offset;
+    /** Full size of the record including header. */
+    final int size;
+    /** Position of the username field. */
+    final int valueOffset;
+    /** Name of the cipher storage used for encryption. */
+    final String cipherName;
+
+    Record(final int offset, final int size, final int valueOffset, @NonNull final String cipherName) {
+      this.offset = offset;
+      this.size = size;
+      this.valueOffset = valueOffset;
+      this.cipherName = cipherName;
+    }
+  }
+  //endregion
+}
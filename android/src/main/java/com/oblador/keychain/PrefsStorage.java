@@ -3,83 +3,109 @@ package com.oblador.keychain;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Base64;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.oblador.keychain.KeychainModule.KnownCiphers;
-import com.oblador.keychain.cipherStorage.CipherStorage;
 import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
-public class PrefsStorage {
+public class PrefsStorage implements DataStorage {
   public static final String KEYCHAIN_DATA = "RN_KEYCHAIN";
-
-  static public class ResultSet extends CipherStorage.CipherResult<byte[]> {
-    @KnownCiphers
-    public final String cipherStorageName;
-
-    public ResultSet(@KnownCiphers final String cipherStorageName, final byte[] usernameBytes, final byte[] passwordBytes) {
-      super(usernameBytes, passwordBytes);
-
-      this.cipherStorageName = cipherStorageName;
-    }
-  }
+  /** Former separate file of the index, index rows now live next to the records and are written by the same commit. */
+  public static final String KEYCHAIN_INDEX = KEYCHAIN_DATA + "_INDEX";
+  private static final String LOG_TAG = PrefsStorage.class.getSimpleName();
+  /** Version of the record format. */
+  private static final byte RECORD_VERSION = 1;
+  /** Cipher id of the record which keeps cipher name as a string. */
+  private static final byte CIPHER_ID_CUSTOM = 0;
+  /** Compact ids of the known ciphers, index in array is the id. Never re-order, only append. */
+  private static final String[] CIPHER_IDS = {
+    null, KnownCiphers.FB, KnownCiphers.AES, KnownCiphers.RSA, KnownCiphers.ENVELOPE, KnownCiphers.AES_GCM,
+    KnownCiphers.RSA_HYBRID
+  };
+  /** Default charset encoding. */
+  private static final Charset UTF8 = Charset.forName("UTF-8");
 
   @NonNull
   private final SharedPreferences prefs;
+  @NonNull
+  private final SharedPreferences indexPrefs;
+  /** In-memory copy of the index, loaded on first access. */
+  @Nullable
+  private Map<String, String> index;
 
   public PrefsStorage(@NonNull final ReactApplicationContext reactContext) {
     this.prefs = reactContext.getSharedPreferences(KEYCHAIN_DATA, Context.MODE_PRIVATE);
+    this.indexPrefs = reactContext.getSharedPreferences(KEYCHAIN_INDEX, Context.MODE_PRIVATE);
   }
 
+  @Override
   @Nullable
-  public ResultSet getEncryptedEntry(@NonNull final String service) {
-    byte[] bytesForUsername = getBytesForUsername(service);
-    byte[] bytesForPassword = getBytesForPassword(service);
-    String cipherStorageName = getCipherStorageName(service);
+  public synchronized ResultSet getEncryptedEntry(@NonNull final String service) {
+    final byte[] record = getBytes(getKeyForRecord(service));
 
-    // in case of wrong password or username
-    if (bytesForUsername == null || bytesForPassword == null) {
-      return null;
+    if (record != null) {
+      return decodeRecord(record);
     }
 
-    if (cipherStorageName == null) {
-      // If the CipherStorage name is not found, we assume it is because the entry was written by an older
-      // version of this library. The older version used Facebook Conceal, so we default to that.
-      cipherStorageName = KnownCiphers.FB;
-    }
+    return migrateLegacyEntry(service);
+  }
 
-    return new ResultSet(cipherStorageName, bytesForUsername, bytesForPassword);
+  /** Answer is served from the in-memory index. */
+  @Override
+  @Nullable
+  public synchronized String getEntryCipherStorageName(@NonNull final String service) {
+    return getIndex().get(service);
+  }
 
+  /** Record and index row of the service are removed by one editor commit. */
+  @Override
+  public synchronized void removeEntry(@NonNull final String service) {
+    final SharedPreferences.Editor editor = prefs.edit();
+    removeKeys(editor, service);
+    editor.apply();
+
+    getIndex().remove(service);
   }
 
-  public void removeEntry(@NonNull final String service) {
-    final String keyForUsername = getKeyForUsername(service);
-    final String keyForPassword = getKeyForPassword(service);
-    final String keyForCipherStorage = getKeyForCipherStorage(service);
+  /** Record and index row of the service are written by one editor commit. */
+  @Override
+  public synchronized void storeEncryptedEntry(@NonNull final String service,
+                                               @NonNull final EncryptionResult encryptionResult) {
+    final SharedPreferences.Editor editor = prefs.edit();
+    putRecord(editor, service, encryptionResult);
+    editor.apply();
 
-    prefs.edit()
-      .remove(keyForUsername)
-      .remove(keyForPassword)
-      .remove(keyForCipherStorage)
-      .apply();
+    getIndex().put(service, encryptionResult.cipherName);
   }
 
-  public void storeEncryptedEntry(@NonNull final String service, @NonNull final EncryptionResult encryptionResult) {
-    final String keyForUsername = getKeyForUsername(service);
-    final String keyForPassword = getKeyForPassword(service);
-    final String keyForCipherStorage = getKeyForCipherStorage(service);
+  /** Store several encrypted entries at once. All entries and their index rows are written by one editor commit. */
+  @Override
+  public synchronized void storeEncryptedEntries(@NonNull final Map<String, EncryptionResult> entries) {
+    final SharedPreferences.Editor editor = prefs.edit();
+
+    for (Map.Entry<String, EncryptionResult> entry : entries.entrySet()) {
+      putRecord(editor, entry.getKey(), entry.getValue());
+    }
+
+    editor.apply();
 
-    prefs.edit()
-      .putString(keyForUsername, Base64.encodeToString(encryptionResult.username, Base64.DEFAULT))
-      .putString(keyForPassword, Base64.encodeToString(encryptionResult.password, Base64.DEFAULT))
-      .putString(keyForCipherStorage, encryptionResult.cipherName)
-      .apply();
+    final Map<String, String> index = getIndex();
+    for (Map.Entry<String, EncryptionResult> entry : entries.entrySet()) {
+      index.put(entry.getKey(), entry.getValue().cipherName);
+    }
   }
 
   /**
@@ -87,22 +113,159 @@ public class PrefsStorage {
    *
    * A cipher type is stored together with the datum upon encryption so the datum can later be decrypted using correct
    * cipher. This way, a {@link PrefsStorage} can involve different ciphers for different data. This method returns all
-   * ciphers involved with this storage.
+   * ciphers involved with this storage. Answer is served from the index, costs O(services).
    *
    * @return set of cipher names
    */
-  public Set<String> getUsedCipherNames() {
-    Set<String> result = new HashSet<>();
-
-    Set<String> keys = prefs.getAll().keySet();
-    for (String key : keys) {
-      if (isKeyForCipherStorage(key)) {
-        String cipher = prefs.getString(key, null);
-        result.add(cipher);
+  @Override
+  public synchronized Set<String> getUsedCipherNames() {
+    return new HashSet<>(getIndex().values());
+  }
+
+  /** List all services that have an entry in this storage. */
+  @Override
+  @NonNull
+  public synchronized Set<String> getServices() {
+    return new HashSet<>(getIndex().keySet());
+  }
+
+  /** Remove entries of all provided services and their index rows by one editor commit. */
+  public synchronized void removeEntries(@NonNull final Collection<String> services) {
+    final SharedPreferences.Editor editor = prefs.edit();
+
+    for (String service : services) {
+      removeKeys(editor, service);
+    }
+
+    editor.apply();
+
+    final Map<String, String> index = getIndex();
+    for (String service : services) {
+      index.remove(service);
+    }
+  }
+
+  /**
+   * Get in-memory index, load it from preferences on first call. Every entry found in the data preferences is
+   * indexed: index row is used when it exists, otherwise cipher name is taken from the entry itself and the missing
+   * row is written, e.g. entries were written by an older version of the library. Rows without an entry are dropped.
+   * Entries that can not be parsed are skipped.
+   */
+  @NonNull
+  private synchronized Map<String, String> getIndex() {
+    if (null != index) return index;
+
+    final Map<String, ?> all = prefs.getAll();
+    final Map<String, String> loaded = new HashMap<>();
+    final SharedPreferences.Editor repair = prefs.edit();
+    boolean repaired = false;
+
+    for (Map.Entry<String, ?> entry : all.entrySet()) {
+      final String key = entry.getKey();
+
+      // password key exists for any legacy entry, even for entries written by very old versions of the library
+      if (!isKeyForRecord(key) && !isKeyForPassword(key)) continue;
+
+      final String service = getServiceOfKey(key);
+      if (loaded.containsKey(service)) continue;
+
+      final Object row = all.get(getKeyForIndex(service));
+      String name = (row instanceof String) ? (String) row : null;
+
+      if (null == name) {
+        name = resolveCipherName(service, key, entry.getValue());
+        if (null == name) continue;
+
+        repair.putString(getKeyForIndex(service), name);
+        repaired = true;
       }
+
+      loaded.put(service, name);
     }
 
-    return result;
+    for (String key : all.keySet()) {
+      if (isKeyForIndex(key) && !loaded.containsKey(getServiceOfKey(key))) {
+        repair.remove(key);
+        repaired = true;
+      }
+    }
+
+    if (repaired) repair.apply();
+
+    // index of the previous versions is not used anymore
+    if (!indexPrefs.getAll().isEmpty()) indexPrefs.edit().clear().apply();
+
+    index = loaded;
+    return index;
+  }
+
+  /** Get cipher name of the entry without index row, NULL if entry can not be parsed. */
+  @Nullable
+  private String resolveCipherName(@NonNull final String service, @NonNull final String key, final Object value) {
+    if (isKeyForPassword(key)) {
+      final String cipherName = getCipherStorageName(service);
+
+      return (null == cipherName) ? KnownCiphers.FB : cipherName;
+    }
+
+    try {
+      return decodeRecord(Base64.decode(String.valueOf(value), Base64.DEFAULT)).cipherStorageName;
+    } catch (RuntimeException fail) {
+      Log.w(LOG_TAG, "Skipping unreadable record of the service: " + service, fail);
+
+      return null;
+    }
+  }
+
+  /**
+   * Read entry written in legacy three keys layout and re-write it as a single record.
+   *
+   * @return entry or NULL if there is no legacy entry of the service
+   */
+  @Nullable
+  private ResultSet migrateLegacyEntry(@NonNull final String service) {
+    byte[] bytesForUsername = getBytesForUsername(service);
+    byte[] bytesForPassword = getBytesForPassword(service);
+    String cipherStorageName = getCipherStorageName(service);
+
+    // in case of wrong password or username
+    if (bytesForUsername == null || bytesForPassword == null) {
+      return null;
+    }
+
+    if (cipherStorageName == null) {
+      // If the CipherStorage name is not found, we assume it is because the entry was written by an older
+      // version of this library. The older version used Facebook Conceal, so we default to that.
+      cipherStorageName = KnownCiphers.FB;
+    }
+
+    final SharedPreferences.Editor editor = prefs.edit();
+    putRecord(editor, service, new EncryptionResult(bytesForUsername, bytesForPassword, cipherStorageName));
+    editor.apply();
+
+    return new ResultSet(cipherStorageName, bytesForUsername, bytesForPassword);
+  }
+
+  /** Put record and index row of the entry, drop legacy keys of the service. */
+  private static void putRecord(@NonNull final SharedPreferences.Editor editor,
+                                @NonNull final String service,
+                                @NonNull final EncryptionResult encryptionResult) {
+    editor
+      .putString(getKeyForRecord(service), Base64.encodeToString(encodeRecord(encryptionResult), Base64.DEFAULT))
+      .putString(getKeyForIndex(service), encryptionResult.cipherName)
+      .remove(getKeyForUsername(service))
+      .remove(getKeyForPassword(service))
+      .remove(getKeyForCipherStorage(service));
+  }
+
+  /** Remove record, index row and legacy keys of the service. */
+  private static void removeKeys(@NonNull final SharedPreferences.Editor editor, @NonNull final String service) {
+    editor
+      .remove(getKeyForRecord(service))
+      .remove(getKeyForIndex(service))
+      .remove(getKeyForUsername(service))
+      .remove(getKeyForPassword(service))
+      .remove(getKeyForCipherStorage(service));
   }
 
   @Nullable
@@ -125,6 +288,11 @@ public class PrefsStorage {
     return this.prefs.getString(key, null);
   }
 
+  @NonNull
+  public static String getKeyForRecord(@NonNull final String service) {
+    return service + ":" + "r";
+  }
+
   @NonNull
   public static String getKeyForUsername(@NonNull final String service) {
     return service + ":" + "u";
@@ -140,10 +308,101 @@ public class PrefsStorage {
     return service + ":" + "c";
   }
 
+  @NonNull
+  public static String getKeyForIndex(@NonNull final String service) {
+    return service + ":" + "i";
+  }
+
+  /** Get service of the key built by one of the getKeyFor* methods. */
+  @NonNull
+  private static String getServiceOfKey(@NonNull final String key) {
+    return key.substring(0, Math.max(0, key.length() - 2));
+  }
+
   public static boolean isKeyForCipherStorage(@NonNull final String key) {
     return key.endsWith(":c");
   }
 
+  public static boolean isKeyForPassword(@NonNull final String key) {
+    return key.endsWith(":p");
+  }
+
+  public static boolean isKeyForRecord(@NonNull final String key) {
+    return key.endsWith(":r");
+  }
+
+  public static boolean isKeyForIndex(@NonNull final String key) {
+    return key.endsWith(":i");
+  }
+
+  /**
+   * Serialize entry into a record:
+   * `[version:byte][cipher id:byte]([cipher name:short+utf8] when id is 0)[username:int+bytes][password:int+bytes]`.
+   */
+  @NonNull
+  public static byte[] encodeRecord(@NonNull final EncryptionResult encryptionResult) {
+    final byte cipherId = getCipherId(encryptionResult.cipherName);
+    final byte[] name = (CIPHER_ID_CUSTOM == cipherId) ? encryptionResult.cipherName.getBytes(UTF8) : new byte[0];
+    final int nameSize = (CIPHER_ID_CUSTOM == cipherId) ? 2 + name.length : 0;
+
+    final ByteBuffer out = ByteBuffer.allocate(
+      2 + nameSize + 4 + encryptionResult.username.length + 4 + encryptionResult.password.length);
+
+    out.put(RECORD_VERSION).put(cipherId);
+    if (CIPHER_ID_CUSTOM == cipherId) {
+      out.putShort((short) name.length).put(name);
+    }
+    out.putInt(encryptionResult.username.length).put(encryptionResult.username);
+    out.putInt(encryptionResult.password.length).put(encryptionResult.password);
+
+    return out.array();
+  }
+
+  /** Parse record created by {@link #encodeRecord(EncryptionResult)}. */
+  @NonNull
+  public static ResultSet decodeRecord(@NonNull final byte[] record) {
+    final ByteBuffer in = ByteBuffer.wrap(record);
+
+    final byte version = in.get();
+    if (RECORD_VERSION != version) {
+      throw new IllegalStateException("Unsupported version of the record: " + version);
+    }
+
+    final byte cipherId = in.get();
+    final String cipherName;
+    if (CIPHER_ID_CUSTOM == cipherId) {
+      final byte[] name = new byte[in.getShort() & 0xFFFF];
+      in.get(name);
+      cipherName = new String(name, UTF8);
+    } else {
+      cipherName = getCipherName(cipherId);
+    }
+
+    final byte[] username = new byte[in.getInt()];
+    in.get(username);
+    final byte[] password = new byte[in.getInt()];
+    in.get(password);
+
+    return new ResultSet(cipherName, username, password);
+  }
+
+  private static byte getCipherId(@NonNull final String cipherName) {
+    for (int i = 1; i < CIPHER_IDS.length; i++) {
+      if (CIPHER_IDS[i].equals(cipherName)) return (byte) i;
+    }
+
+    return CIPHER_ID_CUSTOM;
+  }
+
+  @NonNull
+  private static String getCipherName(final byte cipherId) {
+    if (cipherId <= 0 || cipherId >= CIPHER_IDS.length) {
+      throw new IllegalStateException("Unknown cipher id of the record: " + cipherId);
+    }
+
+    return CIPHER_IDS[cipherId];
+  }
+
   @Nullable
   private byte[] getBytes(@NonNull final String key) {
     String value = this.prefs.getString(key, null);
@@ -0,0 +1,75 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks, alias is mapped to a lock by hash. Sequences on the same alias never interleave, sequences
+ * on different aliases mostly run in parallel (unless aliases share a stripe). Several stripes are always taken in
+ * ascending order, so batch sequences can not deadlock each other.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class StripedLocks {
+  //region Constants
+  /** Default number of stripes. */
+  public static final int DEFAULT_STRIPES = 32;
+  //endregion
+
+  //region Members
+  private final ReentrantLock[] stripes;
+  //endregion
+
+  public StripedLocks() {
+    this(DEFAULT_STRIPES);
+  }
+
+  public StripedLocks(final int count) {
+    if (count < 1) throw new IllegalArgumentException("Number of stripes should be positive");
+
+    stripes = new ReentrantLock[count];
+    for (int i = 0; i < count; i++) stripes[i] = new ReentrantLock();
+  }
+
+  /** Get lock of the alias. */
+  @NonNull
+  public ReentrantLock get(@NonNull final String alias) {
+    return stripes[indexOf(alias)];
+  }
+
+  /** Take locks of all aliases. */
+  public void lockAll(@NonNull final Collection<String> aliases) {
+    for (int index : indexesOf(aliases)) stripes[index].lock();
+  }
+
+  /** Release locks taken by {@link #lockAll(Collection)}. */
+  public void unlockAll(@NonNull final Collection<String> aliases) {
+    for (int index : indexesOf(aliases).descendingSet()) stripes[index].unlock();
+  }
+
+  /** Is lock of the alias held by the current thread. */
+  public boolean isHeldByCurrentThread(@NonNull final String alias) {
+    return get(alias).isHeldByCurrentThread();
+  }
+
+  public int getStripesCount() {
+    return stripes.length;
+  }
+
+  private int indexOf(@NonNull final String alias) {
+    // spread the hash, aliases often share a prefix
+    final int hash = alias.hashCode();
+
+    return ((hash ^ (hash >>> 16)) & 0x7fffffff) % stripes.length;
+  }
+
+  @NonNull
+  private TreeSet<Integer> indexesOf(@NonNull final Collection<String> aliases) {
+    final TreeSet<Integer> indexes = new TreeSet<>();
+    for (String alias : aliases) indexes.add(indexOf(alias));
+
+    return indexes;
+  }
+}
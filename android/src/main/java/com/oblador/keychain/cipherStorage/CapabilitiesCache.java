@@ -0,0 +1,68 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Persistent results of the keystore capability probes. Probe creates a real key in keystore, so doing it on
+ * every cold start is expensive. Results are bound to the OS build fingerprint and security patch level and
+ * dropped automatically after an OS update.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class CapabilitiesCache {
+  //region Constants
+  /** Preferences with probe results. */
+  public static final String KEYCHAIN_CAPABILITIES = "RN_KEYCHAIN_CAPABILITIES";
+  /** Preferences key of the OS build the results belong to. */
+  private static final String KEY_BUILD = "build";
+  /** Suffix of the secure hardware probe result. */
+  public static final String SECURE_HARDWARE = ":secureHardware";
+  /** Suffix of the StrongBox probe result. */
+  public static final String STRONGBOX = ":strongbox";
+  //endregion
+
+  //region Members
+  @NonNull
+  private final SharedPreferences prefs;
+  //endregion
+
+  public CapabilitiesCache(@NonNull final Context context) {
+    this(context, getBuildFingerprint());
+  }
+
+  @VisibleForTesting
+  /* package */ CapabilitiesCache(@NonNull final Context context, @NonNull final String build) {
+    prefs = context.getSharedPreferences(KEYCHAIN_CAPABILITIES, Context.MODE_PRIVATE);
+
+    // results of the previous OS version are not trusted
+    if (!build.equals(prefs.getString(KEY_BUILD, null))) {
+      prefs.edit().clear().putString(KEY_BUILD, build).apply();
+    }
+  }
+
+  /** Get cached result of the probe, NULL - probe never completed on this OS build. */
+  @Nullable
+  public Boolean get(@NonNull final String storageName, @NonNull final String probe) {
+    final String key = storageName + probe;
+
+    return prefs.contains(key) ? prefs.getBoolean(key, false) : null;
+  }
+
+  /** Remember result of the probe. */
+  public void put(@NonNull final String storageName, @NonNull final String probe, final boolean value) {
+    prefs.edit().putBoolean(storageName + probe, value).apply();
+  }
+
+  /** OS build fingerprint extended by the security patch level, patches may change keystore implementation. */
+  @NonNull
+  public static String getBuildFingerprint() {
+    final String patch = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) ? Build.VERSION.SECURITY_PATCH : "";
+
+    return Build.FINGERPRINT + "|" + patch;
+  }
+}
@@ -0,0 +1,68 @@
+package com.oblador.keychain.cipherStorage;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Per-thread cache of {@link Cipher} instances keyed by transformation and provider.
+ *
+ * Cipher is a mutable object (init/update/doFinal) and can not be shared between threads, but
+ * {@link Cipher#getInstance(String)} is slow. Each thread gets own instance that is created once and reused
+ * for all next calls, so encrypt/decrypt operations can run in parallel without any locking.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class CipherCache {
+  /** Cached instances of the current thread. ThreadLocal.withInitial() is available from api26 only. */
+  private final ThreadLocal<Map<String, Cipher>> ciphers = new ThreadLocal<Map<String, Cipher>>() {
+    @Override
+    protected Map<String, Cipher> initialValue() {
+      return new HashMap<>();
+    }
+  };
+
+  /** Get cipher instance of the default provider confined to the calling thread. */
+  @NonNull
+  public Cipher get(@NonNull final String transformation)
+    throws NoSuchAlgorithmException, NoSuchPaddingException {
+    final Map<String, Cipher> cache = ciphers.get();
+    Cipher cipher = cache.get(transformation);
+
+    if (null == cipher) {
+      cipher = Cipher.getInstance(transformation);
+      cache.put(transformation, cipher);
+    }
+
+    return cipher;
+  }
+
+  /** Get cipher instance of the specified provider confined to the calling thread. */
+  @NonNull
+  public Cipher get(@NonNull final String transformation, @Nullable final String provider)
+    throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException {
+    if (null == provider) return get(transformation);
+
+    final Map<String, Cipher> cache = ciphers.get();
+    final String key = transformation + "@" + provider;
+    Cipher cipher = cache.get(key);
+
+    if (null == cipher) {
+      cipher = Cipher.getInstance(transformation, provider);
+      cache.put(key, cipher);
+    }
+
+    return cipher;
+  }
+
+  /** Drop all instances cached by the calling thread. */
+  public void clear() {
+    ciphers.remove();
+  }
+}
@@ -8,7 +8,9 @@ import com.oblador.keychain.decryptionHandler.DecryptionResultHandler;
 import com.oblador.keychain.exceptions.CryptoFailedException;
 import com.oblador.keychain.exceptions.KeyStoreAccessException;
 
+import java.io.Closeable;
 import java.security.Key;
+import java.util.Arrays;
 import java.util.Set;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
@@ -61,6 +63,58 @@ public interface CipherStorage {
     }
   }
 
+  /**
+   * Decrypted credentials in mutable arrays. Unlike strings they can be wiped as soon as they are not needed,
+   * owner should call {@link #wipe()} (or use try-with-resources).
+   */
+  abstract class SecretResult<T> extends CipherResult<T> implements Closeable {
+    private final SecurityLevel securityLevel;
+
+    public SecretResult(final T username, final T password, final SecurityLevel level) {
+      super(username, password);
+      securityLevel = level;
+    }
+
+    public SecurityLevel getSecurityLevel() {
+      return securityLevel;
+    }
+
+    /** Overwrite username and password by zeros. */
+    public abstract void wipe();
+
+    /** Same as {@link #wipe()}. */
+    @Override
+    public void close() {
+      wipe();
+    }
+  }
+
+  /** Credentials as UTF-8 encoded bytes. */
+  class SecretBytes extends SecretResult<byte[]> {
+    public SecretBytes(final byte[] username, final byte[] password, final SecurityLevel level) {
+      super(username, password, level);
+    }
+
+    @Override
+    public void wipe() {
+      Arrays.fill(username, (byte) 0);
+      Arrays.fill(password, (byte) 0);
+    }
+  }
+
+  /** Credentials as characters. */
+  class SecretChars extends SecretResult<char[]> {
+    public SecretChars(final char[] username, final char[] password, final SecurityLevel level) {
+      super(username, password, level);
+    }
+
+    @Override
+    public void wipe() {
+      Arrays.fill(username, '\0');
+      Arrays.fill(password, '\0');
+    }
+  }
+
   /** Ask access permission for decrypting credentials in provided context. */
   class DecryptionContext extends CipherResult<byte[]> {
     public final Key key;
@@ -98,6 +152,38 @@ public interface CipherStorage {
                            @NonNull final SecurityLevel level)
     throws CryptoFailedException;
 
+  /** Encrypt UTF-8 encoded credentials. Provided arrays are not modified, caller owns and wipes them. */
+  @NonNull
+  EncryptionResult encrypt(@NonNull final String alias,
+                           @NonNull final byte[] username,
+                           @NonNull final byte[] password,
+                           @NonNull final SecurityLevel level)
+    throws CryptoFailedException;
+
+  /** Encrypt credentials kept in characters. Provided arrays are not modified, caller owns and wipes them. */
+  @NonNull
+  EncryptionResult encrypt(@NonNull final String alias,
+                           @NonNull final char[] username,
+                           @NonNull final char[] password,
+                           @NonNull final SecurityLevel level)
+    throws CryptoFailedException;
+
+  /** Decrypt credentials into UTF-8 encoded bytes, caller wipes them after use. */
+  @NonNull
+  SecretBytes decryptToBytes(@NonNull final String alias,
+                             @NonNull final byte[] username,
+                             @NonNull final byte[] password,
+                             @NonNull final SecurityLevel level)
+    throws CryptoFailedException;
+
+  /** Decrypt credentials into characters, caller wipes them after use. */
+  @NonNull
+  SecretChars decryptToChars(@NonNull final String alias,
+                             @NonNull final byte[] username,
+                             @NonNull final byte[] password,
+                             @NonNull final SecurityLevel level)
+    throws CryptoFailedException;
+
   /** Decrypt the credentials but redirect results of operation to handler. */
   void decrypt(@NonNull final DecryptionResultHandler handler,
                @NonNull final String alias,
@@ -3,6 +3,7 @@ package com.oblador.keychain.cipherStorage;
 import android.os.Build;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyInfo;
+import android.security.keystore.StrongBoxUnavailableException;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -14,12 +15,13 @@ import com.oblador.keychain.SecurityLevel;
 import com.oblador.keychain.exceptions.CryptoFailedException;
 import com.oblador.keychain.exceptions.KeyStoreAccessException;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.security.Key;
@@ -28,6 +30,7 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.ProviderException;
 import java.security.UnrecoverableKeyException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -36,8 +39,6 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 
@@ -54,10 +55,17 @@ abstract public class CipherStorageBase implements CipherStorage {
   public static final String TEST_KEY_ALIAS = KEYSTORE_TYPE + "#supportsSecureHardware";
   /** Size of hash calculation buffer. Default: 4Kb. */
   private static final int BUFFER_SIZE = 4 * 1024;
-  /** Default size of read/write operation buffer. Default: 16Kb. */
+  /**
+   * Default size of read/write operation buffer. Default: 16Kb.
+   *
+   * @deprecated used only by {@link #copy(InputStream, OutputStream)}, will be removed together with it.
+   */
+  @Deprecated
   private static final int BUFFER_READ_WRITE_SIZE = 4 * BUFFER_SIZE;
   /** Default charset encoding. */
   public static final Charset UTF8 = Charset.forName("UTF-8");
+  /** Username slot of the combined record, both fields are kept in the password slot. */
+  public static final byte[] RECORD_MARKER = new byte[0];
   //endregion
 
   //region Members
@@ -69,10 +77,21 @@ abstract public class CipherStorageBase implements CipherStorage {
   protected final Object _syncStrongbox = new Object();
   /** Try to resolve support of the strongbox and cache result for future calls. */
   protected transient AtomicBoolean isStrongboxAvailable;
-  /** Get cached instance of cipher. Get instance operation is slow. */
+  /** Per-thread cache of cipher instances. Get instance operation is slow and Cipher is not thread-safe. */
+  protected final transient CipherCache cipherCache = new CipherCache();
+  /** Cipher instance forced for all threads. Used only by tests, see {@link #setCipher(Cipher)}. */
   protected transient Cipher cachedCipher;
   /** Cached instance of the Keystore. */
   protected transient KeyStore cachedKeyStore;
+  /** Thread-confined buffers of the encrypt/decrypt operations. */
+  protected final transient ScratchBuffers scratchBuffers = new ScratchBuffers(UTF8);
+  /** Resolved keystore key handles, saves binder calls on every operation. */
+  protected final transient KeyCache keyCache = new KeyCache();
+  /** Persistent results of the capability probes, NULL - probe in every process. */
+  @Nullable
+  protected transient CapabilitiesCache capabilities;
+  /** Write both fields by one cipher operation, see {@link #setCombinedRecords(boolean)}. */
+  protected volatile boolean combinedRecords;
   //endregion
 
   //region Overrides
@@ -94,6 +113,7 @@ abstract public class CipherStorageBase implements CipherStorage {
 
     return
       (1000 * (isBiometrySupported() ? 1 : 0)) + // 0..1000
+        (100 * (SECURE_HARDWARE == securityLevel() ? 1 : 0)) + // 0..100
         (getMinSupportedApiLevel()); // 19..29
   }
 
@@ -106,6 +126,14 @@ abstract public class CipherStorageBase implements CipherStorage {
       // double check pattern in use
       if (null != isSupportsSecureHardware) return isSupportsSecureHardware.get();
 
+      final Boolean cached = (null == capabilities) ? null
+        : capabilities.get(getCipherStorageName(), CapabilitiesCache.SECURE_HARDWARE);
+
+      if (null != cached) {
+        isSupportsSecureHardware = new AtomicBoolean(cached);
+        return cached;
+      }
+
       isSupportsSecureHardware = new AtomicBoolean(false);
 
       SelfDestroyKey sdk = null;
@@ -117,6 +145,11 @@ abstract public class CipherStorageBase implements CipherStorage {
         final boolean newValue = validateKeySecurityLevel(SECURE_HARDWARE, sdk.key);
 
         isSupportsSecureHardware.set(newValue);
+
+        // only completed probe is remembered, failures are re-tried by next process
+        if (null != capabilities) {
+          capabilities.put(getCipherStorageName(), CapabilitiesCache.SECURE_HARDWARE, newValue);
+        }
       } catch (Throwable ignored) {
       } finally {
         if (null != sdk) sdk.close();
@@ -135,8 +168,17 @@ abstract public class CipherStorageBase implements CipherStorage {
   /** Remove key with provided name from security storage. */
   @Override
   public void removeKey(@NonNull final String alias) throws KeyStoreAccessException {
-    final String safeAlias = getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName());
+    deleteKeyEntry(getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName()));
+  }
+
+  /**
+   * Delete keystore entry with exactly this alias and forget cached key of it. Not overridable: storages that
+   * decorate service aliases in {@link #removeKey(String)} should not touch internal aliases like
+   * {@link #TEST_KEY_ALIAS}.
+   */
+  private void deleteKeyEntry(@NonNull final String safeAlias) throws KeyStoreAccessException {
     final KeyStore ks = getKeyStoreAndLoad();
+    evictKey(safeAlias);
 
     try {
       if (ks.containsAlias(safeAlias)) {
@@ -159,6 +201,82 @@ abstract public class CipherStorageBase implements CipherStorage {
     }
   }
 
+
+  /**
+   * Encrypt UTF-8 encoded credentials. Default implementation goes through the strings API, storages that
+   * encrypt bytes directly override it.
+   */
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final byte[] username,
+                                  @NonNull final byte[] password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    return encrypt(alias, new String(username, UTF8), new String(password, UTF8), level);
+  }
+
+  /** Encode characters into temporary UTF-8 arrays, wiped right after encryption. */
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final char[] username,
+                                  @NonNull final char[] password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    byte[] user = null;
+    byte[] pass = null;
+
+    try {
+      user = toBytes(username);
+      pass = toBytes(password);
+
+      return encrypt(alias, user, pass, level);
+    } catch (CharacterCodingException fail) {
+      throw new CryptoFailedException("Could not encode credentials with alias: " + alias, fail);
+    } finally {
+      if (null != user) ScratchBuffers.wipe(user, user.length);
+      if (null != pass) ScratchBuffers.wipe(pass, pass.length);
+    }
+  }
+
+  /**
+   * Decrypt credentials into UTF-8 encoded bytes. Default implementation goes through the strings API, storages
+   * that decrypt bytes directly override it.
+   */
+  @Override
+  @NonNull
+  public SecretBytes decryptToBytes(@NonNull final String alias,
+                                    @NonNull final byte[] username,
+                                    @NonNull final byte[] password,
+                                    @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    final DecryptionResult result = decrypt(alias, username, password, level);
+
+    return new SecretBytes(
+      result.username.getBytes(UTF8),
+      result.password.getBytes(UTF8),
+      result.getSecurityLevel());
+  }
+
+  /** Decode bytes of {@link #decryptToBytes(String, byte[], byte[], SecurityLevel)}, intermediate bytes are wiped. */
+  @Override
+  @NonNull
+  public SecretChars decryptToChars(@NonNull final String alias,
+                                    @NonNull final byte[] username,
+                                    @NonNull final byte[] password,
+                                    @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    try {
+      return toChars(decryptToBytes(alias, username, password, level));
+    } catch (CharacterCodingException fail) {
+      throw new CryptoFailedException("Could not decode credentials with alias: " + alias, fail);
+    }
+  }
   //endregion
 
   //region Abstract methods
@@ -194,18 +312,12 @@ abstract public class CipherStorageBase implements CipherStorage {
 
   //region Implementation
 
-  /** Get cipher instance and cache it for any next call. */
+  /** Get cipher instance confined to the calling thread and cache it for any next call. */
   @NonNull
   public Cipher getCachedInstance() throws NoSuchAlgorithmException, NoSuchPaddingException {
-    if (null == cachedCipher) {
-      synchronized (this) {
-        if (null == cachedCipher) {
-          cachedCipher = Cipher.getInstance(getEncryptionTransformation());
-        }
-      }
-    }
+    if (null != cachedCipher) return cachedCipher;
 
-    return cachedCipher;
+    return cipherCache.get(getEncryptionTransformation());
   }
 
   /** Check requirements to the security level. */
@@ -225,7 +337,8 @@ abstract public class CipherStorageBase implements CipherStorage {
                                     @NonNull final SecurityLevel level,
                                     @NonNull final AtomicInteger retries)
     throws GeneralSecurityException {
-    Key key;
+    Key key = keyCache.get(safeAlias);
+    if (null != key) return key;
 
     do {
       final KeyStore keyStore = getKeyStoreAndLoad();
@@ -239,6 +352,8 @@ abstract public class CipherStorageBase implements CipherStorage {
       key = extractKey(keyStore, safeAlias, retries);
     } while (null == key);
 
+    keyCache.put(safeAlias, key);
+
     return key;
   }
 
@@ -255,6 +370,8 @@ abstract public class CipherStorageBase implements CipherStorage {
     try {
       key = keyStore.getKey(safeAlias, null);
     } catch (final UnrecoverableKeyException ex) {
+      evictKey(safeAlias);
+
       // try one more time
       if (retry.getAndDecrement() > 0) {
         keyStore.deleteEntry(safeAlias);
@@ -273,6 +390,11 @@ abstract public class CipherStorageBase implements CipherStorage {
     return key;
   }
 
+  /** Forget everything cached for the keystore entry, called when entry is deleted or broken. */
+  protected void evictKey(@NonNull final String safeAlias) {
+    keyCache.remove(safeAlias);
+  }
+
   /** Verify that provided key satisfy minimal needed level. */
   protected boolean validateKeySecurityLevel(@NonNull final SecurityLevel level,
                                              @NonNull final Key key)
@@ -337,28 +459,187 @@ abstract public class CipherStorageBase implements CipherStorage {
     return decryptBytes(key, bytes, Defaults.decrypt);
   }
 
-  /** Encrypt provided string value. */
+  /** Decode UTF-8 credentials into characters, provided bytes are wiped. */
+  @NonNull
+  protected SecretChars toChars(@NonNull final SecretBytes plain) throws CharacterCodingException {
+    try (SecretBytes bytes = plain) {
+      return new SecretChars(
+        scratchBuffers.decode(bytes.username, 0, bytes.username.length),
+        scratchBuffers.decode(bytes.password, 0, bytes.password.length),
+        bytes.getSecurityLevel());
+    }
+  }
+
+  /** Encode characters into exactly sized UTF-8 array, caller wipes it. */
+  @NonNull
+  protected byte[] toBytes(@NonNull final char[] value) throws CharacterCodingException {
+    final ScratchBuffers.Scratch scratch = scratchBuffers.get();
+    int length = 0;
+
+    try {
+      length = scratch.encode(CharBuffer.wrap(value));
+
+      return Arrays.copyOf(scratch.encoded(), length);
+    } finally {
+      ScratchBuffers.wipe(scratch.encoded(), length);
+    }
+  }
+
+  /**
+   * Decrypt credentials by the key extracted earlier, e.g. after user authentication unlocked it.
+   * Storages with own data layout override it.
+   */
+  @NonNull
+  public DecryptionResult decrypt(@NonNull final DecryptionContext context)
+    throws IOException, GeneralSecurityException {
+
+    if (isCombinedRecord(context.username)) {
+      return decryptRecord(context.key, context.password, Defaults.decrypt, SecurityLevel.ANY);
+    }
+
+    return new DecryptionResult(
+      decryptBytes(context.key, context.username),
+      decryptBytes(context.key, context.password)
+    );
+  }
+
+  /** Encrypt both fields by one cipher operation, username slot of the result keeps {@link #RECORD_MARKER}. */
+  @NonNull
+  protected EncryptionResult encryptRecord(@NonNull final Key key,
+                                           @NonNull final String username,
+                                           @NonNull final String password,
+                                           @Nullable final EncryptStringHandler handler)
+    throws IOException, GeneralSecurityException {
+
+    final ScratchBuffers.Scratch scratch = scratchBuffers.get();
+    int length = 0;
+
+    try {
+      length = scratch.encode(username, password);
+
+      return new EncryptionResult(RECORD_MARKER, encryptBytes(key, scratch.encoded(), 0, length, handler), this);
+    } finally {
+      ScratchBuffers.wipe(scratch.encoded(), length);
+    }
+  }
+
+  /** Encrypt both UTF-8 fields by one cipher operation, username slot of the result keeps {@link #RECORD_MARKER}. */
+  @NonNull
+  protected EncryptionResult encryptRecord(@NonNull final Key key,
+                                           @NonNull final byte[] username,
+                                           @NonNull final byte[] password,
+                                           @Nullable final EncryptStringHandler handler)
+    throws IOException, GeneralSecurityException {
+
+    final ScratchBuffers.Scratch scratch = scratchBuffers.get();
+    int length = 0;
+
+    try {
+      length = scratch.pack(username, password);
+
+      return new EncryptionResult(RECORD_MARKER, encryptBytes(key, scratch.encoded(), 0, length, handler), this);
+    } finally {
+      ScratchBuffers.wipe(scratch.encoded(), length);
+    }
+  }
+
+  /** Decrypt combined record straight from the scratch buffer into strings. */
+  @NonNull
+  protected DecryptionResult decryptRecord(@NonNull final Key key, @NonNull final byte[] bytes,
+                                           @Nullable final DecryptBytesHandler handler,
+                                           @NonNull final SecurityLevel level)
+    throws GeneralSecurityException, IOException {
+
+    return decryptWith(key, bytes, handler, (plain, length) -> {
+      final int size = readRecordHeader(plain, length);
+      final int offset = ScratchBuffers.RECORD_HEADER_SIZE + size;
+
+      return new DecryptionResult(
+        new String(plain, ScratchBuffers.RECORD_HEADER_SIZE, size, UTF8),
+        new String(plain, offset, length - offset, UTF8),
+        level);
+    });
+  }
+
+  /** Decrypt combined record into exactly sized UTF-8 arrays, caller wipes them. */
+  @NonNull
+  protected SecretBytes decryptRecordToBytes(@NonNull final Key key, @NonNull final byte[] bytes,
+                                             @Nullable final DecryptBytesHandler handler,
+                                             @NonNull final SecurityLevel level)
+    throws GeneralSecurityException, IOException {
+
+    return decryptWith(key, bytes, handler, (plain, length) -> unpackRecord(plain, length, level));
+  }
+
+  /** Decrypt combined record into exactly sized characters arrays, caller wipes them. */
+  @NonNull
+  protected SecretChars decryptRecordToChars(@NonNull final Key key, @NonNull final byte[] bytes,
+                                             @Nullable final DecryptBytesHandler handler,
+                                             @NonNull final SecurityLevel level)
+    throws GeneralSecurityException, IOException {
+
+    return decryptWith(key, bytes, handler, (plain, length) -> {
+      final int size = readRecordHeader(plain, length);
+      final int offset = ScratchBuffers.RECORD_HEADER_SIZE + size;
+
+      return new SecretChars(
+        scratchBuffers.decode(plain, ScratchBuffers.RECORD_HEADER_SIZE, size),
+        scratchBuffers.decode(plain, offset, length - offset),
+        level);
+    });
+  }
+
+  /**
+   * Encrypt provided string value: `[handler prefix, e.g. IV][ciphertext]`.
+   *
+   * Plain text is encoded into thread-confined scratch buffer and wiped right after the operation.
+   */
   @NonNull
   protected byte[] encryptString(@NonNull final Key key, @NonNull final String value,
                                  @Nullable final EncryptStringHandler handler)
     throws IOException, GeneralSecurityException {
 
-    final Cipher cipher = getCachedInstance();
+    final ScratchBuffers.Scratch scratch = scratchBuffers.get();
+    int length = 0;
+
+    try {
+      length = scratch.encode(value);
 
-    // encrypt the value using a CipherOutputStream
-    try (final ByteArrayOutputStream output = new ByteArrayOutputStream()) {
+      return encryptBytes(key, scratch.encoded(), 0, length, handler);
+    } finally {
+      ScratchBuffers.wipe(scratch.encoded(), length);
+    }
+  }
 
-      // write initialization vector to the beginning of the stream
+  /**
+   * Encrypt provided plain text bytes: `[handler prefix, e.g. IV][ciphertext]`.
+   *
+   * Single `doFinal` into exactly sized output, no stream wrappers or intermediate arrays. Plain text is not
+   * modified, caller owns and wipes it.
+   */
+  @NonNull
+  protected byte[] encryptBytes(@NonNull final Key key, @NonNull final byte[] plain,
+                                final int offset, final int length,
+                                @Nullable final EncryptStringHandler handler)
+    throws IOException, GeneralSecurityException {
+
+    final Cipher cipher = getCachedInstance();
+    final ScratchBuffers.Scratch scratch = scratchBuffers.get();
+
+    try {
+      // collect initialization vector that should be placed before the ciphertext
+      scratch.prefix.reset();
       if (null != handler) {
-        handler.initialize(cipher, key, output);
-        output.flush();
+        handler.initialize(cipher, key, scratch.prefix);
       }
 
-      try (final CipherOutputStream encrypt = new CipherOutputStream(output, cipher)) {
-        encrypt.write(value.getBytes(UTF8));
-      }
+      final int prefixSize = scratch.prefix.size();
+      final byte[] output = new byte[prefixSize + cipher.getOutputSize(length)];
+      scratch.prefix.copyTo(output, 0);
 
-      return output.toByteArray();
+      final int written = cipher.doFinal(plain, offset, length, output, prefixSize);
+
+      return (prefixSize + written == output.length) ? output : Arrays.copyOf(output, prefixSize + written);
     } catch (Throwable fail) {
       Log.e(LOG_TAG, fail.getMessage(), fail);
 
@@ -366,31 +647,71 @@ abstract public class CipherStorageBase implements CipherStorage {
     }
   }
 
-  /** Decrypt provided bytes to a string. */
+  /**
+   * Decrypt provided bytes to a string. Handler consumes initialization data from the beginning of the bytes,
+   * the rest is decrypted by single `doFinal` into thread-confined scratch buffer.
+   *
+   * CipherInputStream historically led to issues on the Pixel family of devices.
+   * see https://github.com/oblador/react-native-keychain/issues/383
+   */
   @NonNull
   protected String decryptBytes(@NonNull final Key key, @NonNull final byte[] bytes,
                                 @Nullable final DecryptBytesHandler handler)
     throws GeneralSecurityException, IOException {
-    final Cipher cipher = getCachedInstance();
 
-    // decrypt the bytes using a CipherInputStream
-    try (ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-         ByteArrayOutputStream output = new ByteArrayOutputStream()) {
+    return decryptWith(key, bytes, handler, (plain, length) -> new String(plain, 0, length, UTF8));
+  }
+
+  /** Decrypt provided bytes to exactly sized UTF-8 array, caller wipes it. */
+  @NonNull
+  protected byte[] decryptToBytes(@NonNull final Key key, @NonNull final byte[] bytes,
+                                  @Nullable final DecryptBytesHandler handler)
+    throws GeneralSecurityException, IOException {
+
+    return decryptWith(key, bytes, handler, (plain, length) -> Arrays.copyOf(plain, length));
+  }
+
+  /** Decrypt provided bytes to exactly sized characters array, caller wipes it. */
+  @NonNull
+  protected char[] decryptToChars(@NonNull final Key key, @NonNull final byte[] bytes,
+                                  @Nullable final DecryptBytesHandler handler)
+    throws GeneralSecurityException, IOException {
+
+    return decryptWith(key, bytes, handler, (plain, length) -> scratchBuffers.decode(plain, 0, length));
+  }
+
+  /** Decrypt into scratch buffer and convert plain text by reader, scratch buffer is wiped afterwards. */
+  @NonNull
+  private <T> T decryptWith(@NonNull final Key key, @NonNull final byte[] bytes,
+                            @Nullable final DecryptBytesHandler handler,
+                            @NonNull final PlainTextReader<T> reader)
+    throws GeneralSecurityException, IOException {
+    final Cipher cipher = getCachedInstance();
+    final ScratchBuffers.Scratch scratch = scratchBuffers.get();
+    byte[] plain = null;
+    int length = 0;
 
-      // read the initialization vector from the beginning of the stream
+    try {
+      // read the initialization vector from the beginning of the bytes
+      scratch.input.reset(bytes);
       if (null != handler) {
-        handler.initialize(cipher, key, in);
+        handler.initialize(cipher, key, scratch.input);
       }
 
-      try (CipherInputStream decrypt = new CipherInputStream(in, cipher)) {
-        copy(decrypt, output);
-      }
+      final int offset = scratch.input.position();
+      final int size = bytes.length - offset;
+
+      plain = scratch.data(cipher.getOutputSize(size));
+      length = cipher.doFinal(bytes, offset, size, plain, 0);
 
-      return new String(output.toByteArray(), UTF8);
+      return reader.read(plain, length);
     } catch (Throwable fail) {
       Log.w(LOG_TAG, fail.getMessage(), fail);
 
       throw fail;
+    } finally {
+      scratch.input.release();
+      if (null != plain) ScratchBuffers.wipe(plain, length);
     }
   }
 
@@ -406,6 +727,11 @@ abstract public class CipherStorageBase implements CipherStorage {
 
     // multi-threaded usage is possible
     synchronized (_syncStrongbox) {
+      if (null == isStrongboxAvailable && null != capabilities) {
+        final Boolean cached = capabilities.get(getCipherStorageName(), CapabilitiesCache.STRONGBOX);
+        if (null != cached) isStrongboxAvailable = new AtomicBoolean(cached);
+      }
+
       if (null == isStrongboxAvailable || isStrongboxAvailable.get()) {
         if (null == isStrongboxAvailable) isStrongboxAvailable = new AtomicBoolean(false);
 
@@ -413,8 +739,14 @@ abstract public class CipherStorageBase implements CipherStorage {
           secretKey = tryGenerateStrongBoxSecurityKey(alias);
 
           isStrongboxAvailable.set(true);
+          if (null != capabilities) capabilities.put(getCipherStorageName(), CapabilitiesCache.STRONGBOX, true);
         } catch (GeneralSecurityException | ProviderException ex) {
           Log.w(LOG_TAG, "StrongBox security storage is not available.", ex);
+
+          // transient failures (e.g. busy chip) should not disable StrongBox till the next OS update
+          if (null != capabilities && isStrongboxMissing(ex)) {
+            capabilities.put(getCipherStorageName(), CapabilitiesCache.STRONGBOX, false);
+          }
         }
       }
     }
@@ -475,11 +807,51 @@ abstract public class CipherStorageBase implements CipherStorage {
     return generateKey(specification);
   }
 
+  /** Is failure of StrongBox key generation caused by device without StrongBox. */
+  protected static boolean isStrongboxMissing(@NonNull final Throwable ex) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) return true;
+
+    return ex instanceof StrongBoxUnavailableException;
+  }
+
+  //endregion
+
+  //region Configuration
+
+  /** Cache of the resolved key handles, exposes hit/miss counters. */
+  @NonNull
+  public KeyCache getKeyCache() {
+    return keyCache;
+  }
+
+  /** Release memory held by caches, all of them are re-filled on demand. */
+  public void trimMemory() {
+    keyCache.clear();
+  }
+
+  /**
+   * Write username and password as one combined record encrypted by one cipher operation, halves keystore
+   * operations per credential. Reading understands both layouts regardless of the flag.
+   */
+  public CipherStorageBase setCombinedRecords(final boolean enabled) {
+    combinedRecords = enabled;
+    return this;
+  }
+
+  public boolean isCombinedRecords() {
+    return combinedRecords;
+  }
+
+  /** Share persistent results of the capability probes with other processes of the same OS build. */
+  public CipherStorageBase setCapabilitiesCache(@Nullable final CapabilitiesCache cache) {
+    capabilities = cache;
+    return this;
+  }
   //endregion
 
   //region Testing
 
-  /** Override internal cipher instance cache. */
+  /** Override internal cipher instance cache. Provided instance is shared by all threads. */
   @VisibleForTesting
   public CipherStorageBase setCipher(final Cipher cipher) {
     cachedCipher = cipher;
@@ -496,6 +868,38 @@ abstract public class CipherStorageBase implements CipherStorage {
 
   //region Static methods
 
+  /** Is the entry written as combined record, see {@link #encryptRecord(Key, String, String, EncryptStringHandler)}. */
+  public static boolean isCombinedRecord(@NonNull final byte[] username) {
+    return username.length == 0;
+  }
+
+  /** Get username size of the combined record plain text, validates it against the record length. */
+  public static int readRecordHeader(@NonNull final byte[] plain, final int length) throws IOException {
+    if (length < ScratchBuffers.RECORD_HEADER_SIZE) {
+      throw new IOException("Insufficient length of input data for record header.");
+    }
+
+    final int size = ByteBuffer.wrap(plain, 0, length).getInt();
+    if (size < 0 || size > length - ScratchBuffers.RECORD_HEADER_SIZE) {
+      throw new IOException("Corrupted record header, username size: " + size);
+    }
+
+    return size;
+  }
+
+  /** Split combined record plain text into exactly sized UTF-8 arrays, caller wipes plain text and result. */
+  @NonNull
+  public static SecretBytes unpackRecord(@NonNull final byte[] plain, final int length,
+                                         @NonNull final SecurityLevel level) throws IOException {
+    final int size = readRecordHeader(plain, length);
+    final int offset = ScratchBuffers.RECORD_HEADER_SIZE + size;
+
+    return new SecretBytes(
+      Arrays.copyOfRange(plain, ScratchBuffers.RECORD_HEADER_SIZE, offset),
+      Arrays.copyOfRange(plain, offset, length),
+      level);
+  }
+
   /** Convert provided service name to safe not-null/not-empty value. */
   @NonNull
   public static String getDefaultAliasIfEmpty(@Nullable final String service, @NonNull final String fallback) {
@@ -509,7 +913,10 @@ abstract public class CipherStorageBase implements CipherStorage {
    * @param in  instance of input stream.
    * @param out instance of output stream.
    * @throws IOException read/write operation failure.
+   * @deprecated not used by the storages anymore, encryption and decryption call {@link Cipher#doFinal}
+   * directly on arrays. Kept for compatibility of external callers, will be removed in next major version.
    */
+  @Deprecated
   public static void copy(@NonNull final InputStream in, @NonNull final OutputStream out) throws IOException {
     // Transfer bytes from in to out
     final byte[] buf = new byte[BUFFER_READ_WRITE_SIZE];
@@ -584,6 +991,12 @@ abstract public class CipherStorageBase implements CipherStorage {
       throws GeneralSecurityException, IOException;
   }
 
+  /** Converter of the decrypted plain text, buffer is wiped right after the call. */
+  protected interface PlainTextReader<T> {
+    @NonNull
+    T read(@NonNull final byte[] plain, final int length) throws IOException;
+  }
+
   /** Handler for configuring cipher by initialization data from input stream. */
   public interface DecryptBytesHandler {
     void initialize(@NonNull final Cipher cipher, @NonNull final Key key, @NonNull final InputStream input)
@@ -607,7 +1020,7 @@ abstract public class CipherStorageBase implements CipherStorage {
     @Override
     public void close() {
       try {
-        removeKey(name);
+        deleteKeyEntry(name);
       } catch (KeyStoreAccessException ex) {
         Log.w(LOG_TAG, "AutoClose remove key failed. Error: " + ex.getMessage(), ex);
       }
@@ -5,10 +5,8 @@ import android.os.Build;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyInfo;
 import android.security.keystore.KeyProperties;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 
 import com.oblador.keychain.KeychainModule.KnownCiphers;
 import com.oblador.keychain.SecurityLevel;
@@ -22,11 +20,9 @@ import java.security.Key;
 import java.security.spec.KeySpec;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.IvParameterSpec;
 
 /**
  * @see <a href="https://proandroiddev.com/secure-data-in-android-initialization-vector-6ca1c659762c">Secure Data in Android</a>
@@ -114,6 +110,10 @@ public class CipherStorageKeystoreAesCbc extends CipherStorageBase {
     try {
       final Key key = extractGeneratedKey(safeAlias, level, retries);
 
+      if (combinedRecords) {
+        return encryptRecord(key, username, password, IV.encrypt);
+      }
+
       return new EncryptionResult(
         encryptString(key, username),
         encryptString(key, password),
@@ -142,6 +142,10 @@ public class CipherStorageKeystoreAesCbc extends CipherStorageBase {
     try {
       final Key key = extractGeneratedKey(safeAlias, level, retries);
 
+      if (isCombinedRecord(username)) {
+        return decryptRecord(key, password, IV.decrypt, getSecurityLevel(key));
+      }
+
       return new DecryptionResult(
         decryptBytes(key, username),
         decryptBytes(key, password),
@@ -154,6 +158,104 @@ public class CipherStorageKeystoreAesCbc extends CipherStorageBase {
     }
   }
 
+  /** Encrypt UTF-8 bytes directly, without intermediate strings. */
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final byte[] username,
+                                  @NonNull final byte[] password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    final String safeAlias = getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName());
+    final AtomicInteger retries = new AtomicInteger(1);
+
+    try {
+      final Key key = extractGeneratedKey(safeAlias, level, retries);
+
+      if (combinedRecords) {
+        return encryptRecord(key, username, password, IV.encrypt);
+      }
+
+      return new EncryptionResult(
+        encryptBytes(key, username, 0, username.length, IV.encrypt),
+        encryptBytes(key, password, 0, password.length, IV.encrypt),
+        this);
+    } catch (GeneralSecurityException e) {
+      throw new CryptoFailedException("Could not encrypt data with alias: " + alias, e);
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Unknown error with alias: " + alias +
+        ", error: " + fail.getMessage(), fail);
+    }
+  }
+
+  @Override
+  @NonNull
+  public SecretBytes decryptToBytes(@NonNull final String alias,
+                                    @NonNull final byte[] username,
+                                    @NonNull final byte[] password,
+                                    @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    final String safeAlias = getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName());
+    final AtomicInteger retries = new AtomicInteger(1);
+
+    try {
+      final Key key = extractGeneratedKey(safeAlias, level, retries);
+
+      if (isCombinedRecord(username)) {
+        return decryptRecordToBytes(key, password, IV.decrypt, getSecurityLevel(key));
+      }
+
+      return new SecretBytes(
+        decryptToBytes(key, username, IV.decrypt),
+        decryptToBytes(key, password, IV.decrypt),
+        getSecurityLevel(key));
+    } catch (GeneralSecurityException e) {
+      throw new CryptoFailedException("Could not decrypt data with alias: " + alias, e);
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Unknown error with alias: " + alias +
+        ", error: " + fail.getMessage(), fail);
+    }
+  }
+
+  /** Decode characters straight from the scratch buffer, no UTF-8 copy of plain text is created. */
+  @Override
+  @NonNull
+  public SecretChars decryptToChars(@NonNull final String alias,
+                                    @NonNull final byte[] username,
+                                    @NonNull final byte[] password,
+                                    @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    final String safeAlias = getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName());
+    final AtomicInteger retries = new AtomicInteger(1);
+
+    try {
+      final Key key = extractGeneratedKey(safeAlias, level, retries);
+
+      if (isCombinedRecord(username)) {
+        return decryptRecordToChars(key, password, IV.decrypt, getSecurityLevel(key));
+      }
+
+      return new SecretChars(
+        decryptToChars(key, username, IV.decrypt),
+        decryptToChars(key, password, IV.decrypt),
+        getSecurityLevel(key));
+    } catch (GeneralSecurityException e) {
+      throw new CryptoFailedException("Could not decrypt data with alias: " + alias, e);
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Unknown error with alias: " + alias +
+        ", error: " + fail.getMessage(), fail);
+    }
+  }
+
   /** Redirect call to {@link #decrypt(String, byte[], byte[], SecurityLevel)} method. */
   @Override
   public void decrypt(@NonNull final DecryptionResultHandler handler,
@@ -227,31 +329,6 @@ public class CipherStorageKeystoreAesCbc extends CipherStorageBase {
 
     return generator.generateKey();
   }
-
-  /** Decrypt provided bytes to a string. */
-  @NonNull
-  @Override
-  protected String decryptBytes(@NonNull final Key key, @NonNull final byte[] bytes,
-                                @Nullable final DecryptBytesHandler handler)
-    throws GeneralSecurityException, IOException {
-    final Cipher cipher = getCachedInstance();
-
-    try {
-      // read the initialization vector from bytes array
-      final IvParameterSpec iv = IV.readIv(bytes);
-      cipher.init(Cipher.DECRYPT_MODE, key, iv);
-
-      // decrypt the bytes using cipher.doFinal(). Using a CipherInputStream for decryption has historically led to issues
-      // on the Pixel family of devices.
-      // see https://github.com/oblador/react-native-keychain/issues/383
-      byte[] decryptedBytes = cipher.doFinal(bytes, IV.IV_LENGTH, bytes.length - IV.IV_LENGTH);
-      return new String(decryptedBytes, UTF8);
-    } catch (Throwable fail) {
-      Log.w(LOG_TAG, fail.getMessage(), fail);
-
-      throw fail;
-    }
-  }
   //endregion
 
   //region Initialization Vector encrypt/decrypt support
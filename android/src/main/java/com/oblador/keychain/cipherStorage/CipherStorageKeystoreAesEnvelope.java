@@ -0,0 +1,398 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+import com.oblador.keychain.exceptions.KeyStoreAccessException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Envelope encryption: one hardware-bound master key in AndroidKeyStore wraps a software AES data key per namespace.
+ *
+ * Unwrapped data key is kept in memory for a configurable TTL, so only the first operation after expiry crosses
+ * IPC into keystore; all other operations run at software AES-GCM speed. Cached keys are dropped on
+ * {@link #wipe()}, the module calls it when application goes to background. Raw key bytes are zeroed right
+ * after unwrapping, but the copy owned by the JCA key object can not be zeroed and stays on heap until GC.
+ *
+ * Security level is reported honestly as {@link SecurityLevel#SECURE_SOFTWARE}: ciphertext is protected by
+ * a key that lives in application memory, hardware protects only the wrapped copy at rest.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class CipherStorageKeystoreAesEnvelope extends CipherStorageKeystoreAesCbc {
+  //region Constants
+  /** Preferences with wrapped data keys. */
+  public static final String KEYCHAIN_ENVELOPE = "RN_KEYCHAIN_ENVELOPE";
+  /** Keystore alias of the master key, prefixed like the probe key to stay apart from service aliases. */
+  public static final String MASTER_KEY_ALIAS = KEYSTORE_TYPE + "#envelopeMaster";
+  /** Namespace used when nothing else specified. */
+  public static final String DEFAULT_NAMESPACE = "default";
+  /** Transformation of the data key operations. */
+  public static final String DATA_TRANSFORMATION = "AES/GCM/NoPadding";
+  /** Size of the data key in bytes. */
+  public static final int DATA_KEY_SIZE = 32;
+  /** Size of the GCM nonce in bytes. */
+  public static final int NONCE_SIZE = 12;
+  /** Size of the GCM authentication tag in bits. */
+  public static final int TAG_SIZE = 128;
+  /** Default time to keep unwrapped data key in memory. Default: 5 minutes. */
+  public static final long DEFAULT_KEY_TTL = TimeUnit.MINUTES.toMillis(5);
+  //endregion
+
+  //region Members
+  /** Wrapped data keys storage. */
+  @NonNull
+  private final SharedPreferences prefs;
+  /** Namespace of the data key used by this instance. */
+  @NonNull
+  private final String namespace;
+  /** Unwrapped data keys, namespace to key. Guarded by itself. */
+  private final Map<String, CachedKey> keys = new HashMap<>();
+  /** Source of the nonce values. */
+  private final SecureRandom random = new SecureRandom();
+  /** Time to keep unwrapped key in memory, 0 - do not cache. */
+  private volatile long keyTtl = DEFAULT_KEY_TTL;
+  //endregion
+
+  public CipherStorageKeystoreAesEnvelope(@NonNull final ReactApplicationContext reactContext) {
+    this(reactContext, DEFAULT_NAMESPACE);
+  }
+
+  public CipherStorageKeystoreAesEnvelope(@NonNull final ReactApplicationContext reactContext,
+                                          @NonNull final String namespace) {
+    this.prefs = reactContext.getSharedPreferences(KEYCHAIN_ENVELOPE, Context.MODE_PRIVATE);
+    this.namespace = namespace;
+  }
+
+  //region Configuration
+  @Override
+  public String getCipherStorageName() {
+    return KnownCiphers.ENVELOPE;
+  }
+
+  /** Data key lives in application memory, so the best guarantee is software level. */
+  @Override
+  public SecurityLevel securityLevel() {
+    return SecurityLevel.SECURE_SOFTWARE;
+  }
+
+  @Override
+  public String getDefaultAliasServiceName() {
+    return MASTER_KEY_ALIAS;
+  }
+
+  /** Change time of keeping unwrapped data key in memory. Zero disables caching. */
+  public void setKeyTtl(final long ttlMillis) {
+    if (ttlMillis < 0) throw new IllegalArgumentException("TTL should be positive or zero");
+
+    keyTtl = ttlMillis;
+    wipe();
+  }
+
+  public long getKeyTtl() {
+    return keyTtl;
+  }
+  //endregion
+
+  //region Overrides
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final String username,
+                                  @NonNull final String password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    final byte[] user = username.getBytes(UTF8);
+    final byte[] pass = password.getBytes(UTF8);
+
+    try {
+      return encrypt(alias, user, pass, level);
+    } finally {
+      ScratchBuffers.wipe(user, user.length);
+      ScratchBuffers.wipe(pass, pass.length);
+    }
+  }
+
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final byte[] username,
+                                  @NonNull final byte[] password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    try {
+      final Key key = getDataKey(level);
+      final byte[] aad = alias.getBytes(UTF8);
+
+      return new EncryptionResult(
+        seal(key, aad, username),
+        seal(key, aad, password),
+        this);
+    } catch (GeneralSecurityException e) {
+      throw new CryptoFailedException("Could not encrypt data with alias: " + alias, e);
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Unknown error with alias: " + alias +
+        ", error: " + fail.getMessage(), fail);
+    }
+  }
+
+  @Override
+  @NonNull
+  public DecryptionResult decrypt(@NonNull final String alias,
+                                  @NonNull final byte[] username,
+                                  @NonNull final byte[] password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    try (SecretBytes plain = decryptToBytes(alias, username, password, level)) {
+      return new DecryptionResult(
+        new String(plain.username, UTF8),
+        new String(plain.password, UTF8),
+        plain.getSecurityLevel());
+    }
+  }
+
+  @Override
+  @NonNull
+  public SecretBytes decryptToBytes(@NonNull final String alias,
+                                    @NonNull final byte[] username,
+                                    @NonNull final byte[] password,
+                                    @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    try {
+      final Key key = getDataKey(level);
+      final byte[] aad = alias.getBytes(UTF8);
+
+      return new SecretBytes(
+        open(key, aad, username),
+        open(key, aad, password),
+        securityLevel());
+    } catch (GeneralSecurityException e) {
+      throw new CryptoFailedException("Could not decrypt data with alias: " + alias, e);
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Unknown error with alias: " + alias +
+        ", error: " + fail.getMessage(), fail);
+    }
+  }
+
+  /** Decode bytes of own data layout, AES CBC implementation does not apply. */
+  @Override
+  @NonNull
+  public SecretChars decryptToChars(@NonNull final String alias,
+                                    @NonNull final byte[] username,
+                                    @NonNull final byte[] password,
+                                    @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    try {
+      return toChars(decryptToBytes(alias, username, password, level));
+    } catch (CharacterCodingException fail) {
+      throw new CryptoFailedException("Could not decode credentials with alias: " + alias, fail);
+    }
+  }
+
+  /** Entries share the data key of namespace, nothing to remove per service. */
+  @Override
+  public void removeKey(@NonNull final String alias) {
+    /* data key is shared by all entries of the namespace */
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Drop all unwrapped data keys, their key material is released to GC. */
+  public void wipe() {
+    synchronized (keys) {
+      keys.clear();
+    }
+  }
+
+  /** Get unwrapped data key of the namespace, from memory if possible. */
+  @NonNull
+  protected Key getDataKey(@NonNull final SecurityLevel level) throws GeneralSecurityException, IOException {
+    final long now = SystemClock.elapsedRealtime();
+
+    synchronized (keys) {
+      final CachedKey cached = keys.get(namespace);
+
+      if (null != cached && cached.expiresAt > now) {
+        return cached.key;
+      }
+
+      if (null != cached) {
+        keys.remove(namespace);
+      }
+
+      final byte[] raw = loadOrCreateDataKey(level);
+      final Key key;
+
+      try {
+        key = new SecretKeySpec(raw, "AES");
+      } finally {
+        Arrays.fill(raw, (byte) 0);
+      }
+
+      if (keyTtl > 0) {
+        keys.put(namespace, new CachedKey(key, now + keyTtl));
+      }
+
+      return key;
+    }
+  }
+
+  /** Unwrap stored data key by the master key, or create and store a new one. */
+  @NonNull
+  private byte[] loadOrCreateDataKey(@NonNull final SecurityLevel level) throws GeneralSecurityException, IOException {
+    final Key master = getMasterKey(level);
+    final String wrapped = prefs.getString(namespace, null);
+
+    if (null != wrapped) {
+      return unwrap(master, Base64.decode(wrapped, Base64.DEFAULT));
+    }
+
+    final byte[] raw = new byte[DATA_KEY_SIZE];
+    random.nextBytes(raw);
+
+    // commit, not apply: entries encrypted by a key that was never persisted are lost forever
+    final boolean saved = prefs.edit()
+      .putString(namespace, Base64.encodeToString(wrap(master, raw), Base64.DEFAULT))
+      .commit();
+
+    if (!saved) {
+      Arrays.fill(raw, (byte) 0);
+      throw new KeyStoreAccessException("Could not persist wrapped data key of namespace: " + namespace);
+    }
+
+    Log.i(LOG_TAG, "Created envelope data key for namespace: " + namespace);
+
+    return raw;
+  }
+
+  /** Extract master key from keystore, generate it on first call. */
+  @NonNull
+  protected Key getMasterKey(@NonNull final SecurityLevel level) throws GeneralSecurityException {
+    return extractGeneratedKey(MASTER_KEY_ALIAS, level, new AtomicInteger(1));
+  }
+
+  /** Encrypt data key by master key: `[iv][ciphertext]`. */
+  @NonNull
+  private byte[] wrap(@NonNull final Key master, @NonNull final byte[] raw) throws GeneralSecurityException {
+    final Cipher cipher = getCachedInstance();
+    cipher.init(Cipher.ENCRYPT_MODE, master);
+
+    final byte[] iv = cipher.getIV();
+    final byte[] encrypted = cipher.doFinal(raw);
+
+    return ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted).array();
+  }
+
+  /** Decrypt data key by master key. */
+  @NonNull
+  private byte[] unwrap(@NonNull final Key master, @NonNull final byte[] wrapped)
+    throws GeneralSecurityException, IOException {
+    final Cipher cipher = getCachedInstance();
+    final IvParameterSpec iv = IV.readIv(wrapped);
+    cipher.init(Cipher.DECRYPT_MODE, master, iv);
+
+    return cipher.doFinal(wrapped, IV.IV_LENGTH, wrapped.length - IV.IV_LENGTH);
+  }
+
+  /** Encrypt value by data key: `[nonce][ciphertext + tag]`, alias bound as additional authenticated data. */
+  @NonNull
+  private byte[] seal(@NonNull final Key key, @NonNull final byte[] aad, @NonNull final byte[] value)
+    throws GeneralSecurityException {
+    final byte[] nonce = new byte[NONCE_SIZE];
+    random.nextBytes(nonce);
+
+    final Cipher cipher = cipherCache.get(DATA_TRANSFORMATION);
+    cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE, nonce));
+    cipher.updateAAD(aad);
+
+    final byte[] output = new byte[NONCE_SIZE + cipher.getOutputSize(value.length)];
+    System.arraycopy(nonce, 0, output, 0, NONCE_SIZE);
+    final int written = cipher.doFinal(value, 0, value.length, output, NONCE_SIZE);
+
+    return (NONCE_SIZE + written == output.length) ? output : Arrays.copyOf(output, NONCE_SIZE + written);
+  }
+
+  /** Decrypt value created by {@link #seal(Key, byte[], byte[])}. */
+  @NonNull
+  private byte[] open(@NonNull final Key key, @NonNull final byte[] aad, @NonNull final byte[] bytes)
+    throws GeneralSecurityException, IOException {
+    if (bytes.length <= NONCE_SIZE) {
+      throw new IOException("Insufficient length of input data for nonce extracting.");
+    }
+
+    final Cipher cipher = cipherCache.get(DATA_TRANSFORMATION);
+    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE, bytes, 0, NONCE_SIZE));
+    cipher.updateAAD(aad);
+
+    return cipher.doFinal(bytes, NONCE_SIZE, bytes.length - NONCE_SIZE);
+  }
+  //endregion
+
+  //region Testing
+
+  /** Is unwrapped data key of the namespace kept in memory. */
+  @VisibleForTesting
+  public boolean isDataKeyCached() {
+    synchronized (keys) {
+      final CachedKey cached = keys.get(namespace);
+
+      return null != cached && cached.expiresAt > SystemClock.elapsedRealtime();
+    }
+  }
+  //endregion
+
+  //region Nested declarations
+
+  /** Unwrapped data key with expiration time. */
+  private static final class CachedKey {
+    /** The only in-memory copy of the key material, shared by all operations until expiration. */
+    @NonNull
+    final Key key;
+    /** Moment of expiration, {@link SystemClock#elapsedRealtime()} based. */
+    final long expiresAt;
+
+    CachedKey(@NonNull final Key key, final long expiresAt) {
+      this.key = key;
+      this.expiresAt = expiresAt;
+    }
+  }
+  //endregion
+}
@@ -0,0 +1,379 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyInfo;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.decryptionHandler.DecryptionResultHandler;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+import com.oblador.keychain.exceptions.KeyStoreAccessException;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.spec.KeySpec;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * AES-GCM authenticated encryption. Each field is encrypted by a single `doFinal` call into a preallocated buffer:
+ * `[nonce:12][ciphertext][tag:16]`. Username is authenticated together with the service alias, password together
+ * with the alias and the username ciphertext, so fields can not be swapped between entries.
+ *
+ * @see <a href="https://developer.android.com/guide/topics/security/cryptography#supported-cipher">Supported ciphers</a>
+ */
+@TargetApi(Build.VERSION_CODES.M)
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class CipherStorageKeystoreAesGcm extends CipherStorageBase {
+  //region Constants
+  /** AES */
+  public static final String ALGORITHM_AES = KeyProperties.KEY_ALGORITHM_AES;
+  /** GCM */
+  public static final String BLOCK_MODE_GCM = KeyProperties.BLOCK_MODE_GCM;
+  /** No padding, GCM is a stream mode. */
+  public static final String PADDING_NONE = KeyProperties.ENCRYPTION_PADDING_NONE;
+  /** Transformation path. */
+  public static final String ENCRYPTION_TRANSFORMATION =
+    ALGORITHM_AES + "/" + BLOCK_MODE_GCM + "/" + PADDING_NONE;
+  /** Key size. */
+  public static final int ENCRYPTION_KEY_SIZE = 256;
+  /** Nonce size in bytes, keystore generates 12 bytes nonce for GCM. */
+  public static final int NONCE_LENGTH = 12;
+  /** Authentication tag size in bits. */
+  public static final int TAG_LENGTH = 128;
+  /**
+   * Suffix of the keystore alias. Keys of the CBC and GCM storages can not share alias: CBC key is not authorized
+   * for GCM block mode, and removal of the old key after upgrade would destroy the new one.
+   */
+  public static final String KEY_ALIAS_SUFFIX = "#GCM";
+  //endregion
+
+  //region Configuration
+  @Override
+  public String getCipherStorageName() {
+    return KnownCiphers.AES_GCM;
+  }
+
+  /** API23 is a requirement. */
+  @Override
+  public int getMinSupportedApiLevel() {
+    return Build.VERSION_CODES.M;
+  }
+
+  /** it can guarantee security levels up to SECURE_HARDWARE/SE/StrongBox */
+  @Override
+  public SecurityLevel securityLevel() {
+    return SecurityLevel.SECURE_HARDWARE;
+  }
+
+  /** Biometry is Not Supported. */
+  @Override
+  public boolean isBiometrySupported() {
+    return false;
+  }
+
+  /** AES. */
+  @Override
+  @NonNull
+  protected String getEncryptionAlgorithm() {
+    return ALGORITHM_AES;
+  }
+
+  /** AES/GCM/NoPadding */
+  @NonNull
+  @Override
+  protected String getEncryptionTransformation() {
+    return ENCRYPTION_TRANSFORMATION;
+  }
+  //endregion
+
+  //region Overrides
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final String username,
+                                  @NonNull final String password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    final byte[] user = username.getBytes(UTF8);
+    final byte[] pass = password.getBytes(UTF8);
+
+    try {
+      return encrypt(alias, user, pass, level);
+    } finally {
+      ScratchBuffers.wipe(user, user.length);
+      ScratchBuffers.wipe(pass, pass.length);
+    }
+  }
+
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final byte[] username,
+                                  @NonNull final byte[] password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    final String safeAlias = getKeyAlias(alias);
+    final AtomicInteger retries = new AtomicInteger(1);
+
+    try {
+      final Key key = extractGeneratedKey(safeAlias, level, retries);
+      final byte[] aliasBytes = safeAlias.getBytes(UTF8);
+
+      if (combinedRecords) {
+        return new EncryptionResult(RECORD_MARKER, sealRecord(key, username, password, aliasBytes), this);
+      }
+
+      final byte[] encryptedUsername = seal(key, username, aliasBytes);
+      final byte[] encryptedPassword = seal(key, password, aliasBytes, encryptedUsername);
+
+      return new EncryptionResult(encryptedUsername, encryptedPassword, this);
+    } catch (GeneralSecurityException e) {
+      throw new CryptoFailedException("Could not encrypt data with alias: " + alias, e);
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Unknown error with alias: " + alias +
+        ", error: " + fail.getMessage(), fail);
+    }
+  }
+
+  @Override
+  @NonNull
+  public DecryptionResult decrypt(@NonNull final String alias,
+                                  @NonNull final byte[] username,
+                                  @NonNull final byte[] password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    try (SecretBytes plain = decryptToBytes(alias, username, password, level)) {
+      return new DecryptionResult(
+        new String(plain.username, UTF8),
+        new String(plain.password, UTF8),
+        plain.getSecurityLevel());
+    }
+  }
+
+  @Override
+  @NonNull
+  public SecretBytes decryptToBytes(@NonNull final String alias,
+                                    @NonNull final byte[] username,
+                                    @NonNull final byte[] password,
+                                    @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    final String safeAlias = getKeyAlias(alias);
+    final AtomicInteger retries = new AtomicInteger(1);
+
+    try {
+      final Key key = extractGeneratedKey(safeAlias, level, retries);
+      final byte[] aliasBytes = safeAlias.getBytes(UTF8);
+
+      if (isCombinedRecord(username)) {
+        return openRecord(key, password, aliasBytes, getSecurityLevel(key));
+      }
+
+      return new SecretBytes(
+        open(key, username, aliasBytes),
+        open(key, password, aliasBytes, username),
+        getSecurityLevel(key));
+    } catch (GeneralSecurityException e) {
+      throw new CryptoFailedException("Could not decrypt data with alias: " + alias, e);
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Unknown error with alias: " + alias +
+        ", error: " + fail.getMessage(), fail);
+    }
+  }
+
+  /** Redirect call to {@link #decrypt(String, byte[], byte[], SecurityLevel)} method. */
+  @Override
+  public void decrypt(@NonNull final DecryptionResultHandler handler,
+                      @NonNull final String service,
+                      @NonNull final byte[] username,
+                      @NonNull final byte[] password,
+                      @NonNull final SecurityLevel level) {
+    try {
+      final DecryptionResult results = decrypt(service, username, password, level);
+
+      handler.onDecrypt(results, null);
+    } catch (Throwable fail) {
+      handler.onDecrypt(null, fail);
+    }
+  }
+
+  /** Remove key of the service, keystore alias has own suffix. */
+  @Override
+  public void removeKey(@NonNull final String alias) throws KeyStoreAccessException {
+    super.removeKey(getKeyAlias(alias));
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Get keystore alias of the service key. */
+  @NonNull
+  protected String getKeyAlias(@NonNull final String alias) {
+    return getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName()) + KEY_ALIAS_SUFFIX;
+  }
+
+  /** Get builder for encryption and decryption operations with required user Authentication. */
+  @NonNull
+  @Override
+  protected KeyGenParameterSpec.Builder getKeyGenSpecBuilder(@NonNull final String alias) throws GeneralSecurityException {
+    return getKeyGenSpecBuilder(alias, false);
+  }
+
+  /** Get encryption algorithm specification builder instance. */
+  @NonNull
+  @Override
+  protected KeyGenParameterSpec.Builder getKeyGenSpecBuilder(@NonNull final String alias, @NonNull final boolean isForTesting)
+    throws GeneralSecurityException {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+      throw new KeyStoreAccessException("Unsupported API" + Build.VERSION.SDK_INT + " version detected.");
+    }
+
+    final int purposes = KeyProperties.PURPOSE_DECRYPT | KeyProperties.PURPOSE_ENCRYPT;
+
+    return new KeyGenParameterSpec.Builder(alias, purposes)
+      .setBlockModes(BLOCK_MODE_GCM)
+      .setEncryptionPaddings(PADDING_NONE)
+      .setRandomizedEncryptionRequired(true)
+      .setKeySize(ENCRYPTION_KEY_SIZE);
+  }
+
+  /** Get information about provided key. */
+  @NonNull
+  @Override
+  protected KeyInfo getKeyInfo(@NonNull final Key key) throws GeneralSecurityException {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+      throw new KeyStoreAccessException("Unsupported API" + Build.VERSION.SDK_INT + " version detected.");
+    }
+
+    final SecretKeyFactory factory = SecretKeyFactory.getInstance(key.getAlgorithm(), KEYSTORE_TYPE);
+    final KeySpec keySpec = factory.getKeySpec((SecretKey) key, KeyInfo.class);
+
+    return (KeyInfo) keySpec;
+  }
+
+  /** Try to generate key from provided specification. */
+  @NonNull
+  @Override
+  protected Key generateKey(@NonNull final KeyGenParameterSpec spec) throws GeneralSecurityException {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+      throw new KeyStoreAccessException("Unsupported API" + Build.VERSION.SDK_INT + " version detected.");
+    }
+
+    final KeyGenerator generator = KeyGenerator.getInstance(getEncryptionAlgorithm(), KEYSTORE_TYPE);
+
+    // initialize key generator
+    generator.init(spec);
+
+    return generator.generateKey();
+  }
+
+  /** Encrypt value in one shot: `[nonce][ciphertext + tag]`. Nonce is generated by keystore. */
+  @NonNull
+  protected byte[] seal(@NonNull final Key key, @NonNull final byte[] value, @NonNull final byte[]... aad)
+    throws GeneralSecurityException {
+    return seal(key, value, 0, value.length, aad);
+  }
+
+  /** Encrypt part of the value in one shot: `[nonce][ciphertext + tag]`. */
+  @NonNull
+  protected byte[] seal(@NonNull final Key key, @NonNull final byte[] value, final int offset, final int length,
+                        @NonNull final byte[]... aad)
+    throws GeneralSecurityException {
+    final Cipher cipher = getCachedInstance();
+
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, key);
+      for (byte[] chunk : aad) cipher.updateAAD(chunk);
+
+      final byte[] nonce = cipher.getIV();
+      if (null == nonce || NONCE_LENGTH != nonce.length) {
+        throw new CryptoFailedException("Unexpected nonce generated by cipher");
+      }
+
+      final byte[] output = new byte[NONCE_LENGTH + cipher.getOutputSize(length)];
+      System.arraycopy(nonce, 0, output, 0, NONCE_LENGTH);
+      final int written = cipher.doFinal(value, offset, length, output, NONCE_LENGTH);
+
+      return (NONCE_LENGTH + written == output.length) ? output : Arrays.copyOf(output, NONCE_LENGTH + written);
+    } catch (Throwable fail) {
+      Log.e(LOG_TAG, fail.getMessage(), fail);
+
+      throw fail;
+    }
+  }
+
+  /** Encrypt both fields as one combined record by one keystore operation. */
+  @NonNull
+  protected byte[] sealRecord(@NonNull final Key key, @NonNull final byte[] username,
+                              @NonNull final byte[] password, @NonNull final byte[] aad)
+    throws GeneralSecurityException {
+    final ScratchBuffers.Scratch scratch = scratchBuffers.get();
+    int length = 0;
+
+    try {
+      length = scratch.pack(username, password);
+
+      return seal(key, scratch.encoded(), 0, length, aad);
+    } finally {
+      ScratchBuffers.wipe(scratch.encoded(), length);
+    }
+  }
+
+  /** Verify and decrypt combined record produced by {@link #sealRecord(Key, byte[], byte[], byte[])}. */
+  @NonNull
+  protected SecretBytes openRecord(@NonNull final Key key, @NonNull final byte[] bytes,
+                                   @NonNull final byte[] aad, @NonNull final SecurityLevel level)
+    throws GeneralSecurityException, IOException {
+    final byte[] plain = open(key, bytes, aad);
+
+    try {
+      return unpackRecord(plain, plain.length, level);
+    } finally {
+      ScratchBuffers.wipe(plain, plain.length);
+    }
+  }
+
+  /** Verify and decrypt value produced by {@link #seal(Key, byte[], byte[]...)}. */
+  @NonNull
+  protected byte[] open(@NonNull final Key key, @NonNull final byte[] bytes, @NonNull final byte[]... aad)
+    throws GeneralSecurityException, IOException {
+    if (NONCE_LENGTH >= bytes.length) {
+      throw new IOException("Insufficient length of input data for nonce extracting.");
+    }
+
+    final Cipher cipher = getCachedInstance();
+
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, bytes, 0, NONCE_LENGTH));
+      for (byte[] chunk : aad) cipher.updateAAD(chunk);
+
+      return cipher.doFinal(bytes, NONCE_LENGTH, bytes.length - NONCE_LENGTH);
+    } catch (Throwable fail) {
+      Log.w(LOG_TAG, fail.getMessage(), fail);
+
+      throw fail;
+    }
+  }
+  //endregion
+}
@@ -0,0 +1,301 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+import com.oblador.keychain.exceptions.KeyStoreAccessException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStoreException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Fingerprint biometry protected storage without payload size limit.
+ *
+ * RSA key of the keystore wraps a random AES-GCM content key once per entry, so decryption costs one private key
+ * operation in secure hardware followed by software AES. Layout of the username field:
+ * `[wrapped key size:short][wrapped content key][nonce:12][ciphertext + tag]`, password field:
+ * `[nonce:12][ciphertext + tag]` authenticated together with the whole username field.
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class CipherStorageKeystoreRsaAesHybrid extends CipherStorageKeystoreRsaEcb {
+  //region Constants
+  /** Transformation of the content key operations. */
+  public static final String CONTENT_TRANSFORMATION = "AES/GCM/NoPadding";
+  /** Size of the content key in bytes. */
+  public static final int CONTENT_KEY_SIZE = 32;
+  /** Size of the GCM nonce in bytes. */
+  public static final int NONCE_LENGTH = 12;
+  /** Size of the GCM authentication tag in bits. */
+  public static final int TAG_LENGTH = 128;
+  /** Suffix of the keystore alias, keeps keys apart from the plain RSA storage keys of the same service. */
+  public static final String KEY_ALIAS_SUFFIX = "#HYBRID";
+  //endregion
+
+  //region Members
+  /** Source of content keys and nonce values. */
+  private final SecureRandom random = new SecureRandom();
+  //endregion
+
+  //region Configuration
+  @Override
+  public String getCipherStorageName() {
+    return KnownCiphers.RSA_HYBRID;
+  }
+  //endregion
+
+  //region Overrides
+
+  /** Encode strings into temporary UTF-8 arrays, wiped right after encryption. */
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final String username,
+                                  @NonNull final String password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    final byte[] user = username.getBytes(UTF8);
+    final byte[] pass = password.getBytes(UTF8);
+
+    try {
+      return encrypt(alias, user, pass, level);
+    } finally {
+      ScratchBuffers.wipe(user, user.length);
+      ScratchBuffers.wipe(pass, pass.length);
+    }
+  }
+
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final byte[] username,
+                                  @NonNull final byte[] password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    try {
+      return encryptCredentials(extractPublicKey(getKeyAlias(alias), level), username, password);
+    } catch (KeyStoreException | KeyStoreAccessException e) {
+      throw new CryptoFailedException("Could not access Keystore for service " + alias, e);
+    } catch (GeneralSecurityException e) {
+      throw new CryptoFailedException("Could not encrypt data for service " + alias, e);
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Unknown error: " + fail.getMessage(), fail);
+    }
+  }
+
+  /** Non interactive decryption straight into bytes, locked key raises an error like {@link #decrypt}. */
+  @Override
+  @NonNull
+  public SecretBytes decryptToBytes(@NonNull final String alias,
+                                    @NonNull final byte[] username,
+                                    @NonNull final byte[] password,
+                                    @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    final String safeAlias = resolveKeyAlias(getKeyAlias(alias));
+    final AtomicInteger retries = new AtomicInteger(1);
+
+    try {
+      final Key key = extractGeneratedKey(safeAlias, level, retries);
+
+      return decryptToBytes(new DecryptionContext(safeAlias, key, password, username));
+    } catch (UserNotAuthenticatedException ex) {
+      throw new CryptoFailedException("Non interactive decryption mode.", ex);
+    } catch (GeneralSecurityException e) {
+      throw new CryptoFailedException("Could not decrypt data with alias: " + alias, e);
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Unknown error with alias: " + alias +
+        ", error: " + fail.getMessage(), fail);
+    }
+  }
+
+  /** Unwrap content key by the private key (the only keystore operation), then decrypt both fields by it. */
+  @NonNull
+  @Override
+  public DecryptionResult decrypt(@NonNull final DecryptionContext context)
+    throws IOException, GeneralSecurityException {
+
+    try (SecretBytes plain = decryptToBytes(context)) {
+      return new DecryptionResult(new String(plain.username, UTF8), new String(plain.password, UTF8));
+    }
+  }
+  //endregion
+  //endregion
+
+  //region Implementation
+
+  /** Get keystore alias of the service key. */
+  @NonNull
+  @Override
+  protected String getKeyAlias(@NonNull final String alias) {
+    return super.getKeyAlias(alias) + KEY_ALIAS_SUFFIX;
+  }
+
+  /** Encode strings into temporary UTF-8 arrays, wiped right after encryption. */
+  @NonNull
+  @Override
+  protected EncryptionResult encryptCredentials(@NonNull final PublicKey key,
+                                                @NonNull final String username,
+                                                @NonNull final String password)
+    throws GeneralSecurityException, IOException {
+
+    final byte[] user = username.getBytes(UTF8);
+    final byte[] pass = password.getBytes(UTF8);
+
+    try {
+      return encryptCredentials(key, user, pass);
+    } finally {
+      ScratchBuffers.wipe(user, user.length);
+      ScratchBuffers.wipe(pass, pass.length);
+    }
+  }
+
+  /** Wrap a fresh content key by the public key and encrypt both UTF-8 encoded fields by the content key. */
+  @NonNull
+  protected EncryptionResult encryptCredentials(@NonNull final PublicKey key,
+                                                @NonNull final byte[] username,
+                                                @NonNull final byte[] password)
+    throws GeneralSecurityException {
+
+    final byte[] raw = new byte[CONTENT_KEY_SIZE];
+    random.nextBytes(raw);
+
+    try {
+      final Key contentKey = new SecretKeySpec(raw, "AES");
+      final byte[] wrapped = wrapContentKey(key, raw);
+      final byte[] header = ByteBuffer.allocate(2 + wrapped.length)
+        .putShort((short) wrapped.length)
+        .put(wrapped)
+        .array();
+
+      final byte[] encryptedUsername = seal(contentKey, username, header, header);
+      final byte[] encryptedPassword = seal(contentKey, password, null, encryptedUsername);
+
+      return new EncryptionResult(encryptedUsername, encryptedPassword, this);
+    } finally {
+      Arrays.fill(raw, (byte) 0);
+    }
+  }
+
+  /** Decrypt both fields into UTF-8 encoded bytes, caller owns and wipes the result. */
+  @NonNull
+  protected SecretBytes decryptToBytes(@NonNull final DecryptionContext context)
+    throws IOException, GeneralSecurityException {
+
+    final ByteBuffer in = ByteBuffer.wrap(context.username);
+    if (in.remaining() < 2) throw new IOException("Insufficient length of input data for content key.");
+
+    final int wrappedSize = in.getShort() & 0xFFFF;
+    if (in.remaining() <= wrappedSize + NONCE_LENGTH) {
+      throw new IOException("Insufficient length of input data for content key.");
+    }
+
+    final byte[] raw = unwrapContentKey(context.key, context.username, 2, wrappedSize);
+
+    try {
+      final Key contentKey = new SecretKeySpec(raw, "AES");
+      final int offset = 2 + wrappedSize;
+      final byte[] header = Arrays.copyOf(context.username, offset);
+      final byte[] username = open(contentKey, context.username, offset, header);
+
+      try {
+        return new SecretBytes(username, open(contentKey, context.password, 0, context.username), SecurityLevel.ANY);
+      } catch (IOException | GeneralSecurityException | RuntimeException fail) {
+        ScratchBuffers.wipe(username, username.length);
+        throw fail;
+      }
+    } finally {
+      Arrays.fill(raw, (byte) 0);
+    }
+  }
+
+  /** RSA encrypt content key. */
+  @NonNull
+  private byte[] wrapContentKey(@NonNull final PublicKey key, @NonNull final byte[] raw)
+    throws GeneralSecurityException {
+    final Cipher cipher = getCachedInstance();
+    cipher.init(Cipher.ENCRYPT_MODE, key);
+
+    return cipher.doFinal(raw);
+  }
+
+  /** RSA decrypt content key, raises UserNotAuthenticatedException when key is locked. */
+  @NonNull
+  private byte[] unwrapContentKey(@NonNull final Key key, @NonNull final byte[] bytes,
+                                  final int offset, final int length)
+    throws GeneralSecurityException {
+    final Cipher cipher = getCachedInstance();
+    cipher.init(Cipher.DECRYPT_MODE, key);
+
+    return cipher.doFinal(bytes, offset, length);
+  }
+
+  /**
+   * Encrypt value into a preallocated buffer: `[prefix][nonce][ciphertext + tag]`.
+   *
+   * @param prefix bytes placed before the nonce, NULL - nothing.
+   * @param aad    additional authenticated data.
+   */
+  @NonNull
+  private byte[] seal(@NonNull final Key key, @NonNull final byte[] value,
+                      final byte[] prefix, @NonNull final byte[] aad)
+    throws GeneralSecurityException {
+    final byte[] nonce = new byte[NONCE_LENGTH];
+    random.nextBytes(nonce);
+
+    final Cipher cipher = cipherCache.get(CONTENT_TRANSFORMATION);
+    cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, nonce));
+    cipher.updateAAD(aad);
+
+    final int offset = (null == prefix) ? 0 : prefix.length;
+    final byte[] output = new byte[offset + NONCE_LENGTH + cipher.getOutputSize(value.length)];
+    if (null != prefix) System.arraycopy(prefix, 0, output, 0, offset);
+    System.arraycopy(nonce, 0, output, offset, NONCE_LENGTH);
+
+    final int written = cipher.doFinal(value, 0, value.length, output, offset + NONCE_LENGTH);
+    final int size = offset + NONCE_LENGTH + written;
+
+    return (size == output.length) ? output : Arrays.copyOf(output, size);
+  }
+
+  /** Verify and decrypt value that starts at provided offset. */
+  @NonNull
+  private byte[] open(@NonNull final Key key, @NonNull final byte[] bytes, final int offset,
+                      @NonNull final byte[] aad)
+    throws GeneralSecurityException, IOException {
+    if (offset + NONCE_LENGTH >= bytes.length) {
+      throw new IOException("Insufficient length of input data for nonce extracting.");
+    }
+
+    final Cipher cipher = cipherCache.get(CONTENT_TRANSFORMATION);
+    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, bytes, offset, NONCE_LENGTH));
+    cipher.updateAAD(aad);
+
+    final int start = offset + NONCE_LENGTH;
+    return cipher.doFinal(bytes, start, bytes.length - start);
+  }
+  //endregion
+}
@@ -4,11 +4,13 @@ import android.annotation.SuppressLint;
 import android.os.Build;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyInfo;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
 import android.security.keystore.KeyProperties;
 import android.security.keystore.UserNotAuthenticatedException;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import com.oblador.keychain.KeychainModule;
@@ -29,10 +31,12 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
+import java.security.interfaces.RSAKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
 
 /** Fingerprint biometry protected storage. */
@@ -52,9 +56,19 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
   /** Selected encryption key size. */
   public static final int ENCRYPTION_KEY_SIZE = 2048;
   public static final int ENCRYPTION_KEY_SIZE_WHEN_TESTING = 512;
+  /** Bytes of the RSA block taken by PKCS#1 v1.5 padding. */
+  public static final int PKCS1_PADDING_SIZE = 11;
 
   //endregion
 
+  //region Members
+  /** Decoded public keys, keystore alias to key. Saves certificate lookup and decoding on every write. */
+  protected final transient KeyCache publicKeyCache = new KeyCache();
+  /** Pool of pre-generated keys, NULL - keys are generated on first access. */
+  @Nullable
+  private volatile KeyPool keyPool;
+  //endregion
+
   //region Overrides
   @Override
   @NonNull
@@ -66,7 +80,7 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
 
     throwIfInsufficientLevel(level);
 
-    final String safeAlias = getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName());
+    final String safeAlias = getKeyAlias(alias);
 
     try {
       return innerEncryptedCredentials(safeAlias, password, username, level);
@@ -115,7 +129,7 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
 
     throwIfInsufficientLevel(level);
 
-    final String safeAlias = getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName());
+    final String safeAlias = resolveKeyAlias(getKeyAlias(alias));
     final AtomicInteger retries = new AtomicInteger(1);
     boolean shouldAskPermissions = false;
 
@@ -125,10 +139,7 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
       // key is always NOT NULL otherwise GeneralSecurityException raised
       key = extractGeneratedKey(safeAlias, level, retries);
 
-      final DecryptionResult results = new DecryptionResult(
-        decryptBytes(key, username),
-        decryptBytes(key, password)
-      );
+      final DecryptionResult results = decrypt(new DecryptionContext(safeAlias, key, password, username));
 
       handler.onDecrypt(results, null);
     } catch (final UserNotAuthenticatedException ex) {
@@ -145,6 +156,30 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
     }
   }
 
+  /** Remove key of the service together with the pooled key assigned to it. */
+  @Override
+  public void removeKey(@NonNull final String alias) throws KeyStoreAccessException {
+    final String keyAlias = getKeyAlias(alias);
+    final KeyPool pool = keyPool;
+    final String pooled = (null == pool) ? null : pool.release(keyAlias);
+
+    if (null != pooled) super.removeKey(pooled);
+    super.removeKey(keyAlias);
+  }
+
+  /** Public keys are cached together with the key handles. */
+  @Override
+  protected void evictKey(@NonNull final String safeAlias) {
+    super.evictKey(safeAlias);
+    publicKeyCache.remove(safeAlias);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void trimMemory() {
+    super.trimMemory();
+    publicKeyCache.clear();
+  }
   //endregion
 
   //region Configuration
@@ -167,6 +202,16 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
     return true;
   }
 
+  /** Use pre-generated keys of the pool for new services. */
+  public void setKeyPool(@Nullable final KeyPool pool) {
+    keyPool = pool;
+  }
+
+  @Nullable
+  public KeyPool getKeyPool() {
+    return keyPool;
+  }
+
   /** RSA. */
   @NonNull
   @Override
@@ -192,18 +237,118 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
                                                      @NonNull final SecurityLevel level)
     throws GeneralSecurityException, IOException {
 
-    final KeyStore store = getKeyStoreAndLoad();
+    return encryptCredentials(extractPublicKey(alias, level), username, password);
+  }
+
+  /** Get public key of the service key, generate the key pair on first access. */
+  @NonNull
+  protected PublicKey extractPublicKey(@NonNull final String alias, @NonNull final SecurityLevel level)
+    throws GeneralSecurityException {
+
+    PublicKey key = (PublicKey) publicKeyCache.get(resolveKeyAlias(alias));
+
+    if (null == key) {
+      final KeyStore store = getKeyStoreAndLoad();
+      final String keyAlias = obtainKeyAlias(store, alias, level);
 
-    // on first access create a key for storage
-    if (!store.containsAlias(alias)) {
-      generateKeyAndStoreUnderAlias(alias, level);
+      final KeyFactory kf = KeyFactory.getInstance(ALGORITHM_RSA);
+      final Certificate certificate = store.getCertificate(keyAlias);
+      final PublicKey publicKey = certificate.getPublicKey();
+      final X509EncodedKeySpec keySpec = new X509EncodedKeySpec(publicKey.getEncoded());
+      key = kf.generatePublic(keySpec);
+
+      publicKeyCache.put(keyAlias, key);
     }
 
-    final KeyFactory kf = KeyFactory.getInstance(ALGORITHM_RSA);
-    final Certificate certificate = store.getCertificate(alias);
-    final PublicKey publicKey = certificate.getPublicKey();
-    final X509EncodedKeySpec keySpec = new X509EncodedKeySpec(publicKey.getEncoded());
-    final PublicKey key = kf.generatePublic(keySpec);
+    return key;
+  }
+
+  /**
+   * Get keystore alias of the existing service key. On first access assign a pre-generated key of the pool,
+   * generation of RSA key (especially in StrongBox) can take more than a second. If pool is empty, generate
+   * the key inline.
+   */
+  @NonNull
+  private String obtainKeyAlias(@NonNull final KeyStore store,
+                                @NonNull final String alias,
+                                @NonNull final SecurityLevel level)
+    throws GeneralSecurityException {
+
+    final String assigned = resolveKeyAlias(alias);
+    if (store.containsAlias(assigned)) return assigned;
+
+    final KeyPool pool = keyPool;
+    if (null != pool) {
+      // assigned key lost (e.g. invalidated by new enrollment), forget assignment
+      pool.release(alias);
+
+      // every spare key is tried at most once, refill may add new ones while we iterate
+      for (int attempts = pool.getDepth(); attempts > 0; attempts--) {
+        final String pooled = pool.take(alias);
+        if (null == pooled) break;
+
+        final Key key = store.containsAlias(pooled) ? store.getKey(pooled, null) : null;
+        if (null != key && validateKeySecurityLevel(level, key) && isKeyValid(key)) return pooled;
+
+        Log.w(LOG_TAG, "Pooled key can not be used for service " + alias + ", trying next one.");
+        pool.release(alias);
+        if (null != key) store.deleteEntry(pooled);
+      }
+    }
+
+    generateKeyAndStoreUnderAlias(alias, level);
+
+    return alias;
+  }
+
+  /**
+   * Pooled keys require user authentication and could be permanently invalidated by a biometric enrollment
+   * change while waiting in the pool. Decryption init detects that without prompting the user.
+   */
+  private boolean isKeyValid(@NonNull final Key key) throws GeneralSecurityException {
+    try {
+      getCachedInstance().init(Cipher.DECRYPT_MODE, key);
+      return true;
+    } catch (final KeyPermanentlyInvalidatedException ex) {
+      return false;
+    } catch (final UserNotAuthenticatedException ex) {
+      // key is fine, it is just waiting for the user
+      return true;
+    }
+  }
+
+  /** Get keystore alias of the pooled key assigned to the service key, or the service key alias itself. */
+  @NonNull
+  protected String resolveKeyAlias(@NonNull final String alias) {
+    final KeyPool pool = keyPool;
+    final String pooled = (null == pool) ? null : pool.resolve(alias);
+
+    return (null == pooled) ? alias : pooled;
+  }
+
+  /** Encrypt username and password by the public key. */
+  @NonNull
+  protected EncryptionResult encryptCredentials(@NonNull final PublicKey key,
+                                                @NonNull final String username,
+                                                @NonNull final String password)
+    throws GeneralSecurityException, IOException {
+
+    if (combinedRecords) {
+      final ScratchBuffers.Scratch scratch = scratchBuffers.get();
+      int length = 0;
+
+      try {
+        length = scratch.encode(username, password);
+
+        // record should fit one RSA block, longer credentials stay in two fields
+        if (length <= getMaxRecordSize(key)) {
+          return new EncryptionResult(RECORD_MARKER,
+            encryptBytes(key, scratch.encoded(), 0, length, Defaults.encrypt), this);
+        }
+      } finally {
+        ScratchBuffers.wipe(scratch.encoded(), length);
+      }
+    }
 
     return new EncryptionResult(
       encryptString(key, username),
@@ -211,6 +356,19 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
       this);
   }
 
+  /** Max size of plain text that fits one RSA block of the key. */
+  protected static int getMaxRecordSize(@NonNull final PublicKey key) {
+    final int bits = (key instanceof RSAKey) ? ((RSAKey) key).getModulus().bitLength() : ENCRYPTION_KEY_SIZE;
+
+    return bits / 8 - PKCS1_PADDING_SIZE;
+  }
+
+  /** Get keystore alias of the service key. */
+  @NonNull
+  protected String getKeyAlias(@NonNull final String alias) {
+    return getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName());
+  }
+
   /** Get builder for encryption and decryption operations with required user Authentication. */
   @NonNull
   @Override
@@ -0,0 +1,101 @@
+package com.oblador.keychain.cipherStorage;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.security.Key;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of keystore key handles, alias to key. Each keystore lookup is a binder call into the
+ * keystore daemon, handle stays valid until the entry is deleted. Handle does not carry key material, user
+ * authentication is still enforced by keystore on every cipher operation.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class KeyCache {
+  //region Constants
+  /** Default number of cached handles. */
+  public static final int DEFAULT_CAPACITY = 16;
+  //endregion
+
+  //region Members
+  /** Max number of cached handles. */
+  private final int capacity;
+  /** Handles in access order, eldest evicted first. Guarded by itself. */
+  private final LinkedHashMap<String, Key> keys;
+  /** Number of lookups served from memory. */
+  private final AtomicLong hits = new AtomicLong();
+  /** Number of lookups that went to keystore. */
+  private final AtomicLong misses = new AtomicLong();
+  //endregion
+
+  public KeyCache() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public KeyCache(final int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("Capacity should be positive");
+
+    this.capacity = capacity;
+    this.keys = new LinkedHashMap<String, Key>(capacity, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Key> eldest) {
+        return size() > KeyCache.this.capacity;
+      }
+    };
+  }
+
+  /** Get cached handle, NULL - lookup in keystore is needed. */
+  @Nullable
+  public Key get(@NonNull final String alias) {
+    final Key key;
+
+    synchronized (keys) {
+      key = keys.get(alias);
+    }
+
+    (null == key ? misses : hits).incrementAndGet();
+
+    return key;
+  }
+
+  public void put(@NonNull final String alias, @NonNull final Key key) {
+    synchronized (keys) {
+      keys.put(alias, key);
+    }
+  }
+
+  /** Forget handle of the deleted or broken keystore entry. */
+  public void remove(@NonNull final String alias) {
+    synchronized (keys) {
+      keys.remove(alias);
+    }
+  }
+
+  /** Drop all handles, e.g. on memory trim. */
+  public void clear() {
+    synchronized (keys) {
+      keys.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (keys) {
+      return keys.size();
+    }
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+}
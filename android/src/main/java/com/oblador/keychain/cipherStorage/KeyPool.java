@@ -0,0 +1,243 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.oblador.keychain.SecurityLevel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pool of keys generated in background under temporary aliases.
+ *
+ * Keystore can not rename an entry, so a pooled key is assigned to the service on first use and the assignment is
+ * persisted: `service key alias -> pooled alias`. Storages resolve the keystore alias through the pool before any
+ * key operation. Pool is refilled on a single low-priority thread up to the configured depth; depth 0 disables
+ * pre-generation, assigned keys are still resolved.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class KeyPool {
+  //region Constants
+  /** Logging tag. */
+  private static final String LOG_TAG = KeyPool.class.getSimpleName();
+  /** Preferences with spare keys and assignments. */
+  public static final String KEYCHAIN_KEY_POOL = "RN_KEYCHAIN_KEY_POOL";
+  /** Prefix of the keystore aliases of the pooled keys. */
+  public static final String POOL_ALIAS_PREFIX = "RN_KEYCHAIN_POOL#";
+  /** Preferences key prefix of the not assigned keys. */
+  private static final String SPARE_PREFIX = "spare:";
+  /** Preferences key prefix of the assigned keys. */
+  private static final String ASSIGNED_PREFIX = "alias:";
+  /** Default number of keys kept ready. Pre-generation is opt-in. */
+  public static final int DEFAULT_DEPTH = 0;
+  //endregion
+
+  //region Members
+  /** Spare keys and assignments storage. */
+  @NonNull
+  private final SharedPreferences prefs;
+  /** Storage that knows how to generate the keys. */
+  @NonNull
+  private final CipherStorageBase generator;
+  /** Executor of the refill operations. */
+  @NonNull
+  private final Executor executor;
+  /** Aliases of the keys ready for assignment. Guarded by itself. */
+  private final Deque<String> spare = new ArrayDeque<>();
+  /** Refill task is scheduled or running. */
+  private final AtomicBoolean refilling = new AtomicBoolean(false);
+  /** Number of keys to keep ready. */
+  private volatile int targetDepth = DEFAULT_DEPTH;
+  /** Pool was shut down, no more background work is scheduled. */
+  private volatile boolean closed;
+  //endregion
+
+  public KeyPool(@NonNull final Context context, @NonNull final CipherStorageBase generator) {
+    this(context, generator, Executors.newSingleThreadExecutor(KeyPool::newLowPriorityThread));
+  }
+
+  public KeyPool(@NonNull final Context context,
+                 @NonNull final CipherStorageBase generator,
+                 @NonNull final Executor executor) {
+    this.prefs = context.getSharedPreferences(KEYCHAIN_KEY_POOL, Context.MODE_PRIVATE);
+    this.generator = generator;
+    this.executor = executor;
+
+    // keys generated in previous sessions are still in keystore
+    for (final String key : prefs.getAll().keySet()) {
+      if (key.startsWith(SPARE_PREFIX)) spare.add(key.substring(SPARE_PREFIX.length()));
+    }
+  }
+
+  //region Configuration
+
+  /** Change number of keys kept ready and start refill if needed. */
+  public void setTargetDepth(final int depth) {
+    if (depth < 0) throw new IllegalArgumentException("Depth should be positive or zero");
+
+    targetDepth = depth;
+    refill();
+  }
+
+  public int getTargetDepth() {
+    return targetDepth;
+  }
+
+  /** Metric: number of keys ready for assignment right now. */
+  public int getDepth() {
+    synchronized (spare) {
+      return spare.size();
+    }
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Get keystore alias assigned to the service key alias, NULL - no pooled key assigned. */
+  @Nullable
+  public String resolve(@NonNull final String alias) {
+    return prefs.getString(ASSIGNED_PREFIX + alias, null);
+  }
+
+  /**
+   * Assign spare key to the service key alias. Assignment is persisted before return.
+   *
+   * @return keystore alias of the assigned key, NULL - pool is empty.
+   */
+  @Nullable
+  public String take(@NonNull final String alias) {
+    final String pooled;
+
+    synchronized (spare) {
+      pooled = spare.poll();
+      if (null == pooled) return null;
+
+      prefs.edit()
+        .remove(SPARE_PREFIX + pooled)
+        .putString(ASSIGNED_PREFIX + alias, pooled)
+        .commit();
+    }
+
+    refill();
+
+    return pooled;
+  }
+
+  /**
+   * Drop assignment of the service key alias.
+   *
+   * @return keystore alias of the key that was assigned, NULL - no assignment.
+   */
+  @Nullable
+  public String release(@NonNull final String alias) {
+    synchronized (spare) {
+      final String pooled = resolve(alias);
+      if (null != pooled) prefs.edit().remove(ASSIGNED_PREFIX + alias).commit();
+
+      return pooled;
+    }
+  }
+
+  /**
+   * Drop all spare keys and generate new ones. Spare keys require user authentication, a change of the device
+   * lock or biometric enrollment could permanently invalidate them. Assigned keys are not touched.
+   */
+  public void flush() {
+    if (closed) return;
+
+    final List<String> dropped;
+
+    synchronized (spare) {
+      dropped = new ArrayList<>(spare);
+      spare.clear();
+
+      final SharedPreferences.Editor editor = prefs.edit();
+      for (final String pooled : dropped) editor.remove(SPARE_PREFIX + pooled);
+      editor.commit();
+    }
+
+    // keystore work is done after the pending refill on the pool thread
+    executor.execute(() -> {
+      for (final String pooled : dropped) {
+        try {
+          generator.getKeyStoreAndLoad().deleteEntry(pooled);
+        } catch (Throwable fail) {
+          Log.w(LOG_TAG, "Spare key removal failed: " + fail.getMessage(), fail);
+        }
+      }
+
+      refill();
+    });
+  }
+
+  /** Stop background refill. Spare keys stay persisted and are reused by the next pool instance. */
+  public void shutdown() {
+    closed = true;
+
+    if (executor instanceof ExecutorService) {
+      ((ExecutorService) executor).shutdown();
+    }
+  }
+
+  /** Schedule generation of the missing keys. Only one refill task is active at a time. */
+  public void refill() {
+    if (closed || getDepth() >= targetDepth) return;
+    if (!refilling.compareAndSet(false, true)) return;
+
+    executor.execute(() -> {
+      try {
+        fill();
+      } finally {
+        refilling.set(false);
+      }
+    });
+  }
+
+  /** Generate keys until target depth reached. Stops on the first failure, next take() will try again. */
+  private void fill() {
+    while (!closed && getDepth() < targetDepth) {
+      final String pooled = POOL_ALIAS_PREFIX + generator.getCipherStorageName() + "#" + UUID.randomUUID();
+
+      try {
+        final long startTime = System.nanoTime();
+        generator.generateKeyAndStoreUnderAlias(pooled, SecurityLevel.ANY);
+
+        Log.v(LOG_TAG, "pooled key generated in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+      } catch (Throwable fail) {
+        Log.e(LOG_TAG, "Key pre-generation failed: " + fail.getMessage(), fail);
+        return;
+      }
+
+      synchronized (spare) {
+        spare.add(pooled);
+        prefs.edit().putString(SPARE_PREFIX + pooled, generator.getCipherStorageName()).apply();
+      }
+    }
+  }
+
+  /** Key generation is a background work, it should not compete with UI thread. */
+  @NonNull
+  private static Thread newLowPriorityThread(@NonNull final Runnable task) {
+    final Thread thread = new Thread(() -> {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+      task.run();
+    }, "keychain-key-pool");
+    thread.setDaemon(true);
+
+    return thread;
+  }
+  //endregion
+}
@@ -0,0 +1,263 @@
+package com.oblador.keychain.cipherStorage;
+
+import androidx.annotation.NonNull;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Per-thread reusable buffers of the encrypt/decrypt operations.
+ *
+ * Plain text never leaves the scratch buffer except as the final result, buffer is wiped right after each
+ * operation. Buffers grow on demand; buffers bigger than {@link #MAX_RETAINED_SIZE} are used once and not
+ * retained, so one huge value does not pin memory of the thread forever.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class ScratchBuffers {
+  //region Constants
+  /** Initial size of the data buffer. Default: 1Kb. */
+  public static final int DEFAULT_SIZE = 1024;
+  /** Max size of the data buffer kept between operations. Default: 64Kb. */
+  public static final int MAX_RETAINED_SIZE = 64 * 1024;
+  /** Size of the username length placed before the fields of combined record. */
+  public static final int RECORD_HEADER_SIZE = 4;
+  //endregion
+
+  /** Buffers of the current thread. ThreadLocal.withInitial() is available from api26 only. */
+  private final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch();
+    }
+  };
+  /** Charset of the plain text. */
+  @NonNull
+  private final Charset charset;
+
+  public ScratchBuffers(@NonNull final Charset charset) {
+    this.charset = charset;
+  }
+
+  /** Get buffers confined to the calling thread. */
+  @NonNull
+  public Scratch get() {
+    return scratches.get();
+  }
+
+  /** Decode plain text into exactly sized characters array, without intermediate string. */
+  @NonNull
+  public char[] decode(@NonNull final byte[] bytes, final int offset, final int length)
+    throws CharacterCodingException {
+    final CharsetDecoder decoder = charset.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    final char[] chars = new char[(int) Math.ceil(length * (double) decoder.maxCharsPerByte())];
+    final CharBuffer out = CharBuffer.wrap(chars);
+
+    CoderResult result = decoder.decode(ByteBuffer.wrap(bytes, offset, length), out, true);
+    if (!result.isUnderflow()) result.throwException();
+    result = decoder.flush(out);
+    if (!result.isUnderflow()) result.throwException();
+
+    if (out.position() == chars.length) return chars;
+
+    final char[] exact = Arrays.copyOf(chars, out.position());
+    Arrays.fill(chars, '\0');
+
+    return exact;
+  }
+
+  /** Buffers of one thread. Not thread-safe by design. */
+  public final class Scratch {
+    /** Data buffer, holds plain text. */
+    private byte[] data = new byte[DEFAULT_SIZE];
+    /** Reusable view of the data buffer for the encoder. */
+    private ByteBuffer dataView = ByteBuffer.wrap(data);
+    /** Buffer filled by the last {@link #encode(CharSequence)} call, data buffer or one-time bigger one. */
+    private byte[] encoded = data;
+    /** Encoder of the plain text, same replacement rules as {@link String#getBytes(Charset)}. */
+    private final CharsetEncoder encoder = charset.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    /** Sink of the cipher initialization data, e.g. IV. */
+    public final PrefixOutput prefix = new PrefixOutput();
+    /** Source of the cipher initialization data. */
+    public final ArrayInput input = new ArrayInput();
+
+    /** Get data buffer of at least requested size. Content is undefined. */
+    @NonNull
+    public byte[] data(final int minSize) {
+      if (data.length >= minSize) return data;
+
+      final byte[] bigger = new byte[Math.max(minSize, data.length * 2)];
+      if (bigger.length <= MAX_RETAINED_SIZE) {
+        wipe(data, data.length);
+        data = bigger;
+        dataView = ByteBuffer.wrap(data);
+      }
+
+      return bigger;
+    }
+
+    /**
+     * Encode characters into the data buffer.
+     *
+     * @return number of bytes written at the beginning of {@link #encoded()}.
+     */
+    public int encode(@NonNull final CharSequence value) throws CharacterCodingException {
+      final ByteBuffer out = target((int) Math.ceil(value.length() * (double) encoder.maxBytesPerChar()));
+      encode(value, out);
+
+      return out.position();
+    }
+
+    /**
+     * Encode both fields into one combined record: `[username size:int][username][password]`.
+     *
+     * @return number of bytes written at the beginning of {@link #encoded()}.
+     */
+    public int encode(@NonNull final CharSequence username, @NonNull final CharSequence password)
+      throws CharacterCodingException {
+      final int chars = username.length() + password.length();
+      final ByteBuffer out = target(RECORD_HEADER_SIZE + (int) Math.ceil(chars * (double) encoder.maxBytesPerChar()));
+
+      out.position(RECORD_HEADER_SIZE);
+      encode(username, out);
+      out.putInt(0, out.position() - RECORD_HEADER_SIZE);
+      encode(password, out);
+
+      return out.position();
+    }
+
+    /**
+     * Copy both fields into one combined record: `[username size:int][username][password]`.
+     *
+     * @return number of bytes written at the beginning of {@link #encoded()}.
+     */
+    public int pack(@NonNull final byte[] username, @NonNull final byte[] password) {
+      final ByteBuffer out = target(RECORD_HEADER_SIZE + username.length + password.length);
+      out.putInt(username.length).put(username).put(password);
+
+      return out.position();
+    }
+
+    /** Select data buffer of at least requested size as the target of encoding. */
+    @NonNull
+    private ByteBuffer target(final int maxSize) {
+      final byte[] target = data(maxSize);
+      final ByteBuffer out = (target == data) ? dataView : ByteBuffer.wrap(target);
+      out.clear();
+
+      encoded = target;
+      return out;
+    }
+
+    private void encode(@NonNull final CharSequence value, @NonNull final ByteBuffer out)
+      throws CharacterCodingException {
+      encoder.reset();
+      CoderResult result = encoder.encode(CharBuffer.wrap(value), out, true);
+      if (!result.isUnderflow()) result.throwException();
+      result = encoder.flush(out);
+      if (!result.isUnderflow()) result.throwException();
+    }
+
+    /** Buffer filled by the last {@link #encode(CharSequence)} call, wipe it after use. */
+    @NonNull
+    public byte[] encoded() {
+      return encoded;
+    }
+  }
+
+  /** Zero the first bytes of the buffer. */
+  public static void wipe(@NonNull final byte[] buffer, final int length) {
+    Arrays.fill(buffer, 0, Math.min(length, buffer.length), (byte) 0);
+  }
+
+  /** Reusable output stream that collects a short prefix (e.g. IV) in memory. */
+  public static final class PrefixOutput extends OutputStream {
+    private byte[] buffer = new byte[32];
+    private int count;
+
+    public void reset() {
+      count = 0;
+    }
+
+    public int size() {
+      return count;
+    }
+
+    /** Copy collected bytes into destination. */
+    public void copyTo(@NonNull final byte[] destination, final int offset) {
+      System.arraycopy(buffer, 0, destination, offset, count);
+    }
+
+    @Override
+    public void write(final int b) {
+      ensure(count + 1);
+      buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(@NonNull final byte[] b, final int off, final int len) {
+      ensure(count + len);
+      System.arraycopy(b, off, buffer, count, len);
+      count += len;
+    }
+
+    private void ensure(final int size) {
+      if (size > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(size, buffer.length * 2));
+    }
+  }
+
+  /** Reusable input stream over a byte array that reports how much was consumed. */
+  public static final class ArrayInput extends InputStream {
+    private byte[] bytes;
+    private int position;
+
+    public void reset(@NonNull final byte[] source) {
+      bytes = source;
+      position = 0;
+    }
+
+    /** Number of consumed bytes. */
+    public int position() {
+      return position;
+    }
+
+    /** Drop reference to the source array. */
+    public void release() {
+      bytes = null;
+      position = 0;
+    }
+
+    @Override
+    public int read() {
+      return (position < bytes.length) ? (bytes[position++] & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(@NonNull final byte[] b, final int off, final int len) {
+      if (position >= bytes.length) return -1;
+
+      final int count = Math.min(len, bytes.length - position);
+      System.arraycopy(bytes, position, b, off, count);
+      position += count;
+
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return bytes.length - position;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package com.oblador.keychain.decryptionHandler;
+
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.biometric.BiometricPrompt;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionContext;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Unlocks several biometric protected reads by one prompt. Reads that need authentication are collected first,
+ * then one prompt unlocks the first of them and the rest are decrypted inside the key authentication validity
+ * window. Reads that miss the window are unlocked by the next prompt.
+ */
+public class BatchAuthentication {
+  /** Logging tag. */
+  private static final String LOG_TAG = BatchAuthentication.class.getSimpleName();
+
+  private final ReactApplicationContext reactContext;
+  private final BiometricPrompt.PromptInfo promptInfo;
+  private final Executor executor;
+  /** Reads waiting for the prompt. Guarded by itself. */
+  private final List<DecryptionResultHandlerDeferred> pending = new ArrayList<>();
+
+  public BatchAuthentication(@NonNull final ReactApplicationContext reactContext,
+                             @NonNull final BiometricPrompt.PromptInfo promptInfo,
+                             @NonNull final Executor executor) {
+    this.reactContext = reactContext;
+    this.promptInfo = promptInfo;
+    this.executor = executor;
+  }
+
+  /** Get handler for a read of the batch, only biometric storages wait for the batch prompt. */
+  @NonNull
+  public DecryptionResultHandler getHandler(@NonNull final CipherStorage storage) {
+    if (storage.isBiometrySupported() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      return new DecryptionResultHandlerDeferred(this, storage);
+    }
+
+    return new DecryptionResultHandlerNonInteractive();
+  }
+
+  /* package */ void add(@NonNull final DecryptionResultHandlerDeferred handler) {
+    synchronized (pending) {
+      pending.add(handler);
+    }
+  }
+
+  /** Number of reads waiting for the prompt. */
+  public int getPendingCount() {
+    synchronized (pending) {
+      return pending.size();
+    }
+  }
+
+  /** Get handler that shows the prompt. */
+  @NonNull
+  protected DecryptionResultHandler getPromptHandler(@NonNull final CipherStorage storage) {
+    return DecryptionResultHandlerProvider.getHandler(reactContext, storage, promptInfo, executor);
+  }
+
+  /** Show one prompt for all collected reads. Does nothing if no read needs authentication. */
+  public void authenticate() {
+    final List<DecryptionResultHandlerDeferred> round;
+
+    synchronized (pending) {
+      round = new ArrayList<>(pending);
+      pending.clear();
+    }
+
+    if (round.isEmpty()) return;
+
+    final DecryptionResultHandlerDeferred first = round.get(0);
+    final DecryptionContext context = first.getContext();
+    final DecryptionResultHandler prompt = getPromptHandler(first.getStorage());
+
+    try {
+      // context is assigned before the read is added to the batch
+      //noinspection ConstantConditions
+      prompt.askAccessPermissions(context);
+    } catch (Throwable fail) {
+      prompt.onDecrypt(null, fail);
+    }
+
+    prompt.getFuture().whenComplete((result, error) -> {
+      first.onDecrypt(result, error);
+
+      for (int i = 1; i < round.size(); i++) {
+        final DecryptionResultHandlerDeferred handler = round.get(i);
+
+        if (handler.decryptAuthenticated()) continue;
+
+        if (null == error) {
+          // window is over, wait for the next prompt
+          add(handler);
+        } else {
+          // prompt was not passed, do not ask again
+          handler.onDecrypt(null, CryptoFailedException.wrap(error));
+        }
+      }
+
+      if (getPendingCount() > 0) {
+        Log.d(LOG_TAG, "Authentication validity window is over, " + getPendingCount() + " reads left");
+      }
+
+      authenticate();
+    });
+  }
+}
@@ -0,0 +1,72 @@
+package com.oblador.keychain.decryptionHandler;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor of the BiometricPrompt callbacks shared by all interactive handlers. At most one thread, thread exits
+ * when idle and is re-created on demand, so repeated reads do not accumulate threads.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class CallbackExecutor implements Executor {
+  //region Constants
+  /** Idle time after which callback thread is released. */
+  public static final long KEEP_ALIVE_SECONDS = 30;
+  /** Thread name prefix, helps to find callbacks in traces. */
+  public static final String THREAD_NAME = "keychain-biometric-callback";
+  //endregion
+
+  //region Members
+  /** Default instance for handlers created without explicit executor. */
+  private static final CallbackExecutor shared = new CallbackExecutor();
+  /** Counter of created threads. */
+  private final AtomicInteger created = new AtomicInteger();
+  /** Single thread pool with unbounded queue of callbacks. */
+  private final ThreadPoolExecutor pool;
+  //endregion
+
+  public CallbackExecutor() {
+    pool = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), this::newThread,
+      // callback after shutdown still has to reach the handler, otherwise the read never completes
+      (command, executor) -> command.run());
+    pool.allowCoreThreadTimeOut(true);
+  }
+
+  /** Process-wide instance, never shut down. */
+  @NonNull
+  public static CallbackExecutor getShared() {
+    return shared;
+  }
+
+  @Override
+  public void execute(@NonNull final Runnable command) {
+    pool.execute(command);
+  }
+
+  /** Stop accepting callbacks, queued callbacks are still delivered. */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  public boolean isShutdown() {
+    return pool.isShutdown();
+  }
+
+  /** How many threads were created during instance lifetime. */
+  public int getCreatedThreadsCount() {
+    return created.get();
+  }
+
+  @NonNull
+  private Thread newThread(@NonNull final Runnable runnable) {
+    final Thread thread = new Thread(runnable, THREAD_NAME + "-" + created.incrementAndGet());
+    thread.setDaemon(true);
+
+    return thread;
+  }
+}
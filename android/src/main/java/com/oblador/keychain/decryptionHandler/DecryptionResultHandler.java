@@ -8,14 +8,20 @@ import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
 
 /** Handler that allows to inject some actions during decrypt operations. */
 public interface DecryptionResultHandler {
-  /** Ask user for interaction, often its unlock of keystore by biometric data providing. */
-  void askAccessPermissions(@NonNull final DecryptionContext context);
-
   /**
-   *
+   * Ask user for interaction, often its unlock of keystore by biometric data providing. Does not block the calling
+   * thread, result is delivered by returned future (same as {@link #getFuture()}).
    */
+  @NonNull
+  ResultFuture<DecryptionResult> askAccessPermissions(@NonNull final DecryptionContext context);
+
+  /** Deliver result of decryption. Completes the future of the handler. */
   void onDecrypt(@Nullable final DecryptionResult decryptionResult, @Nullable final Throwable error);
 
+  /** Get future completed by decryption result or error. */
+  @NonNull
+  ResultFuture<DecryptionResult> getFuture();
+
   /** Get reference on results. */
   @Nullable
   DecryptionResult getResult();
@@ -24,6 +30,6 @@ public interface DecryptionResultHandler {
   @Nullable
   Throwable getError();
 
-  /** Block thread and wait for any result of execution. */
+  /** Block thread and wait for any result of execution. For synchronous callers only, prefer {@link #getFuture()}. */
   void waitResult();
 }
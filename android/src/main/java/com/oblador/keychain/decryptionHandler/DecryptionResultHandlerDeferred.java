@@ -0,0 +1,99 @@
+package com.oblador.keychain.decryptionHandler;
+
+import android.os.Build;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionContext;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorageBase;
+
+/**
+ * Handler of one read in a batch. Does not show a prompt on access request, the read waits for
+ * {@link BatchAuthentication} that unlocks all collected reads by one prompt.
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+public class DecryptionResultHandlerDeferred implements DecryptionResultHandler {
+  private final ResultFuture<DecryptionResult> future = new ResultFuture<>();
+  private final BatchAuthentication batch;
+  private final CipherStorageBase storage;
+  @Nullable
+  private volatile DecryptionContext context;
+
+  public DecryptionResultHandlerDeferred(@NonNull final BatchAuthentication batch,
+                                         @NonNull final CipherStorage storage) {
+    this.batch = batch;
+    this.storage = (CipherStorageBase) storage;
+  }
+
+  /** Keep context of the read and wait for the batch prompt. */
+  @NonNull
+  @Override
+  public ResultFuture<DecryptionResult> askAccessPermissions(@NonNull final DecryptionContext context) {
+    this.context = context;
+    batch.add(this);
+
+    return future;
+  }
+
+  /**
+   * Decrypt after user authentication done by the batch prompt.
+   *
+   * @return false if authentication validity window is over, read should wait for the next prompt.
+   */
+  /* package */ boolean decryptAuthenticated() {
+    try {
+      if (null == context) throw new NullPointerException("Decrypt context is not assigned yet.");
+
+      onDecrypt(storage.decrypt(context), null);
+    } catch (UserNotAuthenticatedException ex) {
+      return false;
+    } catch (Throwable fail) {
+      onDecrypt(null, fail);
+    }
+
+    return true;
+  }
+
+  @NonNull
+  /* package */ CipherStorage getStorage() {
+    return storage;
+  }
+
+  @Nullable
+  /* package */ DecryptionContext getContext() {
+    return context;
+  }
+
+  @Override
+  public void onDecrypt(@Nullable final DecryptionResult decryptionResult, @Nullable final Throwable error) {
+    future.complete(decryptionResult, error);
+  }
+
+  @NonNull
+  @Override
+  public ResultFuture<DecryptionResult> getFuture() {
+    return future;
+  }
+
+  @Nullable
+  @Override
+  public DecryptionResult getResult() {
+    return future.getResult();
+  }
+
+  @Nullable
+  @Override
+  public Throwable getError() {
+    return future.getError();
+  }
+
+  @Override
+  public void waitResult() {
+    future.await();
+  }
+}
@@ -8,7 +8,6 @@ import androidx.annotation.Nullable;
 import androidx.biometric.BiometricPrompt;
 import androidx.fragment.app.FragmentActivity;
 
-import com.facebook.react.bridge.AssertionException;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.oblador.keychain.DeviceAvailability;
 import com.oblador.keychain.cipherStorage.CipherStorage;
@@ -18,14 +17,13 @@ import com.oblador.keychain.cipherStorage.CipherStorageBase;
 import com.oblador.keychain.exceptions.CryptoFailedException;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 public class DecryptionResultHandlerInteractiveBiometric extends BiometricPrompt.AuthenticationCallback implements DecryptionResultHandler {
-  protected CipherStorage.DecryptionResult result;
-  protected Throwable error;
+  protected final ResultFuture<DecryptionResult> future = new ResultFuture<>();
   protected final ReactApplicationContext reactContext;
   protected final CipherStorageBase storage;
-  protected final Executor executor = Executors.newSingleThreadExecutor();
+  /** Shared executor of the prompt callbacks, handler does not own it. */
+  protected final Executor executor;
   protected CipherStorage.DecryptionContext context;
   protected BiometricPrompt.PromptInfo promptInfo;
 
@@ -36,13 +34,24 @@ public class DecryptionResultHandlerInteractiveBiometric extends BiometricPrompt
                                                      @NonNull ReactApplicationContext reactContext,
                                                      @NonNull final CipherStorage storage,
                                                      @NonNull final BiometricPrompt.PromptInfo promptInfo) {
+    this(reactContext, storage, promptInfo, CallbackExecutor.getShared());
+  }
+
+  public DecryptionResultHandlerInteractiveBiometric(
+                                                     @NonNull ReactApplicationContext reactContext,
+                                                     @NonNull final CipherStorage storage,
+                                                     @NonNull final BiometricPrompt.PromptInfo promptInfo,
+                                                     @NonNull final Executor executor) {
     this.reactContext = reactContext;
     this.storage = (CipherStorageBase) storage;
     this.promptInfo = promptInfo;
+    this.executor = executor;
   }
 
+  /** Start authentication and return immediately, prompt result completes the future. */
+  @NonNull
   @Override
-  public void askAccessPermissions(@NonNull final DecryptionContext context) {
+  public ResultFuture<DecryptionResult> askAccessPermissions(@NonNull final DecryptionContext context) {
     this.context = context;
 
     if (!DeviceAvailability.isPermissionsGranted(reactContext)) {
@@ -53,28 +62,31 @@ public class DecryptionResultHandlerInteractiveBiometric extends BiometricPrompt
     } else {
       startAuthentication();
     }
+
+    return future;
   }
 
   @Override
   public void onDecrypt(@Nullable final DecryptionResult decryptionResult, @Nullable final Throwable error) {
-    this.result = decryptionResult;
-    this.error = error;
+    future.complete(decryptionResult, error);
+  }
 
-    synchronized (this) {
-      notifyAll();
-    }
+  @NonNull
+  @Override
+  public ResultFuture<DecryptionResult> getFuture() {
+    return future;
   }
 
   @Nullable
   @Override
   public CipherStorage.DecryptionResult getResult() {
-    return result;
+    return future.getResult();
   }
 
   @Nullable
   @Override
   public Throwable getError() {
-    return error;
+    return future.getError();
   }
 
   /** Called when an unrecoverable error has been encountered and the operation is complete. */
@@ -91,10 +103,7 @@ public class DecryptionResultHandlerInteractiveBiometric extends BiometricPrompt
     try {
       if (null == context) throw new NullPointerException("Decrypt context is not assigned yet.");
 
-      final CipherStorage.DecryptionResult decrypted = new CipherStorage.DecryptionResult(
-        storage.decryptBytes(context.key, context.username),
-        storage.decryptBytes(context.key, context.password)
-      );
+      final CipherStorage.DecryptionResult decrypted = storage.decrypt(context);
 
       onDecrypt(decrypted, null);
     } catch (Throwable fail) {
@@ -102,14 +111,13 @@ public class DecryptionResultHandlerInteractiveBiometric extends BiometricPrompt
     }
   }
 
-  /** trigger interactive authentication. */
+  /** trigger interactive authentication. Does not wait for the result. */
   public void startAuthentication() {
     FragmentActivity activity = getCurrentActivity();
 
     // code can be executed only from MAIN thread
     if (Thread.currentThread() != Looper.getMainLooper().getThread()) {
       activity.runOnUiThread(this::startAuthentication);
-      waitResult();
       return;
     }
 
@@ -133,18 +141,9 @@ public class DecryptionResultHandlerInteractiveBiometric extends BiometricPrompt
   /** Block current NON-main thread and wait for user authentication results. */
   @Override
   public void waitResult() {
-    if (Thread.currentThread() == Looper.getMainLooper().getThread())
-      throw new AssertionException("method should not be executed from MAIN thread");
-
     Log.i(LOG_TAG, "blocking thread. waiting for done UI operation.");
 
-    try {
-      synchronized (this) {
-        wait();
-      }
-    } catch (InterruptedException ignored) {
-      /* shutdown sequence */
-    }
+    future.await();
 
     Log.i(LOG_TAG, "unblocking thread.");
   }
@@ -10,6 +10,8 @@ import androidx.fragment.app.FragmentActivity;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.oblador.keychain.cipherStorage.CipherStorage;
 
+import java.util.concurrent.Executor;
+
 public class DecryptionResultHandlerInteractiveBiometricManualRetry extends DecryptionResultHandlerInteractiveBiometric implements DecryptionResultHandler {
   private BiometricPrompt presentedPrompt;
   private Boolean didFailBiometric = false;
@@ -20,6 +22,13 @@ public class DecryptionResultHandlerInteractiveBiometricManualRetry extends Decr
     super(reactContext, storage, promptInfo);
   }
 
+  public DecryptionResultHandlerInteractiveBiometricManualRetry(@NonNull ReactApplicationContext reactContext,
+                                                                @NonNull CipherStorage storage,
+                                                                @NonNull BiometricPrompt.PromptInfo promptInfo,
+                                                                @NonNull Executor executor) {
+    super(reactContext, storage, promptInfo, executor);
+  }
+
   /** Manually cancel current (invisible) authentication to clear the fragment. */
   private void cancelPresentedAuthentication() {
     Log.d(LOG_TAG, "Cancelling authentication");
@@ -68,7 +77,7 @@ public class DecryptionResultHandlerInteractiveBiometricManualRetry extends Decr
     super.onAuthenticationSucceeded(result);
   }
 
-  /** trigger interactive authentication. */
+  /** trigger interactive authentication. Does not wait for the result. */
   @Override
   public void startAuthentication() {
     FragmentActivity activity = getCurrentActivity();
@@ -76,14 +85,13 @@ public class DecryptionResultHandlerInteractiveBiometricManualRetry extends Decr
     // code can be executed only from MAIN thread
     if (Thread.currentThread() != Looper.getMainLooper().getThread()) {
       activity.runOnUiThread(this::startAuthentication);
-      waitResult();
       return;
     }
 
     this.presentedPrompt = authenticateWithPrompt(activity);
   }
 
-  /** trigger interactive authentication without invoking another waitResult() */
+  /** trigger interactive authentication again, after the failed one is cleared */
   protected void retryAuthentication() {
     Log.d(LOG_TAG, "Retrying biometric authentication.");
 
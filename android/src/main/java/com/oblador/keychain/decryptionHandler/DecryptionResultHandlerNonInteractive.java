@@ -8,34 +8,41 @@ import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
 import com.oblador.keychain.exceptions.CryptoFailedException;
 
 public class DecryptionResultHandlerNonInteractive implements DecryptionResultHandler {
-  private DecryptionResult result;
-  private Throwable error;
+  private final ResultFuture<DecryptionResult> future = new ResultFuture<>();
 
+  @NonNull
   @Override
-  public void askAccessPermissions(@NonNull final DecryptionContext context) {
+  public ResultFuture<DecryptionResult> askAccessPermissions(@NonNull final DecryptionContext context) {
     final CryptoFailedException failure = new CryptoFailedException(
       "Non interactive decryption mode.");
 
     onDecrypt(null, failure);
+
+    return future;
   }
 
   @Override
   public void onDecrypt(@Nullable final DecryptionResult decryptionResult,
                         @Nullable final Throwable error) {
-    this.result = decryptionResult;
-    this.error = error;
+    future.complete(decryptionResult, error);
+  }
+
+  @NonNull
+  @Override
+  public ResultFuture<DecryptionResult> getFuture() {
+    return future;
   }
 
   @Nullable
   @Override
   public DecryptionResult getResult() {
-    return result;
+    return future.getResult();
   }
 
   @Nullable
   @Override
   public Throwable getError() {
-    return error;
+    return future.getError();
   }
 
   @Override
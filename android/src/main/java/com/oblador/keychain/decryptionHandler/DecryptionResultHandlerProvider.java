@@ -9,6 +9,7 @@ import com.facebook.react.bridge.ReactApplicationContext;
 import com.oblador.keychain.cipherStorage.CipherStorage;
 
 import java.util.Arrays;
+import java.util.concurrent.Executor;
 
 // NOTE: the logic for handling OnePlus bug is taken from the following forum post:
 // https://forums.oneplus.com/threads/oneplus-7-pro-fingerprint-biometricprompt-does-not-show.1035821/#post-21710422
@@ -33,12 +34,20 @@ public class DecryptionResultHandlerProvider {
   public static DecryptionResultHandler getHandler(@NonNull ReactApplicationContext reactContext,
                                                    @NonNull final CipherStorage storage,
                                                    @NonNull final BiometricPrompt.PromptInfo promptInfo) {
+    return getHandler(reactContext, storage, promptInfo, CallbackExecutor.getShared());
+  }
+
+  /** Get handler that delivers prompt callbacks through provided executor. */
+  public static DecryptionResultHandler getHandler(@NonNull ReactApplicationContext reactContext,
+                                                   @NonNull final CipherStorage storage,
+                                                   @NonNull final BiometricPrompt.PromptInfo promptInfo,
+                                                   @NonNull final Executor executor) {
     if (storage.isBiometrySupported()) {
       if (hasOnePlusBiometricBug()) {
-        return new DecryptionResultHandlerInteractiveBiometricManualRetry(reactContext, storage, promptInfo);
+        return new DecryptionResultHandlerInteractiveBiometricManualRetry(reactContext, storage, promptInfo, executor);
       }
 
-      return new DecryptionResultHandlerInteractiveBiometric(reactContext, storage, promptInfo);
+      return new DecryptionResultHandlerInteractiveBiometric(reactContext, storage, promptInfo, executor);
     }
 
     return new DecryptionResultHandlerNonInteractive();
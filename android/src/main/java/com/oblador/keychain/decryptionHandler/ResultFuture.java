@@ -0,0 +1,157 @@
+package com.oblador.keychain.decryptionHandler;
+
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.AssertionException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of an operation that may complete later, e.g. after user authentication. Completes only once: first
+ * result or error wins, listeners are called exactly once on the completing thread (or immediately on the
+ * subscribing thread if already completed).
+ *
+ * CompletableFuture is available from api24 only, minimal replacement of it.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class ResultFuture<T> {
+  //region Members
+  /** Listeners waiting for completion. NULL - future is completed. Guarded by this. */
+  @Nullable
+  private List<Listener<T>> listeners = new ArrayList<>(1);
+  @Nullable
+  private volatile T result;
+  @Nullable
+  private volatile Throwable error;
+  //endregion
+
+  /** Create already completed future. */
+  @NonNull
+  public static <T> ResultFuture<T> completed(@Nullable final T result) {
+    final ResultFuture<T> future = new ResultFuture<>();
+    future.complete(result, null);
+
+    return future;
+  }
+
+  /** Create already failed future. */
+  @NonNull
+  public static <T> ResultFuture<T> failed(@NonNull final Throwable error) {
+    final ResultFuture<T> future = new ResultFuture<>();
+    future.complete(null, error);
+
+    return future;
+  }
+
+  /**
+   * Complete future by result or error.
+   *
+   * @return false if future was already completed, provided values are ignored.
+   */
+  public boolean complete(@Nullable final T result, @Nullable final Throwable error) {
+    final List<Listener<T>> waiting;
+
+    synchronized (this) {
+      if (null == listeners) return false;
+
+      this.result = result;
+      this.error = error;
+      waiting = listeners;
+      listeners = null;
+
+      notifyAll();
+    }
+
+    for (Listener<T> listener : waiting) {
+      listener.onComplete(result, error);
+    }
+
+    return true;
+  }
+
+  /** Call listener on completion. Listener is called immediately if future is already completed. */
+  @NonNull
+  public ResultFuture<T> whenComplete(@NonNull final Listener<T> listener) {
+    synchronized (this) {
+      if (null != listeners) {
+        listeners.add(listener);
+        return this;
+      }
+    }
+
+    listener.onComplete(result, error);
+
+    return this;
+  }
+
+  /** Transform result of the future, errors of this future and of transformation fail the returned one. */
+  @NonNull
+  public <R> ResultFuture<R> then(@NonNull final Transform<T, R> transform) {
+    final ResultFuture<R> next = new ResultFuture<>();
+
+    whenComplete((result, error) -> {
+      if (null != error) {
+        next.complete(null, error);
+        return;
+      }
+
+      try {
+        next.complete(transform.apply(result), null);
+      } catch (Throwable fail) {
+        next.complete(null, fail);
+      }
+    });
+
+    return next;
+  }
+
+  public boolean isDone() {
+    synchronized (this) {
+      return null == listeners;
+    }
+  }
+
+  /** Result of the completed future, NULL - not completed yet or failed. */
+  @Nullable
+  public T getResult() {
+    return result;
+  }
+
+  /** Error of the completed future, NULL - not completed yet or succeeded. */
+  @Nullable
+  public Throwable getError() {
+    return error;
+  }
+
+  /** Block current NON-main thread till completion. For synchronous callers only. */
+  public void await() {
+    if (Thread.currentThread() == Looper.getMainLooper().getThread())
+      throw new AssertionException("method should not be executed from MAIN thread");
+
+    try {
+      synchronized (this) {
+        while (null != listeners) wait();
+      }
+    } catch (InterruptedException ignored) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  //region Nested declarations
+
+  /** Completion callback. Exactly one of the values is expected to be set. */
+  public interface Listener<T> {
+    void onComplete(@Nullable final T result, @Nullable final Throwable error);
+  }
+
+  /** Transformation of the successful result. */
+  public interface Transform<T, R> {
+    @Nullable
+    R apply(@Nullable final T result) throws Exception;
+  }
+  //endregion
+}
@@ -1,5 +1,6 @@
 package com.oblador.keychain.exceptions;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.security.GeneralSecurityException;
@@ -16,10 +17,15 @@ public class CryptoFailedException extends GeneralSecurityException {
   public static void reThrowOnError(@Nullable final Throwable error) throws CryptoFailedException {
     if(null == error) return;
 
-    if (error instanceof CryptoFailedException)
-      throw (CryptoFailedException) error;
+    throw wrap(error);
+  }
 
-    throw new CryptoFailedException("Wrapped error: " + error.getMessage(), error);
+  /** Keep crypto failure as is, wrap any other error into crypto failure. */
+  @NonNull
+  public static CryptoFailedException wrap(@NonNull final Throwable error) {
+    if (error instanceof CryptoFailedException)
+      return (CryptoFailedException) error;
 
+    return new CryptoFailedException("Wrapped error: " + error.getMessage(), error);
   }
 }
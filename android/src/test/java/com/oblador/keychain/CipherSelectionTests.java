@@ -0,0 +1,105 @@
+package com.oblador.keychain;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.oblador.keychain.cipherStorage.CipherStorage;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class CipherSelectionTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  @NonNull
+  private static CipherStorage storage(@NonNull final String name,
+                                       final int minApiLevel,
+                                       @NonNull final SecurityLevel level,
+                                       final boolean biometry) {
+    final CipherStorage storage = mock(CipherStorage.class);
+    when(storage.getCipherStorageName()).thenReturn(name);
+    when(storage.getMinSupportedApiLevel()).thenReturn(minApiLevel);
+    when(storage.securityLevel()).thenReturn(level);
+    when(storage.isBiometrySupported()).thenReturn(biometry);
+    when(storage.getCapabilityLevel()).thenReturn((biometry ? 1000 : 0)
+      + (SecurityLevel.SECURE_HARDWARE == level ? 100 : 0) + minApiLevel);
+
+    return storage;
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testRankSkipsNewerApiAndKeepsRegistrationOrderOnTies() {
+    // GIVEN:
+    final CipherStorage fb = storage("fb", Build.VERSION_CODES.KITKAT, SecurityLevel.ANY, false);
+    final CipherStorage cbc = storage("cbc", Build.VERSION_CODES.M, SecurityLevel.SECURE_HARDWARE, false);
+    final CipherStorage gcm = storage("gcm", Build.VERSION_CODES.M, SecurityLevel.SECURE_HARDWARE, false);
+    final CipherStorage future = storage("future", Build.VERSION_CODES.P, SecurityLevel.SECURE_HARDWARE, false);
+
+    // WHEN:
+    final List<CipherStorage> ranked = CipherSelection.rank(Arrays.asList(fb, cbc, gcm, future));
+
+    // THEN: later registered storage wins the tie
+    assertThat(ranked, contains(gcm, cbc, fb));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testBiometricStorageOnlyWhenRequestedAndAvailable() {
+    // GIVEN:
+    final CipherStorage aes = storage("aes", Build.VERSION_CODES.M, SecurityLevel.SECURE_HARDWARE, false);
+    final CipherStorage rsa = storage("rsa", Build.VERSION_CODES.M, SecurityLevel.SECURE_HARDWARE, true);
+    final List<CipherStorage> ranked = CipherSelection.rank(Arrays.asList(aes, rsa));
+
+    // WHEN:
+    final CipherSelection available = new CipherSelection(ranked, true);
+    final CipherSelection unavailable = new CipherSelection(ranked, false);
+
+    // THEN:
+    assertThat(available.get(true), is(rsa));
+    assertThat(available.get(false), is(aes));
+    assertThat(available.get(true, SecurityLevel.SECURE_HARDWARE), is(rsa));
+    assertThat(unavailable.get(true), is(aes));
+    assertThat(unavailable.get(false, SecurityLevel.SECURE_HARDWARE), is(aes));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.LOLLIPOP)
+  public void testNoStorageSatisfiesLevel() {
+    // GIVEN: only software storage is supported
+    final CipherStorage fb = storage("fb", Build.VERSION_CODES.KITKAT, SecurityLevel.ANY, false);
+    final CipherStorage aes = storage("aes", Build.VERSION_CODES.M, SecurityLevel.SECURE_HARDWARE, false);
+
+    // WHEN:
+    final CipherSelection selection = new CipherSelection(CipherSelection.rank(Arrays.asList(fb, aes)), true);
+
+    // THEN:
+    assertThat(selection.get(true), is(fb));
+    assertThat(selection.get(false, SecurityLevel.ANY), is(fb));
+    assertThat(selection.get(false, SecurityLevel.SECURE_SOFTWARE), is(nullValue()));
+    assertThat(selection.get(true, SecurityLevel.SECURE_HARDWARE), is(nullValue()));
+  }
+}
@@ -0,0 +1,116 @@
+package com.oblador.keychain;
+
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+@RunWith(RobolectricTestRunner.class)
+public class CredentialsCacheTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  private static final DecryptionResult TOKEN =
+    new DecryptionResult("user", "token", SecurityLevel.SECURE_HARDWARE);
+
+  @Test
+  public void testHitReturnsOwnCopy() {
+    // GIVEN:
+    final CredentialsCache cache = new CredentialsCache(2, 1_000);
+    cache.put("session", "KeystoreAESCBC", TOKEN, cache.getGeneration());
+
+    // WHEN:
+    final CredentialsCache.Cached first = cache.get("session");
+    final CredentialsCache.Cached second = cache.get("session");
+
+    // THEN:
+    assertThat(first, notNullValue());
+    assertThat(first.storage, is("KeystoreAESCBC"));
+    assertThat(first.result.username, is("user"));
+    assertThat(first.result.password, is("token"));
+    assertThat(first.result.getSecurityLevel(), is(SecurityLevel.SECURE_HARDWARE));
+    assertThat(second.result.password, not(sameInstance(first.result.password)));
+    assertThat(cache.getHits(), is(2L));
+  }
+
+  @Test
+  public void testEntryExpires() {
+    // GIVEN:
+    final CredentialsCache cache = new CredentialsCache(2, 1_000);
+    cache.put("session", "KeystoreAESCBC", TOKEN, cache.getGeneration());
+
+    // WHEN:
+    ShadowSystemClock.advanceBy(Duration.ofMillis(1_001));
+
+    // THEN:
+    assertThat(cache.get("session"), nullValue());
+    assertThat(cache.size(), is(0));
+    assertThat(cache.getMisses(), is(1L));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() {
+    // GIVEN:
+    final CredentialsCache cache = new CredentialsCache(2, 1_000);
+    cache.put("first", "KeystoreAESCBC", TOKEN, cache.getGeneration());
+    cache.put("second", "KeystoreAESCBC", TOKEN, cache.getGeneration());
+
+    // WHEN:
+    cache.get("first");
+    cache.put("third", "KeystoreAESCBC", TOKEN, cache.getGeneration());
+
+    // THEN:
+    assertThat(cache.size(), is(2));
+    assertThat(cache.get("first"), notNullValue());
+    assertThat(cache.get("second"), nullValue());
+    assertThat(cache.get("third"), notNullValue());
+  }
+
+  @Test
+  public void testReadStartedBeforeInvalidationIsNotCached() {
+    // GIVEN: read started, then entry was overwritten
+    final CredentialsCache cache = new CredentialsCache(2, 1_000);
+    final long generation = cache.getGeneration();
+    cache.remove("session");
+
+    // WHEN: read completes with old value
+    cache.put("session", "KeystoreAESCBC", TOKEN, generation);
+
+    // THEN:
+    assertThat(cache.get("session"), nullValue());
+  }
+
+  @Test
+  public void testClearWipesEverything() {
+    // GIVEN:
+    final CredentialsCache cache = new CredentialsCache(2, 1_000);
+    cache.put("first", "KeystoreAESCBC", TOKEN, cache.getGeneration());
+    cache.put("second", "KeystoreAESCBC", TOKEN, cache.getGeneration());
+
+    // WHEN:
+    cache.clear();
+
+    // THEN:
+    assertThat(cache.size(), is(0));
+    assertThat(cache.get("first"), nullValue());
+  }
+}
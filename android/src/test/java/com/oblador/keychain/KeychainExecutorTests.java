@@ -0,0 +1,128 @@
+package com.oblador.keychain;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(RobolectricTestRunner.class)
+public class KeychainExecutorTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  @Test
+  public void testSameAliasKeepsOrder() throws Exception {
+    // GIVEN:
+    final KeychainExecutor executor = new KeychainExecutor(4);
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    final int operations = 200;
+    final CountDownLatch done = new CountDownLatch(operations);
+
+    // WHEN:
+    for (int i = 0; i < operations; i++) {
+      final int index = i;
+
+      executor.execute("service", () -> {
+        order.add(index);
+        done.countDown();
+      });
+    }
+
+    // THEN:
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    for (int i = 0; i < operations; i++) assertThat(order.get(i), is(i));
+
+    executor.shutdown();
+  }
+
+  @Test
+  public void testDifferentAliasesRunInParallel() throws Exception {
+    // GIVEN: slow operation holds the first alias
+    final KeychainExecutor executor = new KeychainExecutor(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch other = new CountDownLatch(1);
+
+    executor.execute("slow", () -> {
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException ignored) {
+      }
+    });
+
+    // WHEN:
+    executor.execute("fast", other::countDown);
+
+    // THEN: not blocked by the slow alias
+    assertThat(other.await(5, TimeUnit.SECONDS), is(true));
+
+    release.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testBatchWaitsForEachAlias() throws Exception {
+    // GIVEN:
+    final KeychainExecutor executor = new KeychainExecutor(4);
+    final List<String> order = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+
+    executor.execute("first", () -> {
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException ignored) {
+      }
+      order.add("first");
+      done.countDown();
+    });
+
+    // WHEN: batch over both aliases, then single operation on the second one
+    executor.execute(Arrays.asList("first", "second"), () -> {
+      order.add("batch");
+      done.countDown();
+    });
+    executor.execute("second", () -> {
+      order.add("second");
+      done.countDown();
+    });
+    release.countDown();
+
+    // THEN:
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(order, contains("first", "batch", "second"));
+
+    executor.shutdown();
+  }
+
+  @Test
+  public void testZeroPoolRunsOnCallingThread() {
+    // GIVEN:
+    final KeychainExecutor executor = new KeychainExecutor(0);
+    final Thread[] thread = new Thread[1];
+
+    // WHEN:
+    executor.execute("service", () -> thread[0] = Thread.currentThread());
+
+    // THEN:
+    assertThat(thread[0], is(Thread.currentThread()));
+    assertThat(executor.getCreatedThreadsCount(), is(0));
+  }
+}
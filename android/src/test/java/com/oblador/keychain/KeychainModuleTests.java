@@ -1,15 +1,19 @@
 package com.oblador.keychain;
 
+import android.app.KeyguardManager;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.hardware.fingerprint.FingerprintManager;
 import android.os.Build;
+import android.util.Base64;
 
 import androidx.annotation.NonNull;
 import androidx.biometric.BiometricManager;
 import androidx.test.core.app.ApplicationProvider;
 
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.JavaOnlyArray;
 import com.facebook.react.bridge.JavaOnlyMap;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
@@ -21,7 +25,11 @@ import com.oblador.keychain.cipherStorage.CipherStorage;
 import com.oblador.keychain.cipherStorage.CipherStorageBase;
 import com.oblador.keychain.cipherStorage.CipherStorageFacebookConceal;
 import com.oblador.keychain.cipherStorage.CipherStorageKeystoreAesCbc;
+import com.oblador.keychain.cipherStorage.CipherStorageKeystoreAesGcm;
+import com.oblador.keychain.cipherStorage.CipherStorageKeystoreRsaAesHybrid;
 import com.oblador.keychain.cipherStorage.CipherStorageKeystoreRsaEcb;
+import com.oblador.keychain.decryptionHandler.DecryptionResultHandler;
+import com.oblador.keychain.decryptionHandler.DecryptionResultHandlerNonInteractive;
 import com.oblador.keychain.exceptions.CryptoFailedException;
 import com.oblador.keychain.exceptions.KeyStoreAccessException;
 
@@ -34,6 +42,7 @@ import org.junit.rules.TestName;
 import org.junit.rules.Timeout;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
@@ -43,17 +52,32 @@ import org.robolectric.annotation.Config;
 
 import java.security.KeyStore;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.robolectric.Shadows.shadowOf;
@@ -194,7 +218,7 @@ public class KeychainModuleTests {
 
   @Test
   @Config(sdk = Build.VERSION_CODES.M)
-  public void testExtractAesCbc_NoFingerprintConfigured_api23() throws Exception {
+  public void testExtractAesGcm_NoFingerprintConfigured_api23() throws Exception {
     // GIVEN:
     //  API23 android version
     final ReactApplicationContext context = getRNContext();
@@ -205,9 +229,11 @@ public class KeychainModuleTests {
 
     // THEN:
     //   expected AES cipher storage due no fingerprint available
-    //   AES win and returned instead of facebook cipher
+    //   AES/GCM win and returned instead of AES/CBC and facebook cipher
+    //   AES/CBC is still available for old entries
     assertThat(storage, notNullValue());
-    assertThat(storage, instanceOf(CipherStorageKeystoreAesCbc.class));
+    assertThat(storage, instanceOf(CipherStorageKeystoreAesGcm.class));
+    assertThat(module.getCipherStorageByName(KnownCiphers.AES), instanceOf(CipherStorageKeystoreAesCbc.class));
     assertThat(storage.isBiometrySupported(), is(false));
     assertThat(storage.securityLevel(), is(SecurityLevel.SECURE_HARDWARE));
     assertThat(storage.getMinSupportedApiLevel(), is(Build.VERSION_CODES.M));
@@ -227,16 +253,18 @@ public class KeychainModuleTests {
     final FingerprintManager fm = (FingerprintManager) context.getSystemService(Context.FINGERPRINT_SERVICE);
     shadowOf(fm).setIsHardwareDetected(true);
     shadowOf(fm).setDefaultFingerprints(5); // 5 fingerprints are available
+    shadowOf((KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE)).setIsKeyguardSecure(true);
 
     // WHEN: fingerprint availability influence on storage selection
     final KeychainModule module = new KeychainModule(context);
     final boolean isFingerprintWorking = module.isFingerprintAuthAvailable();
     final CipherStorage storage = module.getCipherStorageForCurrentAPILevel();
 
-    // THEN: expected RsaEcb with working fingerprint
+    // THEN: expected hybrid RsaEcb with working fingerprint
     assertThat(isFingerprintWorking, is(true));
     assertThat(storage, notNullValue());
     assertThat(storage, instanceOf(CipherStorageKeystoreRsaEcb.class));
+    assertThat(storage, instanceOf(CipherStorageKeystoreRsaAesHybrid.class));
     assertThat(storage.isBiometrySupported(), is(true));
     assertThat(storage.securityLevel(), is(SecurityLevel.SECURE_HARDWARE));
     assertThat(storage.getMinSupportedApiLevel(), is(Build.VERSION_CODES.M));
@@ -257,6 +285,7 @@ public class KeychainModuleTests {
     final FingerprintManager fm = (FingerprintManager) context.getSystemService(Context.FINGERPRINT_SERVICE);
     shadowOf(fm).setIsHardwareDetected(true);
     shadowOf(fm).setDefaultFingerprints(5); // 5 fingerprints are available
+    shadowOf((KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE)).setIsKeyguardSecure(true);
 
     // WHEN: get secured storage
     final int result = BiometricManager.from(context).canAuthenticate();
@@ -264,17 +293,86 @@ public class KeychainModuleTests {
     final boolean isFingerprintWorking = module.isFingerprintAuthAvailable();
     final CipherStorage storage = module.getCipherStorageForCurrentAPILevel();
 
-    // THEN: expected RsaEcb with working fingerprint
+    // THEN: expected hybrid RsaEcb with working fingerprint
     assertThat(isFingerprintWorking, is(true));
     assertThat(result, is(BiometricManager.BIOMETRIC_SUCCESS));
     assertThat(storage, notNullValue());
     assertThat(storage, instanceOf(CipherStorageKeystoreRsaEcb.class));
+    assertThat(storage, instanceOf(CipherStorageKeystoreRsaAesHybrid.class));
     assertThat(storage.isBiometrySupported(), is(true));
     assertThat(storage.securityLevel(), is(SecurityLevel.SECURE_HARDWARE));
     assertThat(storage.getMinSupportedApiLevel(), is(Build.VERSION_CODES.M));
     assertThat(storage.supportsSecureHardware(), is(true));
   }
 
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testExtractAesGcm_EnabledFingerprintWithoutDeviceLock_api28() throws Exception {
+    // GIVEN:
+    //   fingerprints configured
+    //   device lock removed, keystore refuses keys that require user authentication
+    final ReactApplicationContext context = getRNContext();
+    shadowOf(context.getPackageManager()).setSystemFeature(PackageManager.FEATURE_FINGERPRINT, true);
+
+    final FingerprintManager fm = (FingerprintManager) context.getSystemService(Context.FINGERPRINT_SERVICE);
+    shadowOf(fm).setIsHardwareDetected(true);
+    shadowOf(fm).setDefaultFingerprints(5);
+    shadowOf((KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE)).setIsKeyguardSecure(false);
+
+    // WHEN:
+    final KeychainModule module = new KeychainModule(context);
+    final CipherStorage storage = module.getCipherStorageForCurrentAPILevel(true);
+
+    // THEN: biometric storage is not selected even if biometry is requested
+    assertThat(storage, instanceOf(CipherStorageKeystoreAesGcm.class));
+    assertThat(storage.isBiometrySupported(), is(false));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testDeviceProbedOnceForStorageSelection_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+
+    try (MockedStatic<DeviceAvailability> availability = mockStatic(DeviceAvailability.class, Mockito.CALLS_REAL_METHODS)) {
+      // WHEN: several selections
+      for (int i = 0; i < 10; i++) {
+        module.getCipherStorageForCurrentAPILevel(true);
+        module.getCipherStorageForCurrentAPILevel(false);
+      }
+
+      // THEN: device is probed by the first selection only
+      availability.verify(() -> DeviceAvailability.isStrongBiometricAuthAvailable(any()));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testCapabilitiesRefreshedOnResume_api28() throws Exception {
+    // GIVEN: no biometry enrolled
+    final ReactApplicationContext context = getRNContext();
+    shadowOf(context.getPackageManager()).setSystemFeature(PackageManager.FEATURE_FINGERPRINT, true);
+    final FingerprintManager fm = (FingerprintManager) context.getSystemService(Context.FINGERPRINT_SERVICE);
+    shadowOf(fm).setIsHardwareDetected(true);
+    shadowOf((KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE)).setIsKeyguardSecure(true);
+
+    final KeychainModule module = new KeychainModule(context);
+    final CipherStorage before = module.getCipherStorageForCurrentAPILevel();
+
+    // WHEN: fingerprints enrolled while application is in background
+    shadowOf(fm).setDefaultFingerprints(5);
+    final CipherStorage stale = module.getCipherStorageForCurrentAPILevel();
+    module.onHostResume();
+    final CipherStorage after = module.getCipherStorageForCurrentAPILevel();
+
+    // THEN: snapshot is kept until application returns to foreground
+    assertThat(before.isBiometrySupported(), is(false));
+    assertThat(stale, is(before));
+    assertThat(after, instanceOf(CipherStorageKeystoreRsaAesHybrid.class));
+    assertThat(module.isFingerprintAuthAvailable(), is(true));
+  }
+
   @Test
   @Config(sdk = Build.VERSION_CODES.M)
   public void testMigrateStorageFromOlder_api23() throws Exception {
@@ -295,20 +393,21 @@ public class KeychainModuleTests {
 
     // WHEN:
     module.migrateCipherStorage("dummy", rsa, aes, decrypted);
-    final String username = prefs.getString(PrefsStorage.getKeyForUsername("dummy"), "");
-    final String password = prefs.getString(PrefsStorage.getKeyForPassword("dummy"), "");
-    final String cipherName = prefs.getString(PrefsStorage.getKeyForCipherStorage("dummy"), "");
+    final String record = prefs.getString(PrefsStorage.getKeyForRecord("dummy"), "");
+    final DataStorage.ResultSet entry = PrefsStorage.decodeRecord(Base64.decode(record, Base64.DEFAULT));
 
     // THEN:
     //   delete of key from old storage
-    //   re-store of encrypted data in shared preferences
+    //   re-store of encrypted data in shared preferences, as a single record
     verify(rsa).encrypt("dummy", "user", "password", SecurityLevel.ANY);
     verify(aes).removeKey("dummy");
 
-    // Base64.DEFAULT force '\n' char in the end of string
-    assertThat(username, is("dXNlcg==\n"));
-    assertThat(password, is("cGFzc3dvcmQ=\n"));
-    assertThat(cipherName, is("dummy"));
+    assertThat(new String(entry.username), is("user"));
+    assertThat(new String(entry.password), is("password"));
+    assertThat(entry.cipherStorageName, is("dummy"));
+    assertThat(prefs.contains(PrefsStorage.getKeyForUsername("dummy")), is(false));
+    assertThat(prefs.contains(PrefsStorage.getKeyForPassword("dummy")), is(false));
+    assertThat(prefs.contains(PrefsStorage.getKeyForCipherStorage("dummy")), is(false));
   }
 
   @Test
@@ -356,6 +455,39 @@ public class KeychainModuleTests {
     verify(mockPromise).resolve(SecurityLevel.ANY.name());
   }
 
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testGetSecurityLevelSync_Unspecified_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final Promise mockPromise = mock(Promise.class);
+
+    // WHEN:
+    module.getSecurityLevel(null, mockPromise);
+    final String level = module.getSecurityLevelSync(null);
+
+    // THEN: same answer as the async query
+    verify(mockPromise).resolve(level);
+    assertThat(level, is(SecurityLevel.SECURE_HARDWARE.name()));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testHasInternetCredentialsSync_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+    final PrefsStorage storage = new PrefsStorage(context);
+    final KeychainModule module = new KeychainModule(context, storage);
+
+    // WHEN:
+    storage.storeEncryptedEntry("server", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, KnownCiphers.AES));
+
+    // THEN:
+    assertThat(module.hasInternetCredentialsForServerSync("server"), is(KnownCiphers.AES));
+    assertThat(module.hasInternetCredentialsForServerSync("unknown"), is(nullValue()));
+  }
+
   @Test
   @Config(sdk = Build.VERSION_CODES.P)
   public void testGetSecurityLevel_NoBiometry_api28() throws Exception {
@@ -435,4 +567,439 @@ public class KeychainModuleTests {
     assertThat(exception.getValue().getCause(), instanceOf(KeyStoreAccessException.class));
     assertThat(exception.getValue().getMessage(), is("Wrapped error: Empty key extracted!"));
   }
+
+  /** Native maps and arrays require JNI, replace them by java-only implementations. */
+  @NonNull
+  private static MockedStatic<Arguments> mockArguments() {
+    final MockedStatic<Arguments> arguments = mockStatic(Arguments.class);
+    arguments.when(Arguments::createMap).thenAnswer(invocation -> new JavaOnlyMap());
+    arguments.when(Arguments::createArray).thenAnswer(invocation -> new JavaOnlyArray());
+
+    return arguments;
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testSetGenericPasswords_PerEntryResults_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final Cipher mockCipher = Mockito.mock(Cipher.class);
+    final KeyStore mockKeyStore = Mockito.mock(KeyStore.class);
+    final CipherStorage storage = module.getCipherStorageByName(KnownCiphers.AES);
+    final Promise mockPromise = mock(Promise.class);
+
+    ((CipherStorageBase) storage).setCipher(mockCipher).setKeyStore(mockKeyStore);
+    when(mockCipher.getIV()).thenReturn(new byte[CipherStorageBase.IV.IV_LENGTH]);
+    when(mockKeyStore.getKey(any(), isNull())).thenReturn(mock(SecretKey.class));
+
+    final JavaOnlyMap options = new JavaOnlyMap();
+    options.putString(Maps.STORAGE, KnownCiphers.AES);
+
+    final JavaOnlyArray entries = JavaOnlyArray.of(
+      JavaOnlyMap.of(Maps.SERVICE, "first", Maps.USERNAME, "user1", Maps.PASSWORD, "password1"),
+      JavaOnlyMap.of(Maps.SERVICE, "empty", Maps.USERNAME, "user2", Maps.PASSWORD, ""),
+      JavaOnlyMap.of(Maps.SERVICE, "second", Maps.USERNAME, "user3", Maps.PASSWORD, "password3"));
+
+    // WHEN:
+    try (MockedStatic<Arguments> ignored = mockArguments()) {
+      module.setGenericPasswordsForOptions(options, entries, mockPromise);
+    }
+
+    // THEN:
+    //   each entry has own result, failed entry does not break the batch
+    //   only valid entries are stored
+    final ArgumentCaptor<JavaOnlyArray> results = ArgumentCaptor.forClass(JavaOnlyArray.class);
+    verify(mockPromise).resolve(results.capture());
+
+    assertThat(results.getValue().size(), is(3));
+    assertThat(results.getValue().getMap(0).getString(Maps.SERVICE), is("first"));
+    assertThat(results.getValue().getMap(0).getString(Maps.STORAGE), is(KnownCiphers.AES));
+    assertThat(results.getValue().getMap(1).getString(Maps.SERVICE), is("empty"));
+    assertThat(results.getValue().getMap(1).getString(Maps.ERROR), is(Errors.E_EMPTY_PARAMETERS));
+    assertThat(results.getValue().getMap(2).getString(Maps.SERVICE), is("second"));
+    assertThat(results.getValue().getMap(2).getString(Maps.STORAGE), is(KnownCiphers.AES));
+
+    assertThat(prefs.getEncryptedEntry("first"), notNullValue());
+    assertThat(prefs.getEncryptedEntry("first").cipherStorageName, is(KnownCiphers.AES));
+    assertThat(prefs.getEncryptedEntry("empty"), nullValue());
+    assertThat(prefs.getEncryptedEntry("second"), notNullValue());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testGetGenericPasswords_PerEntryResults_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final Cipher mockCipher = Mockito.mock(Cipher.class);
+    final KeyStore mockKeyStore = Mockito.mock(KeyStore.class);
+    final CipherStorage storage = module.getCipherStorageByName(KnownCiphers.RSA);
+    final CipherStorage.EncryptionResult result = new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, storage);
+    final Promise mockPromise = mock(Promise.class);
+
+    // store record done with RSA/Biometric cipher, keystore has no key for it
+    prefs.storeEncryptedEntry("broken", result);
+    ((CipherStorageBase) storage).setCipher(mockCipher).setKeyStore(mockKeyStore);
+    when(mockKeyStore.getKey(eq("broken"), isNull())).thenReturn(null);
+
+    // WHEN:
+    try (MockedStatic<Arguments> ignored = mockArguments()) {
+      module.getGenericPasswordsForOptions(null, JavaOnlyArray.of("missing", "broken"), mockPromise);
+    }
+
+    // THEN:
+    //   missing entry resolved to false, failed entry reports own error
+    final ArgumentCaptor<JavaOnlyArray> results = ArgumentCaptor.forClass(JavaOnlyArray.class);
+    verify(mockPromise).resolve(results.capture());
+
+    assertThat(results.getValue().size(), is(2));
+    assertThat(results.getValue().getBoolean(0), is(false));
+    assertThat(results.getValue().getMap(1).getString(Maps.SERVICE), is("broken"));
+    assertThat(results.getValue().getMap(1).getString(Maps.ERROR), is(Errors.E_CRYPTO_FAILED));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testSetGenericPasswords_MalformedAndDuplicateEntries_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final Cipher mockCipher = Mockito.mock(Cipher.class);
+    final KeyStore mockKeyStore = Mockito.mock(KeyStore.class);
+    final CipherStorage storage = module.getCipherStorageByName(KnownCiphers.AES);
+    final Promise mockPromise = mock(Promise.class);
+
+    ((CipherStorageBase) storage).setCipher(mockCipher).setKeyStore(mockKeyStore);
+    when(mockCipher.getIV()).thenReturn(new byte[CipherStorageBase.IV.IV_LENGTH]);
+    when(mockKeyStore.getKey(any(), isNull())).thenReturn(mock(SecretKey.class));
+
+    final JavaOnlyMap options = new JavaOnlyMap();
+    options.putString(Maps.STORAGE, KnownCiphers.AES);
+
+    final JavaOnlyArray entries = JavaOnlyArray.of(
+      "not an entry",
+      JavaOnlyMap.of(Maps.SERVICE, "first", Maps.USERNAME, "user1", Maps.PASSWORD, "password1"),
+      JavaOnlyMap.of(Maps.SERVICE, 42, Maps.USERNAME, "user2", Maps.PASSWORD, "password2"),
+      JavaOnlyMap.of(Maps.SERVICE, "first", Maps.USERNAME, "user3", Maps.PASSWORD, "password3"));
+
+    // WHEN:
+    try (MockedStatic<Arguments> ignored = mockArguments()) {
+      module.setGenericPasswordsForOptions(options, entries, mockPromise);
+    }
+
+    // THEN: malformed and duplicate entries get own errors, the first entry of the service is stored
+    final ArgumentCaptor<JavaOnlyArray> results = ArgumentCaptor.forClass(JavaOnlyArray.class);
+    verify(mockPromise).resolve(results.capture());
+
+    assertThat(results.getValue().size(), is(4));
+    assertThat(results.getValue().getMap(0).getString(Maps.ERROR), is(Errors.E_EMPTY_PARAMETERS));
+    assertThat(results.getValue().getMap(1).getString(Maps.STORAGE), is(KnownCiphers.AES));
+    assertThat(results.getValue().getMap(2).getString(Maps.ERROR), is(Errors.E_EMPTY_PARAMETERS));
+    assertThat(results.getValue().getMap(3).getString(Maps.SERVICE), is("first"));
+    assertThat(results.getValue().getMap(3).getString(Maps.ERROR), is(Errors.E_EMPTY_PARAMETERS));
+
+    assertThat(prefs.getServices(), containsInAnyOrder("first"));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testGetGenericPasswords_NonStringService_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final Promise mockPromise = mock(Promise.class);
+
+    // WHEN:
+    try (MockedStatic<Arguments> ignored = mockArguments()) {
+      module.getGenericPasswordsForOptions(null, JavaOnlyArray.of(42, "missing"), mockPromise);
+    }
+
+    // THEN: only the malformed service fails
+    final ArgumentCaptor<JavaOnlyArray> results = ArgumentCaptor.forClass(JavaOnlyArray.class);
+    verify(mockPromise).resolve(results.capture());
+
+    assertThat(results.getValue().size(), is(2));
+    assertThat(results.getValue().getMap(0).getString(Maps.ERROR), is(Errors.E_EMPTY_PARAMETERS));
+    assertThat(results.getValue().getBoolean(1), is(false));
+  }
+
+  /** Handler that holds decryption outcome till released, same as a prompt waiting for the user. */
+  private static class DeferredHandler extends DecryptionResultHandlerNonInteractive {
+    private CipherStorage.DecryptionResult result;
+    private Throwable error;
+
+    @Override
+    public void onDecrypt(final CipherStorage.DecryptionResult decryptionResult, final Throwable error) {
+      this.result = decryptionResult;
+      this.error = error;
+    }
+
+    void release() {
+      super.onDecrypt(result, error);
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testConcurrentReadsShareDecryption_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+    final List<DeferredHandler> handlers = new ArrayList<>();
+    final KeychainModule module = new KeychainModule(context) {
+      @NonNull
+      @Override
+      protected DecryptionResultHandler getInteractiveHandler(@NonNull final CipherStorage current,
+                                                              @NonNull final androidx.biometric.BiometricPrompt.PromptInfo promptInfo) {
+        final DeferredHandler handler = new DeferredHandler();
+        handlers.add(handler);
+
+        return handler;
+      }
+    };
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final KeyStore mockKeyStore = Mockito.mock(KeyStore.class);
+    final CipherStorage storage = module.getCipherStorageByName(KnownCiphers.AES);
+    final CipherStorage.EncryptionResult result = new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, storage);
+    final Promise first = mock(Promise.class);
+    final Promise second = mock(Promise.class);
+    final Promise otherPrompt = mock(Promise.class);
+
+    prefs.storeEncryptedEntry("dummy", result);
+    ((CipherStorageBase) storage).setKeyStore(mockKeyStore);
+    when(mockKeyStore.containsAlias(anyString())).thenReturn(true);
+    when(mockKeyStore.getKey(anyString(), isNull())).thenReturn(null); // decryption fails with crypto error
+
+    final JavaOnlyMap options = JavaOnlyMap.of(Maps.SERVICE, "dummy",
+      Maps.AUTH_PROMPT, JavaOnlyMap.of(KeychainModule.AuthPromptOptions.TITLE, "Title"));
+    final JavaOnlyMap otherOptions = JavaOnlyMap.of(Maps.SERVICE, "dummy",
+      Maps.AUTH_PROMPT, JavaOnlyMap.of(KeychainModule.AuthPromptOptions.TITLE, "Other"));
+
+    // WHEN: two screens read the same service while decryption is in progress
+    module.getGenericPasswordForOptions(options, first);
+    module.getGenericPasswordForOptions(options, second);
+    module.getGenericPasswordForOptions(otherOptions, otherPrompt);
+
+    // THEN: one decryption for the same options, nothing settled yet
+    assertThat(handlers.size(), is(2));
+    assertThat(module.getInFlightReadsCount(), is(2));
+    verify(first, never()).reject(anyString(), any(Throwable.class));
+    verify(second, never()).reject(anyString(), any(Throwable.class));
+
+    // WHEN: decryption completes
+    handlers.get(0).release();
+
+    // THEN: every waiting promise gets the outcome, next read starts own decryption
+    verify(first).reject(eq(Errors.E_CRYPTO_FAILED), any(Throwable.class));
+    verify(second).reject(eq(Errors.E_CRYPTO_FAILED), any(Throwable.class));
+    verify(otherPrompt, never()).reject(anyString(), any(Throwable.class));
+    assertThat(module.getInFlightReadsCount(), is(1));
+
+    module.getGenericPasswordForOptions(options, mock(Promise.class));
+    assertThat(handlers.size(), is(3));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testMigrationAfterPromptRunsOnExecutor_api28() throws Exception {
+    // GIVEN: legacy entry, decryption waits for the prompt
+    final ReactApplicationContext context = getRNContext();
+    final CountDownLatch prompted = new CountDownLatch(1);
+    final CountDownLatch migrated = new CountDownLatch(1);
+    final List<DeferredHandler> handlers = new ArrayList<>();
+    final List<Thread> migrationThreads = new ArrayList<>();
+    final KeychainModule module = new KeychainModule(context) {
+      @NonNull
+      @Override
+      protected DecryptionResultHandler getInteractiveHandler(@NonNull final CipherStorage current,
+                                                              @NonNull final androidx.biometric.BiometricPrompt.PromptInfo promptInfo) {
+        final DeferredHandler handler = new DeferredHandler();
+        handlers.add(handler);
+        prompted.countDown();
+
+        return handler;
+      }
+
+      @Override
+      void migrateCipherStorage(@NonNull final String service,
+                                @NonNull final CipherStorage newCipherStorage,
+                                @NonNull final CipherStorage oldCipherStorage,
+                                @NonNull final CipherStorage.DecryptionResult decryptionResult,
+                                final DataStorage.ResultSet expected) {
+        migrationThreads.add(Thread.currentThread());
+        migrated.countDown();
+      }
+    };
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final Promise mockPromise = mock(Promise.class);
+
+    prefs.storeEncryptedEntry("service",
+      new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, KnownCiphers.AES));
+    module.setExecutorPoolSize(1);
+
+    final JavaOnlyMap options = JavaOnlyMap.of(Maps.SERVICE, "service",
+      Maps.RULES, KeychainModule.Rules.AUTOMATIC_UPGRADE);
+
+    // WHEN: prompt callback delivers the result on another thread
+    module.getGenericPasswordForOptions(options, mockPromise);
+    assertThat(prompted.await(5, TimeUnit.SECONDS), is(true));
+
+    handlers.get(0).result = new CipherStorage.DecryptionResult("user", "password");
+    handlers.get(0).error = null;
+
+    try (MockedStatic<Arguments> ignored = mockArguments()) {
+      handlers.get(0).release();
+    }
+
+    // THEN: read is resolved by the callback, migration goes to the keychain worker
+    assertThat(migrated.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(migrationThreads.get(0) == Thread.currentThread(), is(false));
+    assertThat(migrationThreads.get(0).getName(), startsWith(KeychainExecutor.THREAD_NAME));
+    verify(mockPromise).resolve(any());
+  }
+
+  /** Storage that counts mutations done without the alias lock. */
+  private static class LockCheckingStorage implements DataStorage {
+    private final DataStorage delegate;
+    final AtomicInteger unlocked = new AtomicInteger();
+    final AtomicInteger mutations = new AtomicInteger();
+    KeychainModule module;
+
+    LockCheckingStorage(@NonNull final DataStorage delegate) {
+      this.delegate = delegate;
+    }
+
+    private void check(@NonNull final String service) {
+      mutations.incrementAndGet();
+      if (!module.isAliasLocked(service)) unlocked.incrementAndGet();
+    }
+
+    @Override
+    public ResultSet getEncryptedEntry(@NonNull final String service) {
+      return delegate.getEncryptedEntry(service);
+    }
+
+    @Override
+    public String getEntryCipherStorageName(@NonNull final String service) {
+      return delegate.getEntryCipherStorageName(service);
+    }
+
+    @Override
+    public void removeEntry(@NonNull final String service) {
+      check(service);
+      delegate.removeEntry(service);
+    }
+
+    @Override
+    public void storeEncryptedEntry(@NonNull final String service, @NonNull final CipherStorage.EncryptionResult encryptionResult) {
+      check(service);
+      delegate.storeEncryptedEntry(service, encryptionResult);
+    }
+
+    @Override
+    public void storeEncryptedEntries(@NonNull final Map<String, CipherStorage.EncryptionResult> entries) {
+      for (String service : entries.keySet()) check(service);
+      delegate.storeEncryptedEntries(entries);
+    }
+
+    @Override
+    public Set<String> getUsedCipherNames() {
+      return delegate.getUsedCipherNames();
+    }
+
+    @NonNull
+    @Override
+    public Set<String> getServices() {
+      return delegate.getServices();
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testConcurrentWritesAndResetsHoldAliasLock_api28() throws Exception {
+    // GIVEN: few aliases, many threads
+    final ReactApplicationContext context = getRNContext();
+    final LockCheckingStorage storage = new LockCheckingStorage(new PrefsStorage(context));
+    final KeychainModule module = new KeychainModule(context, storage);
+    storage.module = module;
+
+    final CipherStorage current = Mockito.mock(CipherStorage.class);
+    final CipherStorage old = Mockito.mock(CipherStorage.class);
+    when(current.encrypt(anyString(), anyString(), anyString(), any())).thenAnswer(invocation ->
+      new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, "dummy"));
+
+    final String[] aliases = {"first", "second", "third"};
+    final CipherStorage.DecryptionResult decrypted = new CipherStorage.DecryptionResult("username", "password");
+    final int threads = 8;
+    final int iterations = 250;
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    final AtomicInteger failures = new AtomicInteger();
+
+    // WHEN: writes (migrations) and resets of the same aliases interleave
+    for (int t = 0; t < threads; t++) {
+      new Thread(() -> {
+        try {
+          start.await();
+
+          for (int i = 0; i < iterations; i++) {
+            final String alias = aliases[ThreadLocalRandom.current().nextInt(aliases.length)];
+
+            if (ThreadLocalRandom.current().nextBoolean()) {
+              module.migrateCipherStorage(alias, current, old, decrypted);
+            } else {
+              module.resetGenericPassword(alias, mock(Promise.class));
+            }
+          }
+        } catch (Throwable fail) {
+          failures.incrementAndGet();
+        } finally {
+          done.countDown();
+        }
+      }, "hammer-" + t).start();
+    }
+
+    start.countDown();
+
+    // THEN: every mutation happened under the alias lock, stored entries are complete
+    assertThat(done.await(8, TimeUnit.SECONDS), is(true));
+    assertThat(failures.get(), is(0));
+    assertThat(storage.mutations.get(), is(threads * iterations));
+    assertThat(storage.unlocked.get(), is(0));
+
+    for (String alias : aliases) {
+      final DataStorage.ResultSet entry = storage.getEncryptedEntry(alias);
+      if (null == entry) continue;
+
+      assertThat(entry.cipherStorageName, is("dummy"));
+      assertThat(entry.username, is(BYTES_USERNAME));
+      assertThat(entry.password, is(BYTES_PASSWORD));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testMigrationSkippedForChangedEntry_api28() throws Exception {
+    // GIVEN: entry was overwritten after it was read
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final CipherStorage current = Mockito.mock(CipherStorage.class);
+    final CipherStorage old = Mockito.mock(CipherStorage.class);
+
+    final DataStorage.ResultSet read = new DataStorage.ResultSet("dummy", BYTES_USERNAME, BYTES_PASSWORD);
+    prefs.storeEncryptedEntry("service", new CipherStorage.EncryptionResult(BYTES_USERNAME, "newer".getBytes(), "dummy"));
+
+    // WHEN:
+    module.migrateCipherStorage("service", current, old,
+      new CipherStorage.DecryptionResult("username", "password"), read);
+
+    // THEN: newer entry is kept as is
+    verify(current, never()).encrypt(anyString(), anyString(), anyString(), any());
+    verify(old, never()).removeKey(anyString());
+    assertThat(prefs.getEncryptedEntry("service").password, is("newer".getBytes()));
+  }
 }
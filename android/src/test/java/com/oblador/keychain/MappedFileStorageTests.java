@@ -0,0 +1,290 @@
+package com.oblador.keychain;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.DataStorage.ResultSet;
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(RobolectricTestRunner.class)
+public class MappedFileStorageTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+  /** Folder for the storage files. */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File file;
+  private PrefsStorage prefs;
+
+  @Before
+  public void setUp() throws Exception {
+    file = new File(folder.getRoot(), MappedFileStorage.KEYCHAIN_FILE);
+    prefs = new PrefsStorage(getRNContext());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    prefs.removeEntries(prefs.getServices());
+  }
+
+  @NonNull
+  private ReactApplicationContext getRNContext() {
+    final Context context = ApplicationProvider.getApplicationContext();
+    return new ReactApplicationContext(context);
+  }
+
+  @NonNull
+  private static EncryptionResult entry(@NonNull final String username, @NonNull final String password) {
+    return new EncryptionResult(username.getBytes(), password.getBytes(), KnownCiphers.AES);
+  }
+
+  @Test
+  public void testStoreAndRead() throws Exception {
+    // GIVEN:
+    final MappedFileStorage storage = new MappedFileStorage(file, null);
+
+    // WHEN:
+    storage.storeEncryptedEntry("service", entry("user", "secret"));
+    final ResultSet result = storage.getEncryptedEntry("service");
+
+    // THEN:
+    assertThat(result, notNullValue());
+    assertThat(new String(result.username), is("user"));
+    assertThat(new String(result.password), is("secret"));
+    assertThat(result.cipherStorageName, is(KnownCiphers.AES));
+    assertThat(storage.getEncryptedEntry("unknown"), nullValue());
+  }
+
+  @Test
+  public void testOverwriteAndRemove() throws Exception {
+    // GIVEN:
+    final MappedFileStorage storage = new MappedFileStorage(file, null);
+    storage.storeEncryptedEntry("service", entry("user", "first"));
+
+    // WHEN:
+    storage.storeEncryptedEntry("service", entry("user", "second"));
+
+    // THEN:
+    assertThat(new String(storage.getEncryptedEntry("service").password), is("second"));
+
+    // WHEN:
+    storage.removeEntry("service");
+
+    // THEN:
+    assertThat(storage.getEncryptedEntry("service"), nullValue());
+    assertThat(storage.getUsedCipherNames(), is(empty()));
+  }
+
+  @Test
+  public void testReopenRestoresEntries() throws Exception {
+    // GIVEN:
+    final Map<String, EncryptionResult> entries = new HashMap<>();
+    entries.put("first", entry("user1", "secret1"));
+    entries.put("second", entry("user2", "secret2"));
+    entries.put("third", entry("user3", "secret3"));
+
+    final MappedFileStorage storage = new MappedFileStorage(file, null);
+    storage.storeEncryptedEntries(entries);
+    storage.removeEntry("second");
+
+    // WHEN:
+    final MappedFileStorage reopened = new MappedFileStorage(file, null);
+
+    // THEN:
+    assertThat(new String(reopened.getEncryptedEntry("first").password), is("secret1"));
+    assertThat(reopened.getEncryptedEntry("second"), nullValue());
+    assertThat(new String(reopened.getEncryptedEntry("third").password), is("secret3"));
+  }
+
+  @Test
+  public void testTornRecordIgnored() throws Exception {
+    // GIVEN:
+    final MappedFileStorage storage = new MappedFileStorage(file, null);
+    storage.storeEncryptedEntry("first", entry("user1", "secret1"));
+    final long validEnd = storage.getFileSize();
+    storage.storeEncryptedEntry("second", entry("user2", "secret2"));
+
+    // WHEN: damage body of the last record, as if process died in the middle of write
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(validEnd + 12);
+      raf.write(0xFF);
+    }
+    final MappedFileStorage reopened = new MappedFileStorage(file, null);
+
+    // THEN:
+    assertThat(new String(reopened.getEncryptedEntry("first").password), is("secret1"));
+    assertThat(reopened.getEncryptedEntry("second"), nullValue());
+  }
+
+  @Test
+  public void testMigrationFromPrefs() throws Exception {
+    // GIVEN:
+    prefs.storeEncryptedEntry("legacy", entry("user", "secret"));
+
+    // WHEN:
+    final MappedFileStorage storage = new MappedFileStorage(file, prefs);
+    final ResultSet result = storage.getEncryptedEntry("legacy");
+
+    // THEN:
+    assertThat(result, notNullValue());
+    assertThat(new String(result.password), is("secret"));
+    assertThat(prefs.getEncryptedEntry("legacy"), nullValue());
+    assertThat(prefs.getServices(), is(empty()));
+  }
+
+  @Test
+  public void testMigrationSkipsCorruptEntry() throws Exception {
+    // GIVEN: record of one legacy entry is damaged, its index row is intact
+    prefs.storeEncryptedEntry("good", entry("user", "secret"));
+    prefs.storeEncryptedEntry("bad", entry("user", "secret"));
+    getRNContext().getSharedPreferences(PrefsStorage.KEYCHAIN_DATA, Context.MODE_PRIVATE).edit()
+      .putString(PrefsStorage.getKeyForRecord("bad"), "AAAA")
+      .commit();
+    prefs = new PrefsStorage(getRNContext());
+
+    // WHEN:
+    final MappedFileStorage storage = new MappedFileStorage(file, prefs);
+    final ResultSet result = storage.getEncryptedEntry("good");
+
+    // THEN: readable entries migrated, damaged one stays in preferences
+    assertThat(result, notNullValue());
+    assertThat(new String(result.password), is("secret"));
+    assertThat(storage.getServices(), containsInAnyOrder("good"));
+    assertThat(prefs.getServices(), containsInAnyOrder("bad"));
+
+    storage.storeEncryptedEntry("other", entry("user", "other"));
+    assertThat(new MappedFileStorage(file, null).getServices(), containsInAnyOrder("good", "other"));
+  }
+
+  @Test
+  public void testMigrationKeepsNewerEntries() throws Exception {
+    // GIVEN:
+    new MappedFileStorage(file, null).storeEncryptedEntry("service", entry("user", "newer"));
+    prefs.storeEncryptedEntry("service", entry("user", "older"));
+    prefs.storeEncryptedEntry("other", entry("user", "other"));
+
+    // WHEN:
+    final MappedFileStorage storage = new MappedFileStorage(file, prefs);
+
+    // THEN:
+    assertThat(new String(storage.getEncryptedEntry("service").password), is("newer"));
+    assertThat(new String(storage.getEncryptedEntry("other").password), is("other"));
+    assertThat(prefs.getServices(), is(empty()));
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    // GIVEN:
+    final MappedFileStorage storage = new MappedFileStorage(file, null);
+    final StringBuilder password = new StringBuilder();
+    for (int i = 0; i < 256; i++) password.append('x');
+
+    // WHEN: overwrite the same entries many times, producing dead records
+    for (int i = 0; i < 500; i++) {
+      storage.storeEncryptedEntry("first", entry("user1", password.toString() + i));
+      storage.storeEncryptedEntry("second", entry("user2", password.toString() + i));
+    }
+
+    // THEN:
+    assertThat(storage.getGarbageSize(), lessThan(64 * 1024));
+    assertThat(storage.getFileSize(), lessThan(64L * 1024));
+    assertThat(new String(storage.getEncryptedEntry("first").password), is(password.toString() + 499));
+
+    final MappedFileStorage reopened = new MappedFileStorage(file, null);
+    assertThat(new String(reopened.getEncryptedEntry("second").password), is(password.toString() + 499));
+    assertThat(reopened.getUsedCipherNames(), containsInAnyOrder(KnownCiphers.AES));
+  }
+
+  @Test
+  public void testTooLongNameRejected() throws Exception {
+    // GIVEN:
+    final MappedFileStorage storage = new MappedFileStorage(file, null);
+    final StringBuilder name = new StringBuilder();
+    for (int i = 0; i <= MappedFileStorage.MAX_NAME_LENGTH; i++) name.append('s');
+
+    final Map<String, EncryptionResult> batch = new HashMap<>();
+    batch.put("valid", entry("user", "secret"));
+    batch.put(name.toString(), entry("user", "secret"));
+
+    storage.storeEncryptedEntry("service", entry("user", "secret"));
+    final long size = storage.getFileSize();
+
+    // WHEN:
+    IllegalArgumentException single = null;
+    IllegalArgumentException multiple = null;
+
+    try {
+      storage.storeEncryptedEntry(name.toString(), entry("user", "secret"));
+    } catch (IllegalArgumentException ex) {
+      single = ex;
+    }
+
+    try {
+      storage.storeEncryptedEntries(batch);
+    } catch (IllegalArgumentException ex) {
+      multiple = ex;
+    }
+
+    // THEN: nothing written, file stays readable
+    assertThat(single, notNullValue());
+    assertThat(multiple, notNullValue());
+    assertThat(storage.getFileSize(), is(size));
+    assertThat(storage.getServices(), containsInAnyOrder("service"));
+    assertThat(new MappedFileStorage(file, null).getServices(), containsInAnyOrder("service"));
+  }
+
+  @Test
+  public void testGrowthKeepsEntries() throws Exception {
+    // GIVEN: entries that do not fit the initial mapping
+    final MappedFileStorage storage = new MappedFileStorage(file, null);
+    final StringBuilder password = new StringBuilder();
+    for (int i = 0; i < 1024; i++) password.append('x');
+
+    // WHEN:
+    for (int i = 0; i < 100; i++) {
+      storage.storeEncryptedEntry("service" + i, entry("user" + i, password.toString() + i));
+    }
+
+    // THEN: entries written before and after re-maps are readable
+    assertThat(storage.getFileSize() > 64L * 1024, is(true));
+    assertThat(new String(storage.getEncryptedEntry("service0").password), is(password.toString() + 0));
+    assertThat(new String(storage.getEncryptedEntry("service99").password), is(password.toString() + 99));
+
+    final MappedFileStorage reopened = new MappedFileStorage(file, null);
+    assertThat(reopened.getServices().size(), is(100));
+    assertThat(new String(reopened.getEncryptedEntry("service50").username), is("user50"));
+  }
+}
@@ -0,0 +1,243 @@
+package com.oblador.keychain;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PrefsStorageTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  @After
+  public void tearDown() throws Exception {
+    getPrefs(PrefsStorage.KEYCHAIN_DATA).edit().clear().commit();
+    getPrefs(PrefsStorage.KEYCHAIN_INDEX).edit().clear().commit();
+  }
+
+  @NonNull
+  private ReactApplicationContext getRNContext() {
+    final Context context = ApplicationProvider.getApplicationContext();
+    return new ReactApplicationContext(context);
+  }
+
+  @NonNull
+  private SharedPreferences getPrefs(@NonNull final String name) {
+    return getRNContext().getSharedPreferences(name, Context.MODE_PRIVATE);
+  }
+
+  @NonNull
+  private static EncryptionResult entry(@NonNull final String cipherName) {
+    return new EncryptionResult("user".getBytes(), "secret".getBytes(), cipherName);
+  }
+
+  @Test
+  public void testIndexUpdatedOnStoreAndRemove() throws Exception {
+    // GIVEN:
+    final PrefsStorage storage = new PrefsStorage(getRNContext());
+
+    // WHEN:
+    storage.storeEncryptedEntry("first", entry(KnownCiphers.AES));
+    storage.storeEncryptedEntry("second", entry(KnownCiphers.RSA));
+    storage.removeEntry("first");
+
+    // THEN: index survives new instance of the storage
+    final PrefsStorage reopened = new PrefsStorage(getRNContext());
+    assertThat(reopened.getServices(), containsInAnyOrder("second"));
+    assertThat(reopened.getUsedCipherNames(), containsInAnyOrder(KnownCiphers.RSA));
+
+    // WHEN:
+    reopened.removeEntries(reopened.getServices());
+
+    // THEN:
+    assertThat(reopened.getServices(), is(empty()));
+    assertThat(getPrefs(PrefsStorage.KEYCHAIN_DATA).getAll().isEmpty(), is(true));
+  }
+
+  @Test
+  public void testIndexRepairedOnLoad() throws Exception {
+    // GIVEN: record without index row, index row without record
+    final String record = Base64.encodeToString(PrefsStorage.encodeRecord(entry(KnownCiphers.AES)), Base64.DEFAULT);
+    getPrefs(PrefsStorage.KEYCHAIN_DATA).edit()
+      .putString(PrefsStorage.getKeyForRecord("unindexed"), record)
+      .putString(PrefsStorage.getKeyForIndex("phantom"), KnownCiphers.RSA)
+      .commit();
+
+    // WHEN:
+    final PrefsStorage storage = new PrefsStorage(getRNContext());
+
+    // THEN:
+    assertThat(storage.getServices(), containsInAnyOrder("unindexed"));
+    assertThat(storage.getEntryCipherStorageName("unindexed"), is(KnownCiphers.AES));
+    assertThat(storage.getEntryCipherStorageName("phantom"), is(nullValue()));
+    assertThat(getPrefs(PrefsStorage.KEYCHAIN_DATA).getAll().keySet(),
+      containsInAnyOrder(PrefsStorage.getKeyForRecord("unindexed"), PrefsStorage.getKeyForIndex("unindexed")));
+  }
+
+  @Test
+  public void testCorruptRecordSkippedByIndex() throws Exception {
+    // GIVEN: record of unknown version next to a valid one
+    final PrefsStorage writer = new PrefsStorage(getRNContext());
+    writer.storeEncryptedEntry("valid", entry(KnownCiphers.AES));
+    getPrefs(PrefsStorage.KEYCHAIN_DATA).edit()
+      .putString(PrefsStorage.getKeyForRecord("corrupt"), Base64.encodeToString(new byte[]{42, 1}, Base64.DEFAULT))
+      .commit();
+
+    // WHEN:
+    final PrefsStorage storage = new PrefsStorage(getRNContext());
+
+    // THEN: listing still works
+    assertThat(storage.getServices(), containsInAnyOrder("valid"));
+    assertThat(storage.getUsedCipherNames(), containsInAnyOrder(KnownCiphers.AES));
+  }
+
+  @Test
+  public void testEntryCipherStorageNameFromIndex() throws Exception {
+    // GIVEN:
+    final PrefsStorage storage = new PrefsStorage(getRNContext());
+
+    // WHEN:
+    storage.storeEncryptedEntry("first", entry(KnownCiphers.AES));
+    storage.storeEncryptedEntry("second", entry(KnownCiphers.RSA));
+    storage.removeEntry("second");
+
+    // THEN:
+    assertThat(storage.getEntryCipherStorageName("first"), is(KnownCiphers.AES));
+    assertThat(storage.getEntryCipherStorageName("second"), is(nullValue()));
+  }
+
+  @Test
+  public void testIndexBuiltFromLegacyEntries() throws Exception {
+    // GIVEN: entries written by older version of the library, without index
+    final String value = Base64.encodeToString("value".getBytes(), Base64.DEFAULT);
+    getPrefs(PrefsStorage.KEYCHAIN_DATA).edit()
+      .putString(PrefsStorage.getKeyForUsername("conceal"), value)
+      .putString(PrefsStorage.getKeyForPassword("conceal"), value)
+      .putString(PrefsStorage.getKeyForUsername("aes"), value)
+      .putString(PrefsStorage.getKeyForPassword("aes"), value)
+      .putString(PrefsStorage.getKeyForCipherStorage("aes"), KnownCiphers.AES)
+      .commit();
+
+    // WHEN:
+    final PrefsStorage storage = new PrefsStorage(getRNContext());
+
+    // THEN:
+    assertThat(storage.getServices(), containsInAnyOrder("conceal", "aes"));
+    assertThat(storage.getUsedCipherNames(), containsInAnyOrder(KnownCiphers.FB, KnownCiphers.AES));
+    assertThat(getPrefs(PrefsStorage.KEYCHAIN_DATA).getString(PrefsStorage.getKeyForIndex("aes"), null),
+      is(KnownCiphers.AES));
+  }
+
+  @Test
+  public void testSingleRecordPerEntry() throws Exception {
+    // GIVEN:
+    final PrefsStorage storage = new PrefsStorage(getRNContext());
+
+    // WHEN:
+    storage.storeEncryptedEntry("known", entry(KnownCiphers.AES));
+    storage.storeEncryptedEntry("custom", entry("CustomCipher"));
+
+    // THEN:
+    final SharedPreferences prefs = getPrefs(PrefsStorage.KEYCHAIN_DATA);
+    assertThat(prefs.getAll().keySet(),
+      containsInAnyOrder(PrefsStorage.getKeyForRecord("known"), PrefsStorage.getKeyForIndex("known"),
+        PrefsStorage.getKeyForRecord("custom"), PrefsStorage.getKeyForIndex("custom")));
+
+    final DataStorage.ResultSet known = storage.getEncryptedEntry("known");
+    assertThat(known.cipherStorageName, is(KnownCiphers.AES));
+    assertThat(new String(known.username), is("user"));
+    assertThat(new String(known.password), is("secret"));
+    assertThat(storage.getEncryptedEntry("custom").cipherStorageName, is("CustomCipher"));
+  }
+
+  @Test
+  public void testLegacyEntryMigratedOnRead() throws Exception {
+    // GIVEN:
+    final String username = Base64.encodeToString("user".getBytes(), Base64.DEFAULT);
+    final String password = Base64.encodeToString("secret".getBytes(), Base64.DEFAULT);
+    getPrefs(PrefsStorage.KEYCHAIN_DATA).edit()
+      .putString(PrefsStorage.getKeyForUsername("legacy"), username)
+      .putString(PrefsStorage.getKeyForPassword("legacy"), password)
+      .putString(PrefsStorage.getKeyForCipherStorage("legacy"), KnownCiphers.RSA)
+      .commit();
+    final PrefsStorage storage = new PrefsStorage(getRNContext());
+
+    // WHEN:
+    final DataStorage.ResultSet result = storage.getEncryptedEntry("legacy");
+
+    // THEN:
+    assertThat(result.cipherStorageName, is(KnownCiphers.RSA));
+    assertThat(new String(result.username), is("user"));
+    assertThat(new String(result.password), is("secret"));
+    assertThat(getPrefs(PrefsStorage.KEYCHAIN_DATA).getAll().keySet(),
+      containsInAnyOrder(PrefsStorage.getKeyForRecord("legacy"), PrefsStorage.getKeyForIndex("legacy")));
+    assertThat(storage.getEncryptedEntry("legacy").cipherStorageName, is(KnownCiphers.RSA));
+  }
+
+  @Test
+  public void testLegacyMigrationDoesNotOverwriteConcurrentWrite() throws Exception {
+    final String username = Base64.encodeToString("user".getBytes(), Base64.DEFAULT);
+    final String password = Base64.encodeToString("legacy".getBytes(), Base64.DEFAULT);
+
+    for (int i = 0; i < 50; i++) {
+      // GIVEN:
+      getPrefs(PrefsStorage.KEYCHAIN_DATA).edit().clear()
+        .putString(PrefsStorage.getKeyForUsername("service"), username)
+        .putString(PrefsStorage.getKeyForPassword("service"), password)
+        .commit();
+      final PrefsStorage storage = new PrefsStorage(getRNContext());
+      final CountDownLatch start = new CountDownLatch(1);
+
+      // WHEN: read migrates legacy entry while the same service is written
+      final Thread reader = new Thread(() -> {
+        awaitQuietly(start);
+        storage.getEncryptedEntry("service");
+      });
+      reader.start();
+      start.countDown();
+      storage.storeEncryptedEntry("service",
+        new EncryptionResult("user".getBytes(), "newer".getBytes(), KnownCiphers.AES));
+      reader.join();
+
+      // THEN: stale legacy ciphertext never replaces the new record
+      assertThat(new String(storage.getEncryptedEntry("service").password), is("newer"));
+      assertThat(new String(new PrefsStorage(getRNContext()).getEncryptedEntry("service").password), is("newer"));
+    }
+  }
+
+  private static void awaitQuietly(@NonNull final CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ignored) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.exceptions.KeyStoreAccessException;
+
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.ProviderException;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(RobolectricTestRunner.class)
+public class CapabilitiesCacheTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  @After
+  public void tearDown() throws Exception {
+    getContext().getSharedPreferences(CapabilitiesCache.KEYCHAIN_CAPABILITIES, Context.MODE_PRIVATE)
+      .edit().clear().commit();
+  }
+
+  @NonNull
+  private static Context getContext() {
+    return ApplicationProvider.getApplicationContext();
+  }
+
+  @Test
+  public void testResultsDroppedAfterOsUpdate() throws Exception {
+    // GIVEN:
+    final CapabilitiesCache cache = new CapabilitiesCache(getContext(), "build-1");
+    cache.put("storage", CapabilitiesCache.SECURE_HARDWARE, true);
+
+    // WHEN:
+    final CapabilitiesCache sameBuild = new CapabilitiesCache(getContext(), "build-1");
+    final Boolean beforeUpdate = sameBuild.get("storage", CapabilitiesCache.SECURE_HARDWARE);
+    final CapabilitiesCache updated = new CapabilitiesCache(getContext(), "build-2");
+
+    // THEN:
+    assertThat(beforeUpdate, is(true));
+    assertThat(updated.get("storage", CapabilitiesCache.SECURE_HARDWARE), nullValue());
+    assertThat(updated.get("storage", CapabilitiesCache.STRONGBOX), nullValue());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testSecureHardwareProbedOncePerBuild_api23() throws Exception {
+    // GIVEN:
+    final ProbingStorage first = new ProbingStorage(new CapabilitiesCache(getContext(), "build-1"));
+    assertThat(first.supportsSecureHardware(), is(true));
+
+    // WHEN: next process start
+    final ProbingStorage second = new ProbingStorage(new CapabilitiesCache(getContext(), "build-1"));
+    final boolean cached = second.supportsSecureHardware();
+
+    // THEN:
+    assertThat(first.probes, is(1));
+    assertThat(second.probes, is(0));
+    assertThat(cached, is(true));
+
+    // WHEN: OS updated
+    final ProbingStorage third = new ProbingStorage(new CapabilitiesCache(getContext(), "build-2"));
+    third.supportsSecureHardware();
+
+    // THEN:
+    assertThat(third.probes, is(1));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testMissingStrongboxRemembered_api23() throws Exception {
+    // GIVEN: device without StrongBox
+    final ProbingStorage first = new ProbingStorage(new CapabilitiesCache(getContext(), "build-1"));
+    first.strongboxFailure = new KeyStoreAccessException("Strong box security keystore is not supported");
+    first.generateKeyAndStoreUnderAlias("service", SecurityLevel.ANY);
+
+    // WHEN: next process start
+    final ProbingStorage second = new ProbingStorage(new CapabilitiesCache(getContext(), "build-1"));
+    second.generateKeyAndStoreUnderAlias("service", SecurityLevel.ANY);
+
+    // THEN:
+    assertThat(first.strongboxAttempts, is(1));
+    assertThat(second.strongboxAttempts, is(0));
+    assertThat(second.regularKeys, is(1));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testTransientStrongboxFailureNotRemembered_api28() throws Exception {
+    // GIVEN: StrongBox exists but failed once
+    final ProbingStorage first = new ProbingStorage(new CapabilitiesCache(getContext(), "build-1"));
+    first.strongboxFailure = new ProviderException("Keystore is busy");
+    first.generateKeyAndStoreUnderAlias("service", SecurityLevel.ANY);
+
+    // WHEN: next process start
+    final ProbingStorage second = new ProbingStorage(new CapabilitiesCache(getContext(), "build-1"));
+    second.generateKeyAndStoreUnderAlias("service", SecurityLevel.ANY);
+
+    // THEN:
+    assertThat(second.strongboxAttempts, is(1));
+    assertThat(second.regularKeys, is(0));
+  }
+
+  /** Counts keystore operations instead of doing them. */
+  private static final class ProbingStorage extends CipherStorageKeystoreAesCbc {
+    final Key key = new SecretKeySpec(new byte[16], "AES");
+    int probes;
+    int strongboxAttempts;
+    int regularKeys;
+    Exception strongboxFailure;
+
+    ProbingStorage(@NonNull final CapabilitiesCache cache) {
+      setCapabilitiesCache(cache);
+    }
+
+    @NonNull
+    @Override
+    protected Key tryGenerateRegularSecurityKey(@NonNull final String alias, final boolean isForTesting) {
+      if (isForTesting) probes++;
+      else regularKeys++;
+
+      return key;
+    }
+
+    @NonNull
+    @Override
+    protected Key tryGenerateStrongBoxSecurityKey(@NonNull final String alias) throws GeneralSecurityException {
+      strongboxAttempts++;
+      if (strongboxFailure instanceof GeneralSecurityException) throw (GeneralSecurityException) strongboxFailure;
+      if (strongboxFailure instanceof RuntimeException) throw (RuntimeException) strongboxFailure;
+
+      return key;
+    }
+
+    @Override
+    protected boolean validateKeySecurityLevel(@NonNull final SecurityLevel level, @NonNull final Key key) {
+      return true;
+    }
+
+    @Override
+    public void removeKey(@NonNull final String alias) {
+      /* nothing to remove */
+    }
+  }
+}
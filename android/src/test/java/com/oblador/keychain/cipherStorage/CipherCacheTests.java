@@ -0,0 +1,313 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.oblador.keychain.FakeProvider;
+import com.oblador.keychain.MocksForProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.mockito.junit.VerificationCollector;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class CipherCacheTests {
+  /** Amount of parallel workers. */
+  private static final int THREADS = 16;
+  /** Amount of cipher requests done by each worker. */
+  private static final int ITERATIONS = 500;
+
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+  /** Mock all the dependencies. */
+  @Rule
+  public MockitoRule mockDependencies = MockitoJUnit.rule().silent();
+  @Rule
+  public VerificationCollector collector = MockitoJUnit.collector();
+
+  private FakeProvider provider = new FakeProvider();
+
+  @Before
+  public void setUp() throws Exception {
+    Security.insertProviderAt(provider, 0);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Security.removeProvider(FakeProvider.NAME);
+  }
+
+  /** Pre-register cipher service mocks, Cipher.getInstance() requires algorithm name of the service. */
+  @NonNull
+  private MocksForProvider registerCipher(@NonNull final String transformation) {
+    final MocksForProvider mocks = new MocksForProvider();
+    doReturn(MocksForProvider.KEY_CIPHER).when(mocks.service).getType();
+    doReturn(transformation).when(mocks.service).getAlgorithm();
+
+    HashMap<String, MocksForProvider> inner = provider.mocks.get(MocksForProvider.KEY_CIPHER);
+    if (null == inner) {
+      provider.mocks.put(MocksForProvider.KEY_CIPHER, (inner = new HashMap<>()));
+    }
+    inner.put(transformation, mocks);
+
+    return mocks;
+  }
+
+  /** Request cipher instances from many threads at once, return one instance per worker. */
+  @NonNull
+  private List<Cipher> hammer(@NonNull final CipherStorageBase storage) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<Cipher>> futures = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < THREADS; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+
+          // FakeProvider re-configures mocks on each service lookup, that is not thread-safe
+          final Cipher first;
+          synchronized (provider) {
+            first = storage.getCachedInstance();
+          }
+
+          for (int j = 0; j < ITERATIONS; j++) {
+            // each thread should always get back own instance
+            assertThat(storage.getCachedInstance(), sameInstance(first));
+          }
+
+          return first;
+        }));
+      }
+
+      start.countDown();
+
+      final List<Cipher> results = new ArrayList<>();
+      for (Future<Cipher> future : futures) {
+        results.add(future.get(5, TimeUnit.SECONDS));
+      }
+
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Run encrypt and decrypt round trips from many threads at once. Shared cipher instance mixes IVs and buffers
+   * of the concurrent operations, so any race shows up as a wrong plaintext or a padding failure.
+   */
+  private void roundTrips(@NonNull final CipherStorageBase storage,
+                          @NonNull final Key encryptKey,
+                          @NonNull final Key decryptKey,
+                          final int iterations) throws Exception {
+    // real ciphers are needed for real round trips, mocked cipher of the FakeProvider can not encrypt
+    Security.removeProvider(FakeProvider.NAME);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<Integer>> futures = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < THREADS; i++) {
+        final int thread = i;
+
+        futures.add(executor.submit(() -> {
+          start.await();
+
+          int matched = 0;
+          for (int j = 0; j < iterations; j++) {
+            final String plaintext = "thread-" + thread + "-iteration-" + j;
+            final byte[] encrypted = storage.encryptString(encryptKey, plaintext);
+
+            if (plaintext.equals(storage.decryptBytes(decryptKey, encrypted))) matched++;
+          }
+
+          return matched;
+        }));
+      }
+
+      start.countDown();
+
+      for (Future<Integer> future : futures) {
+        assertThat(future.get(8, TimeUnit.SECONDS), is(iterations));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testParallelRoundTrips_AesCbc_api23() throws Exception {
+    // GIVEN: PKCS5 and PKCS7 paddings are the same for AES, JVM providers know only the first name
+    final CipherStorageBase storage = new CipherStorageKeystoreAesCbc() {
+      @NonNull
+      @Override
+      protected String getEncryptionTransformation() {
+        return "AES/CBC/PKCS5Padding";
+      }
+    };
+    final byte[] raw = new byte[32];
+    new SecureRandom().nextBytes(raw);
+    final Key key = new SecretKeySpec(raw, "AES");
+
+    // WHEN/THEN: every plaintext survives its round trip
+    roundTrips(storage, key, key, 200);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testParallelRoundTrips_RsaEcb_api23() throws Exception {
+    // GIVEN:
+    final CipherStorageBase storage = new CipherStorageKeystoreRsaEcb();
+    Security.removeProvider(FakeProvider.NAME);
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(CipherStorageKeystoreRsaEcb.ENCRYPTION_KEY_SIZE);
+    final KeyPair keys = generator.generateKeyPair();
+
+    // WHEN/THEN: every plaintext survives its round trip
+    roundTrips(storage, keys.getPublic(), keys.getPrivate(), 10);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testParallelAccess_AesCbc_api23() throws Exception {
+    // GIVEN:
+    final MocksForProvider mocks = registerCipher(CipherStorageKeystoreAesCbc.ENCRYPTION_TRANSFORMATION);
+    final CipherStorageBase storage = new CipherStorageKeystoreAesCbc();
+
+    // WHEN:
+    final List<Cipher> ciphers = hammer(storage);
+
+    // THEN:
+    //   every worker thread owns a separate cipher instance
+    //   instance created only once per thread
+    final Set<Cipher> unique = Collections.newSetFromMap(new IdentityHashMap<>());
+    unique.addAll(ciphers);
+
+    assertThat(unique.size(), is(THREADS));
+    verify(mocks.service, times(THREADS)).newInstance(isNull());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testParallelAccess_RsaEcb_api23() throws Exception {
+    // GIVEN:
+    final MocksForProvider mocks = registerCipher(CipherStorageKeystoreRsaEcb.TRANSFORMATION_RSA_ECB_PKCS1);
+    final CipherStorageBase storage = new CipherStorageKeystoreRsaEcb();
+
+    // WHEN:
+    final List<Cipher> ciphers = hammer(storage);
+
+    // THEN:
+    final Set<Cipher> unique = Collections.newSetFromMap(new IdentityHashMap<>());
+    unique.addAll(ciphers);
+
+    assertThat(unique.size(), is(THREADS));
+    verify(mocks.service, times(THREADS)).newInstance(isNull());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testInstancesNotSharedBetweenStorages_api23() throws Exception {
+    // GIVEN:
+    registerCipher(CipherStorageKeystoreAesCbc.ENCRYPTION_TRANSFORMATION);
+    registerCipher(CipherStorageKeystoreRsaEcb.TRANSFORMATION_RSA_ECB_PKCS1);
+    final CipherStorageBase aes = new CipherStorageKeystoreAesCbc();
+    final CipherStorageBase rsa = new CipherStorageKeystoreRsaEcb();
+
+    // WHEN:
+    final Cipher aesCipher = aes.getCachedInstance();
+    final Cipher rsaCipher = rsa.getCachedInstance();
+
+    // THEN:
+    assertThat(aesCipher, not(sameInstance(rsaCipher)));
+    assertThat(aes.getCachedInstance(), sameInstance(aesCipher));
+    assertThat(rsa.getCachedInstance(), sameInstance(rsaCipher));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testForcedCipherSharedByAllThreads_api23() throws Exception {
+    // GIVEN:
+    registerCipher(CipherStorageKeystoreAesCbc.ENCRYPTION_TRANSFORMATION);
+    final Cipher forced = Cipher.getInstance(CipherStorageKeystoreAesCbc.ENCRYPTION_TRANSFORMATION);
+    final CipherStorageBase storage = new CipherStorageKeystoreAesCbc().setCipher(forced);
+
+    // WHEN:
+    final List<Cipher> ciphers = hammer(storage);
+
+    // THEN: testing override wins over per-thread cache
+    for (Cipher cipher : ciphers) {
+      assertThat(cipher, sameInstance(forced));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testCacheKeyedByProvider_api23() throws Exception {
+    // GIVEN:
+    registerCipher(CipherStorageKeystoreAesCbc.ENCRYPTION_TRANSFORMATION);
+    final CipherCache cache = new CipherCache();
+    final Map<String, Cipher> results = new HashMap<>();
+
+    // WHEN:
+    results.put("default", cache.get(CipherStorageKeystoreAesCbc.ENCRYPTION_TRANSFORMATION));
+    results.put("fake", cache.get(CipherStorageKeystoreAesCbc.ENCRYPTION_TRANSFORMATION, FakeProvider.NAME));
+
+    // THEN:
+    assertThat(results.get("default"), not(sameInstance(results.get("fake"))));
+    assertThat(cache.get(CipherStorageKeystoreAesCbc.ENCRYPTION_TRANSFORMATION, FakeProvider.NAME),
+      sameInstance(results.get("fake")));
+
+    cache.clear();
+    assertThat(cache.get(CipherStorageKeystoreAesCbc.ENCRYPTION_TRANSFORMATION),
+      not(sameInstance(results.get("default"))));
+  }
+}
@@ -0,0 +1,176 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(RobolectricTestRunner.class)
+public class CipherStorageKeystoreAesEnvelopeTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  private CountingEnvelope storage;
+
+  @Before
+  public void setUp() throws Exception {
+    storage = new CountingEnvelope(getRNContext());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    getRNContext()
+      .getSharedPreferences(CipherStorageKeystoreAesEnvelope.KEYCHAIN_ENVELOPE, Context.MODE_PRIVATE)
+      .edit().clear().commit();
+  }
+
+  private ReactApplicationContext getRNContext() {
+    return new ReactApplicationContext(RuntimeEnvironment.application);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testEncryptDecrypt_api23() throws Exception {
+    // WHEN:
+    final EncryptionResult encrypted = storage.encrypt("service", "user", "secret", SecurityLevel.ANY);
+    final DecryptionResult decrypted = storage.decrypt("service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+    // THEN:
+    assertThat(decrypted.username, is("user"));
+    assertThat(decrypted.password, is("secret"));
+    assertThat(decrypted.getSecurityLevel(), is(SecurityLevel.SECURE_SOFTWARE));
+    assertThat(encrypted.cipherName, is(storage.getCipherStorageName()));
+    assertThat(Arrays.equals(encrypted.username, "user".getBytes()), is(false));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testMasterKeyUsedOncePerTtl_api23() throws Exception {
+    // GIVEN:
+    final EncryptionResult encrypted = storage.encrypt("service", "user", "secret", SecurityLevel.ANY);
+
+    // WHEN:
+    for (int i = 0; i < 10; i++) {
+      storage.decrypt("service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+    }
+
+    // THEN: keystore touched only to create the data key
+    assertThat(storage.masterKeyCalls, is(1));
+    assertThat(storage.isDataKeyCached(), is(true));
+
+    // WHEN: application goes to background
+    storage.wipe();
+    final DecryptionResult decrypted = storage.decrypt("service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+    // THEN: wrapped data key unwrapped again
+    assertThat(storage.masterKeyCalls, is(2));
+    assertThat(decrypted.password, is("secret"));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testZeroTtlDisablesCache_api23() throws Exception {
+    // GIVEN:
+    storage.setKeyTtl(0);
+
+    // WHEN:
+    final EncryptionResult encrypted = storage.encrypt("service", "user", "secret", SecurityLevel.ANY);
+    storage.decrypt("service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+    // THEN:
+    assertThat(storage.masterKeyCalls, is(2));
+    assertThat(storage.isDataKeyCached(), is(false));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testDataKeyPersistedBetweenInstances_api23() throws Exception {
+    // GIVEN:
+    final EncryptionResult encrypted = storage.encrypt("service", "user", "secret", SecurityLevel.ANY);
+
+    // WHEN:
+    final CountingEnvelope other = new CountingEnvelope(getRNContext());
+    other.master = storage.master;
+    final DecryptionResult decrypted = other.decrypt("service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+    // THEN:
+    assertThat(decrypted.password, is("secret"));
+  }
+
+  @Test(expected = CryptoFailedException.class)
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testCiphertextBoundToAlias_api23() throws Exception {
+    // GIVEN:
+    final EncryptionResult encrypted = storage.encrypt("service", "user", "secret", SecurityLevel.ANY);
+
+    // WHEN: entry of one service is copied to another one
+    storage.decrypt("other", encrypted.username, encrypted.password, SecurityLevel.ANY);
+  }
+
+  @Test(expected = CryptoFailedException.class)
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testHardwareLevelNotClaimed_api23() throws Exception {
+    // THEN: capability level and security level are honest
+    assertThat(storage.securityLevel(), is(SecurityLevel.SECURE_SOFTWARE));
+    assertThat(storage.getCapabilityLevel() < new CipherStorageKeystoreAesCbc().getCapabilityLevel(), is(true));
+
+    // WHEN:
+    storage.encrypt("service", "user", "secret", SecurityLevel.SECURE_HARDWARE);
+  }
+
+  /** Replaces keystore master key by software key and counts keystore round trips. */
+  private static final class CountingEnvelope extends CipherStorageKeystoreAesEnvelope {
+    Key master;
+    int masterKeyCalls;
+
+    CountingEnvelope(@NonNull final ReactApplicationContext context) throws Exception {
+      super(context);
+
+      final byte[] raw = new byte[32];
+      new SecureRandom().nextBytes(raw);
+      master = new SecretKeySpec(raw, "AES");
+
+      // JVM providers know PKCS7 padding as PKCS5
+      setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding"));
+    }
+
+    @NonNull
+    @Override
+    protected Key getMasterKey(@NonNull final SecurityLevel level) {
+      masterKeyCalls++;
+      return master;
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.SecurityLevel;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class CipherStorageKeystoreAesGcmTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  /** Software key replaces keystore key, JVM generates 12 bytes nonce for GCM too. */
+  private static Key softwareKey() {
+    final byte[] raw = new byte[32];
+    new SecureRandom().nextBytes(raw);
+
+    return new SecretKeySpec(raw, "AES");
+  }
+
+  private static CipherStorageKeystoreAesGcm storage() throws Exception {
+    final CipherStorageKeystoreAesGcm instance = new CipherStorageKeystoreAesGcm();
+    instance.setCipher(Cipher.getInstance(CipherStorageKeystoreAesGcm.ENCRYPTION_TRANSFORMATION));
+
+    return instance;
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testConfiguration_api23() throws Exception {
+    final CipherStorageKeystoreAesGcm instance = new CipherStorageKeystoreAesGcm();
+
+    assertThat(instance.getCipherStorageName(), is(KnownCiphers.AES_GCM));
+    assertThat(instance.securityLevel(), is(SecurityLevel.SECURE_HARDWARE));
+    assertThat(instance.getCapabilityLevel(), is(new CipherStorageKeystoreAesCbc().getCapabilityLevel()));
+    assertThat(instance.getKeyAlias("service"), is("service" + CipherStorageKeystoreAesGcm.KEY_ALIAS_SUFFIX));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testSealOpen_api23() throws Exception {
+    // GIVEN:
+    final CipherStorageKeystoreAesGcm instance = storage();
+    final Key key = softwareKey();
+    final byte[] aad = "service".getBytes();
+
+    // WHEN:
+    final byte[] sealed = instance.seal(key, "secret".getBytes(), aad);
+    final byte[] opened = instance.open(key, sealed, aad);
+
+    // THEN: nonce + ciphertext + 16 bytes tag, no padding
+    assertThat(sealed.length, is(CipherStorageKeystoreAesGcm.NONCE_LENGTH + "secret".length() + 16));
+    assertThat(new String(opened), is("secret"));
+  }
+
+  @Test(expected = GeneralSecurityException.class)
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testPasswordBoundToUsername_api23() throws Exception {
+    // GIVEN:
+    final CipherStorageKeystoreAesGcm instance = storage();
+    final Key key = softwareKey();
+    final byte[] aad = "service".getBytes();
+    final byte[] username = instance.seal(key, "user".getBytes(), aad);
+    final byte[] otherUsername = instance.seal(key, "other".getBytes(), aad);
+    final byte[] password = instance.seal(key, "secret".getBytes(), aad, username);
+
+    // WHEN: password verified against username of another entry
+    instance.open(key, password, aad, otherUsername);
+  }
+
+  @Test(expected = GeneralSecurityException.class)
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testTamperedCiphertextRejected_api23() throws Exception {
+    // GIVEN:
+    final CipherStorageKeystoreAesGcm instance = storage();
+    final Key key = softwareKey();
+    final byte[] aad = "service".getBytes();
+    final byte[] sealed = instance.seal(key, "secret".getBytes(), aad);
+
+    // WHEN:
+    sealed[CipherStorageKeystoreAesGcm.NONCE_LENGTH] ^= 0x01;
+    instance.open(key, sealed, aad);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testSecureHardwareProbeRemovesOwnKey_api23() throws Exception {
+    // GIVEN: keystore that tracks its entries
+    final Set<String> entries = new HashSet<>();
+    final KeyStore keyStore = mock(KeyStore.class);
+    when(keyStore.containsAlias(anyString())).thenAnswer(call -> entries.contains(call.<String>getArgument(0)));
+    doAnswer(call -> entries.remove(call.<String>getArgument(0))).when(keyStore).deleteEntry(anyString());
+
+    final CipherStorageKeystoreAesGcm instance = new CipherStorageKeystoreAesGcm() {
+      @NonNull
+      @Override
+      protected Key tryGenerateRegularSecurityKey(@NonNull final String alias, final boolean isForTesting) {
+        final Key key = mock(Key.class);
+        entries.add(alias);
+        getKeyCache().put(alias, key);
+
+        return key;
+      }
+
+      @Override
+      protected boolean validateKeySecurityLevel(@NonNull final SecurityLevel level, @NonNull final Key key) {
+        return true;
+      }
+    };
+    instance.setKeyStore(keyStore);
+
+    // WHEN:
+    final boolean supported = instance.supportsSecureHardware();
+
+    // THEN: probe key removed under its own alias, not under the alias of the GCM service key
+    assertThat(supported, is(true));
+    assertThat(entries.contains(CipherStorageBase.TEST_KEY_ALIAS), is(false));
+    assertThat(instance.getKeyCache().get(CipherStorageBase.TEST_KEY_ALIAS), nullValue());
+  }
+}
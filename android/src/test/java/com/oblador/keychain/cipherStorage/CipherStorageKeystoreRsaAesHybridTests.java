@@ -0,0 +1,238 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionContext;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretBytes;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.crypto.Cipher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class CipherStorageKeystoreRsaAesHybridTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  private CipherStorageKeystoreRsaAesHybrid storage;
+  /** Software key pair replaces keystore key. */
+  private KeyPair keys;
+
+  @Before
+  public void setUp() throws Exception {
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(CipherStorageKeystoreRsaEcb.ENCRYPTION_KEY_SIZE);
+    keys = generator.generateKeyPair();
+
+    storage = new CipherStorageKeystoreRsaAesHybrid();
+    storage.setCipher(Cipher.getInstance(CipherStorageKeystoreRsaEcb.TRANSFORMATION_RSA_ECB_PKCS1));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testConfiguration_api23() throws Exception {
+    assertThat(storage.getCipherStorageName(), is(KnownCiphers.RSA_HYBRID));
+    assertThat(storage.isBiometrySupported(), is(true));
+    assertThat(storage.getCapabilityLevel(), is(new CipherStorageKeystoreRsaEcb().getCapabilityLevel()));
+    assertThat(storage.getKeyAlias("service"), is("service" + CipherStorageKeystoreRsaAesHybrid.KEY_ALIAS_SUFFIX));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testPayloadOverRsaLimit_api23() throws Exception {
+    // GIVEN: payload much bigger than 245 bytes limit of RSA/PKCS1 with 2048 bits key
+    final StringBuilder token = new StringBuilder();
+    for (int i = 0; i < 4096; i++) token.append((char) ('a' + i % 26));
+
+    // WHEN:
+    final EncryptionResult encrypted = storage.encryptCredentials(keys.getPublic(), "user", token.toString());
+    final DecryptionResult decrypted = storage.decrypt(
+      new DecryptionContext("service", keys.getPrivate(), encrypted.password, encrypted.username));
+
+    // THEN:
+    assertThat(encrypted.cipherName, is(KnownCiphers.RSA_HYBRID));
+    assertThat(decrypted.username, is("user"));
+    assertThat(decrypted.password, is(token.toString()));
+  }
+
+  @Test(expected = GeneralSecurityException.class)
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testPasswordBoundToUsername_api23() throws Exception {
+    // GIVEN:
+    final EncryptionResult first = storage.encryptCredentials(keys.getPublic(), "user1", "secret1");
+    final EncryptionResult second = storage.encryptCredentials(keys.getPublic(), "user2", "secret2");
+
+    // WHEN: password of one entry combined with username of another one
+    storage.decrypt(new DecryptionContext("service", keys.getPrivate(), second.password, first.username));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testPublicKeyDecodedOncePerAlias_api23() throws Exception {
+    // GIVEN:
+    final KeyStore keyStore = mockKeyStore();
+    storage.setKeyStore(keyStore);
+
+    // WHEN:
+    for (int i = 0; i < 10; i++) {
+      storage.encrypt("service", "user", "token-" + i, SecurityLevel.ANY);
+    }
+
+    // THEN: certificate extracted and decoded only by the first write
+    verify(keyStore, times(1)).getCertificate(anyString());
+
+    // WHEN: key removed, cached public key should not outlive it
+    storage.removeKey("service");
+    storage.encrypt("service", "user", "token", SecurityLevel.ANY);
+
+    // THEN:
+    verify(keyStore, times(2)).getCertificate(anyString());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testTrimMemoryDropsCachedPublicKeys_api23() throws Exception {
+    // GIVEN:
+    final KeyStore keyStore = mockKeyStore();
+    storage.setKeyStore(keyStore);
+    final int iterations = 5;
+
+    // WHEN: cache dropped before every write
+    for (int i = 0; i < iterations; i++) {
+      storage.trimMemory();
+      storage.encrypt("service", "user", "token", SecurityLevel.ANY);
+    }
+
+    // THEN: every write extracts and decodes the certificate
+    verify(keyStore, times(iterations)).getCertificate(anyString());
+
+    // WHEN: cache kept
+    for (int i = 0; i < iterations; i++) storage.encrypt("service", "user", "token", SecurityLevel.ANY);
+
+    // THEN: keystore is not touched by the cached writes
+    verify(keyStore, times(iterations)).getCertificate(anyString());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testBytesRoundTrip_api23() throws Exception {
+    // GIVEN:
+    final KeyStore keyStore = mockKeyStore();
+    when(keyStore.getKey(anyString(), any())).thenReturn(keys.getPrivate());
+    storage.setKeyStore(keyStore);
+    final byte[] username = "user".getBytes(StandardCharsets.UTF_8);
+    final byte[] password = "p\u00e4ssw\u00f6rd".getBytes(StandardCharsets.UTF_8);
+
+    // WHEN:
+    final EncryptionResult encrypted = storage.encrypt("service", username, password, SecurityLevel.ANY);
+    final SecretBytes decrypted = storage.decryptToBytes(
+      "service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+    // THEN: caller arrays untouched, plain text restored without strings
+    assertThat(new String(username, StandardCharsets.UTF_8), is("user"));
+    assertThat(decrypted.username, is(username));
+    assertThat(decrypted.password, is(password));
+
+    // WHEN:
+    decrypted.wipe();
+
+    // THEN:
+    assertThat(decrypted.username, is(new byte[username.length]));
+    assertThat(decrypted.password, is(new byte[password.length]));
+
+    // WHEN: entry written by the strings API
+    final EncryptionResult legacy = storage.encrypt("service", "user", "token", SecurityLevel.ANY);
+    final DecryptionResult result = storage.decrypt("service", legacy.username, legacy.password, SecurityLevel.ANY);
+
+    // THEN:
+    assertThat(result.username, is("user"));
+    assertThat(result.password, is("token"));
+  }
+
+  /** Keystore that knows any alias and returns certificate of the software key pair. */
+  private KeyStore mockKeyStore() throws Exception {
+    final KeyStore keyStore = mock(KeyStore.class);
+    final Certificate certificate = mock(Certificate.class);
+
+    when(certificate.getPublicKey()).thenReturn(keys.getPublic());
+    when(keyStore.containsAlias(anyString())).thenReturn(true);
+    when(keyStore.getCertificate(anyString())).thenReturn(certificate);
+
+    return keyStore;
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testSecureHardwareProbeRemovesOwnKey_api23() throws Exception {
+    // GIVEN: keystore that tracks its entries
+    final Set<String> entries = new HashSet<>();
+    final KeyStore keyStore = mock(KeyStore.class);
+    when(keyStore.containsAlias(anyString())).thenAnswer(call -> entries.contains(call.<String>getArgument(0)));
+    doAnswer(call -> entries.remove(call.<String>getArgument(0))).when(keyStore).deleteEntry(anyString());
+
+    final CipherStorageKeystoreRsaAesHybrid instance = new CipherStorageKeystoreRsaAesHybrid() {
+      @NonNull
+      @Override
+      protected Key tryGenerateRegularSecurityKey(@NonNull final String alias, final boolean isForTesting) {
+        final Key key = mock(Key.class);
+        entries.add(alias);
+        getKeyCache().put(alias, key);
+
+        return key;
+      }
+
+      @Override
+      protected boolean validateKeySecurityLevel(@NonNull final SecurityLevel level, @NonNull final Key key) {
+        return true;
+      }
+    };
+    instance.setKeyStore(keyStore);
+
+    // WHEN:
+    final boolean supported = instance.supportsSecureHardware();
+
+    // THEN: probe key removed under its own alias, not under the alias of the hybrid service key
+    assertThat(supported, is(true));
+    assertThat(entries.contains(CipherStorageBase.TEST_KEY_ALIAS), is(false));
+    assertThat(instance.getKeyCache().get(CipherStorageBase.TEST_KEY_ALIAS), nullValue());
+  }
+}
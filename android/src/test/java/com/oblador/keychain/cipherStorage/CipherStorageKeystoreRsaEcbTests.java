@@ -5,6 +5,7 @@ import android.content.pm.PackageManager;
 import android.hardware.fingerprint.FingerprintManager;
 import android.os.Build;
 
+import androidx.annotation.NonNull;
 import androidx.biometric.BiometricManager;
 
 import com.facebook.react.bridge.ReactApplicationContext;
@@ -28,13 +29,23 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
 import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
 import java.security.Security;
+import java.security.cert.Certificate;
 
+import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
@@ -102,4 +113,95 @@ public class CipherStorageKeystoreRsaEcbTests {
     assertThat(storage.supportsSecureHardware(), is(true));
   }
 
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testPublicKeyCachedPerAlias_api23() throws Exception {
+    // GIVEN:
+    final KeyStore keyStore = mockKeyStore();
+    final CipherStorageKeystoreRsaEcb storage = newStorage(keyStore);
+
+    // WHEN:
+    for (int i = 0; i < 10; i++) {
+      storage.encrypt("service", "user", "token-" + i, SecurityLevel.ANY);
+    }
+
+    // THEN: certificate extracted and decoded only by the first write
+    verify(keyStore, times(1)).getCertificate(anyString());
+
+    // WHEN: other service written
+    storage.encrypt("other", "user", "token", SecurityLevel.ANY);
+
+    // THEN: each alias has own cache entry
+    verify(keyStore, times(1)).getCertificate("service");
+    verify(keyStore, times(1)).getCertificate("other");
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testRemoveKeyEvictsCachedPublicKey_api23() throws Exception {
+    // GIVEN:
+    final KeyStore keyStore = mockKeyStore();
+    final CipherStorageKeystoreRsaEcb storage = newStorage(keyStore);
+    storage.encrypt("service", "user", "token", SecurityLevel.ANY);
+    storage.encrypt("other", "user", "token", SecurityLevel.ANY);
+
+    // WHEN:
+    storage.removeKey("service");
+    storage.encrypt("service", "user", "token", SecurityLevel.ANY);
+    storage.encrypt("other", "user", "token", SecurityLevel.ANY);
+
+    // THEN: cached public key does not outlive its key, other entries stay cached
+    verify(keyStore, times(2)).getCertificate("service");
+    verify(keyStore, times(1)).getCertificate("other");
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testTrimMemoryDropsCachedPublicKeys_api23() throws Exception {
+    // GIVEN:
+    final KeyStore keyStore = mockKeyStore();
+    final CipherStorageKeystoreRsaEcb storage = newStorage(keyStore);
+    storage.encrypt("service", "user", "token", SecurityLevel.ANY);
+    storage.encrypt("other", "user", "token", SecurityLevel.ANY);
+
+    // WHEN:
+    storage.trimMemory();
+    storage.encrypt("service", "user", "token", SecurityLevel.ANY);
+    storage.encrypt("other", "user", "token", SecurityLevel.ANY);
+
+    // THEN:
+    verify(keyStore, times(2)).getCertificate("service");
+    verify(keyStore, times(2)).getCertificate("other");
+  }
+
+  /** Storage with real RSA cipher and mocked keystore. */
+  @NonNull
+  private static CipherStorageKeystoreRsaEcb newStorage(@NonNull final KeyStore keyStore) throws Exception {
+    final CipherStorageKeystoreRsaEcb storage = new CipherStorageKeystoreRsaEcb();
+    storage.setCipher(Cipher.getInstance(CipherStorageKeystoreRsaEcb.TRANSFORMATION_RSA_ECB_PKCS1))
+      .setKeyStore(keyStore);
+
+    return storage;
+  }
+
+  /** Keystore that knows any alias and returns certificate of a software key pair. */
+  @NonNull
+  private KeyStore mockKeyStore() throws Exception {
+    // software keys and ciphers are needed, not the fake keystore provider
+    Security.removeProvider(FakeProvider.NAME);
+
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(CipherStorageKeystoreRsaEcb.ENCRYPTION_KEY_SIZE);
+    final KeyPair keys = generator.generateKeyPair();
+
+    final KeyStore keyStore = mock(KeyStore.class);
+    final Certificate certificate = mock(Certificate.class);
+
+    when(certificate.getPublicKey()).thenReturn(keys.getPublic());
+    when(keyStore.containsAlias(anyString())).thenReturn(true);
+    when(keyStore.getCertificate(anyString())).thenReturn(certificate);
+
+    return keyStore;
+  }
+
 }
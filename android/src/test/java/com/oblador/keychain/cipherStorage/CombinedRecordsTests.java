@@ -0,0 +1,208 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionContext;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretBytes;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretChars;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class CombinedRecordsTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  private static final String PASSWORD = "\u043f\u0430\u0440\u043e\u043b\u044c \ud83d\udd11";
+
+  /** Keystore that knows any alias and returns the same software key. */
+  private static KeyStore mockKeyStore() throws Exception {
+    final byte[] raw = new byte[32];
+    new SecureRandom().nextBytes(raw);
+
+    final KeyStore keyStore = mock(KeyStore.class);
+    when(keyStore.containsAlias(anyString())).thenReturn(true);
+    when(keyStore.getKey(anyString(), isNull())).thenReturn(new SecretKeySpec(raw, "AES"));
+
+    return keyStore;
+  }
+
+  /** AES CBC storage over software key, key info is not available outside of AndroidKeyStore. */
+  private static CipherStorageKeystoreAesCbc aesCbc() throws Exception {
+    final CipherStorageKeystoreAesCbc instance = new CipherStorageKeystoreAesCbc() {
+      @Override
+      protected SecurityLevel getSecurityLevel(final Key key) {
+        return SecurityLevel.SECURE_SOFTWARE;
+      }
+    };
+    // JVM providers know PKCS7 padding as PKCS5
+    instance.setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding"));
+    instance.setKeyStore(mockKeyStore());
+
+    return instance;
+  }
+
+  /** AES GCM storage over software key. */
+  private static CipherStorageKeystoreAesGcm aesGcm() throws Exception {
+    final CipherStorageKeystoreAesGcm instance = new CipherStorageKeystoreAesGcm() {
+      @Override
+      protected SecurityLevel getSecurityLevel(final Key key) {
+        return SecurityLevel.SECURE_SOFTWARE;
+      }
+    };
+    instance.setCipher(Cipher.getInstance(CipherStorageKeystoreAesGcm.ENCRYPTION_TRANSFORMATION));
+    instance.setKeyStore(mockKeyStore());
+
+    return instance;
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testCombinedRoundTrip_api23() throws Exception {
+    for (CipherStorageBase storage : new CipherStorageBase[]{aesCbc(), aesGcm()}) {
+      // GIVEN:
+      storage.setCombinedRecords(true);
+
+      // WHEN:
+      final EncryptionResult encrypted = storage.encrypt("service", "user", PASSWORD, SecurityLevel.ANY);
+      final DecryptionResult strings = storage.decrypt("service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+      final SecretBytes bytes = storage.decryptToBytes("service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+      final SecretChars chars = storage.decryptToChars("service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+      // THEN: both fields in the password slot
+      assertThat(CipherStorageBase.isCombinedRecord(encrypted.username), is(true));
+      assertThat(strings.username, is("user"));
+      assertThat(strings.password, is(PASSWORD));
+      assertThat(strings.getSecurityLevel(), is(SecurityLevel.SECURE_SOFTWARE));
+      assertThat(bytes.username, is("user".getBytes(CipherStorageBase.UTF8)));
+      assertThat(bytes.password, is(PASSWORD.getBytes(CipherStorageBase.UTF8)));
+      assertThat(new String(chars.username), is("user"));
+      assertThat(new String(chars.password), is(PASSWORD));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testEmptyUsername_api23() throws Exception {
+    for (CipherStorageBase storage : new CipherStorageBase[]{aesCbc(), aesGcm()}) {
+      // GIVEN:
+      storage.setCombinedRecords(true);
+
+      // WHEN:
+      final EncryptionResult encrypted = storage.encrypt("service", "", "", SecurityLevel.ANY);
+      final DecryptionResult decrypted = storage.decrypt("service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+      // THEN:
+      assertThat(decrypted.username, is(""));
+      assertThat(decrypted.password, is(""));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testSplitRecordsStayReadable_api23() throws Exception {
+    for (CipherStorageBase storage : new CipherStorageBase[]{aesCbc(), aesGcm()}) {
+      // GIVEN: entry written before the mode was switched on
+      final EncryptionResult split = storage.encrypt("service", "user", PASSWORD, SecurityLevel.ANY);
+
+      // WHEN:
+      storage.setCombinedRecords(true);
+      final DecryptionResult decrypted = storage.decrypt("service", split.username, split.password, SecurityLevel.ANY);
+
+      // THEN:
+      assertThat(CipherStorageBase.isCombinedRecord(split.username), is(false));
+      assertThat(decrypted.username, is("user"));
+      assertThat(decrypted.password, is(PASSWORD));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testOneCipherOperationPerEntry_api23() throws Exception {
+    // GIVEN:
+    final CipherStorageKeystoreAesCbc storage = aesCbc();
+    storage.setCombinedRecords(true);
+
+    // WHEN:
+    final EncryptionResult encrypted = storage.encrypt("service", "user", "secret", SecurityLevel.ANY);
+
+    // THEN: one IV and one padded block for header + both fields
+    assertThat(encrypted.username.length, is(0));
+    assertThat(encrypted.password.length, is(CipherStorageBase.IV.IV_LENGTH + 16));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testRsaCombinedAndOversized_api23() throws Exception {
+    // GIVEN:
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(CipherStorageKeystoreRsaEcb.ENCRYPTION_KEY_SIZE);
+    final KeyPair keys = generator.generateKeyPair();
+
+    final CipherStorageKeystoreRsaEcb storage = new CipherStorageKeystoreRsaEcb();
+    storage.setCipher(Cipher.getInstance(CipherStorageKeystoreRsaEcb.TRANSFORMATION_RSA_ECB_PKCS1));
+    storage.setCombinedRecords(true);
+
+    final StringBuilder token = new StringBuilder();
+    for (int i = 0; i < 200; i++) token.append((char) ('a' + i % 26));
+    final String login = token.substring(0, 100);
+
+    // WHEN:
+    final EncryptionResult small = storage.encryptCredentials(keys.getPublic(), "user", "secret");
+    final EncryptionResult large = storage.encryptCredentials(keys.getPublic(), login, token.toString());
+
+    final DecryptionResult smallDecrypted = storage.decrypt(
+      new DecryptionContext("service", keys.getPrivate(), small.password, small.username));
+    final DecryptionResult largeDecrypted = storage.decrypt(
+      new DecryptionContext("service", keys.getPrivate(), large.password, large.username));
+
+    // THEN: one private key operation for the short entry, fields of the long one fit RSA block only separately
+    assertThat(CipherStorageBase.isCombinedRecord(small.username), is(true));
+    assertThat(CipherStorageBase.isCombinedRecord(large.username), is(false));
+    assertThat(smallDecrypted.username, is("user"));
+    assertThat(smallDecrypted.password, is("secret"));
+    assertThat(largeDecrypted.username, is(login));
+    assertThat(largeDecrypted.password, is(token.toString()));
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorruptedHeader() throws Exception {
+    // GIVEN: username size bigger than the record
+    final byte[] plain = ByteBuffer.allocate(8).putInt(5).array();
+
+    // WHEN:
+    CipherStorageBase.unpackRecord(plain, plain.length, SecurityLevel.ANY);
+  }
+}
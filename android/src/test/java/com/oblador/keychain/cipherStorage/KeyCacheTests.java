@@ -0,0 +1,125 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import com.oblador.keychain.SecurityLevel;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class KeyCacheTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  private static Key key() {
+    return new SecretKeySpec(new byte[16], "AES");
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() throws Exception {
+    // GIVEN:
+    final KeyCache cache = new KeyCache(2);
+    final Key first = key();
+    cache.put("first", first);
+    cache.put("second", key());
+
+    // WHEN: first is touched, so second becomes the eldest
+    cache.get("first");
+    cache.put("third", key());
+
+    // THEN:
+    assertThat(cache.size(), is(2));
+    assertThat(cache.get("first"), sameInstance(first));
+    assertThat(cache.get("second"), nullValue());
+  }
+
+  @Test
+  public void testHitAndMissCounters() throws Exception {
+    // GIVEN:
+    final KeyCache cache = new KeyCache();
+    cache.put("service", key());
+
+    // WHEN:
+    cache.get("service");
+    cache.get("service");
+    cache.get("other");
+
+    // THEN:
+    assertThat(cache.getHits(), is(2L));
+    assertThat(cache.getMisses(), is(1L));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testRepeatedReadsSkipKeystore_api23() throws Exception {
+    // GIVEN:
+    final KeyStore keyStore = mock(KeyStore.class);
+    final Key key = key();
+    when(keyStore.containsAlias("service")).thenReturn(true);
+    when(keyStore.getKey(eq("service"), isNull())).thenReturn(key);
+
+    final CipherStorageKeystoreAesCbc storage = new CipherStorageKeystoreAesCbc();
+    storage.setKeyStore(keyStore);
+
+    // WHEN:
+    for (int i = 0; i < 5; i++) {
+      assertThat(storage.extractGeneratedKey("service", SecurityLevel.ANY, new AtomicInteger(1)), sameInstance(key));
+    }
+
+    // THEN: only the first read went to keystore
+    verify(keyStore, times(1)).getKey(eq("service"), isNull());
+    assertThat(storage.getKeyCache().getHits(), is(4L));
+    assertThat(storage.getKeyCache().getMisses(), is(1L));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testRemoveKeyAndTrimInvalidateCache_api23() throws Exception {
+    // GIVEN:
+    final KeyStore keyStore = mock(KeyStore.class);
+    when(keyStore.containsAlias("service")).thenReturn(true);
+    when(keyStore.getKey(eq("service"), isNull())).thenReturn(key());
+
+    final CipherStorageKeystoreAesCbc storage = new CipherStorageKeystoreAesCbc();
+    storage.setKeyStore(keyStore);
+    storage.extractGeneratedKey("service", SecurityLevel.ANY, new AtomicInteger(1));
+
+    // WHEN:
+    storage.removeKey("service");
+    storage.extractGeneratedKey("service", SecurityLevel.ANY, new AtomicInteger(1));
+    storage.trimMemory();
+    storage.extractGeneratedKey("service", SecurityLevel.ANY, new AtomicInteger(1));
+
+    // THEN:
+    verify(keyStore).deleteEntry("service");
+    verify(keyStore, times(3)).getKey(eq("service"), isNull());
+  }
+}
@@ -0,0 +1,269 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.content.Context;
+import android.os.Build;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.exceptions.KeyStoreAccessException;
+
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Cipher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class KeyPoolTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  /** Run refill in the calling thread. */
+  private static final Executor DIRECT = Runnable::run;
+
+  @After
+  public void tearDown() throws Exception {
+    getContext().getSharedPreferences(KeyPool.KEYCHAIN_KEY_POOL, Context.MODE_PRIVATE).edit().clear().commit();
+  }
+
+  @NonNull
+  private static Context getContext() {
+    return ApplicationProvider.getApplicationContext();
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    // GIVEN:
+    final RecordingGenerator generator = new RecordingGenerator();
+    final KeyPool pool = new KeyPool(getContext(), generator, DIRECT);
+
+    // WHEN:
+    pool.refill();
+
+    // THEN:
+    assertThat(pool.getTargetDepth(), is(KeyPool.DEFAULT_DEPTH));
+    assertThat(pool.getDepth(), is(0));
+    assertThat(pool.take("service"), nullValue());
+    assertThat(generator.aliases, hasSize(0));
+  }
+
+  @Test
+  public void testRefillUpToTargetDepth() throws Exception {
+    // GIVEN:
+    final RecordingGenerator generator = new RecordingGenerator();
+    final KeyPool pool = new KeyPool(getContext(), generator, DIRECT);
+
+    // WHEN:
+    pool.setTargetDepth(3);
+
+    // THEN:
+    assertThat(pool.getDepth(), is(3));
+    assertThat(generator.aliases, hasSize(3));
+    assertThat(generator.aliases.get(0), startsWith(KeyPool.POOL_ALIAS_PREFIX));
+  }
+
+  @Test
+  public void testTakeAssignsKeyAndRefills() throws Exception {
+    // GIVEN:
+    final RecordingGenerator generator = new RecordingGenerator();
+    final KeyPool pool = new KeyPool(getContext(), generator, DIRECT);
+    pool.setTargetDepth(2);
+
+    // WHEN:
+    final String pooled = pool.take("service");
+
+    // THEN: key was generated before the first use, pool refilled in background
+    assertThat(pooled, is(generator.aliases.get(0)));
+    assertThat(pool.resolve("service"), is(pooled));
+    assertThat(pool.getDepth(), is(2));
+    assertThat(generator.aliases, hasSize(3));
+  }
+
+  @Test
+  public void testAssignmentsAndSpareKeysSurviveRestart() throws Exception {
+    // GIVEN:
+    final KeyPool pool = new KeyPool(getContext(), new RecordingGenerator(), DIRECT);
+    pool.setTargetDepth(2);
+    final String pooled = pool.take("service");
+
+    // WHEN:
+    final RecordingGenerator generator = new RecordingGenerator();
+    final KeyPool restarted = new KeyPool(getContext(), generator, DIRECT);
+    restarted.setTargetDepth(2);
+
+    // THEN: existing keys reused, nothing generated
+    assertThat(restarted.resolve("service"), is(pooled));
+    assertThat(restarted.getDepth(), is(2));
+    assertThat(generator.aliases, hasSize(0));
+  }
+
+  @Test
+  public void testReleaseDropsAssignment() throws Exception {
+    // GIVEN:
+    final KeyPool pool = new KeyPool(getContext(), new RecordingGenerator(), DIRECT);
+    pool.setTargetDepth(1);
+    final String pooled = pool.take("service");
+
+    // WHEN:
+    final String released = pool.release("service");
+
+    // THEN:
+    assertThat(released, is(pooled));
+    assertThat(pool.resolve("service"), nullValue());
+    assertThat(pool.release("service"), nullValue());
+  }
+
+  @Test
+  public void testGenerationFailureStopsRefill() throws Exception {
+    // GIVEN:
+    final RecordingGenerator generator = new RecordingGenerator();
+    generator.failAfter = 1;
+    final KeyPool pool = new KeyPool(getContext(), generator, DIRECT);
+
+    // WHEN:
+    pool.setTargetDepth(3);
+
+    // THEN: pool keeps what was generated, next refill tries again
+    assertThat(pool.getDepth(), is(1));
+    assertThat(pool.take("service"), notNullValue());
+  }
+
+  @Test
+  public void testFlushReplacesSpareKeys() throws Exception {
+    // GIVEN:
+    final RecordingGenerator generator = new RecordingGenerator();
+    final KeyStore keyStore = mock(KeyStore.class);
+    generator.setKeyStore(keyStore);
+    final KeyPool pool = new KeyPool(getContext(), generator, DIRECT);
+    pool.setTargetDepth(2);
+    final String assigned = pool.take("service");
+
+    // WHEN: device lock or biometry changed
+    pool.flush();
+
+    // THEN: spare keys removed from keystore and generated again, assignment is kept
+    verify(keyStore).deleteEntry(generator.aliases.get(1));
+    verify(keyStore).deleteEntry(generator.aliases.get(2));
+    verify(keyStore, never()).deleteEntry(assigned);
+    assertThat(pool.resolve("service"), is(assigned));
+    assertThat(pool.getDepth(), is(2));
+    assertThat(generator.aliases, hasSize(5));
+    assertThat(new KeyPool(getContext(), generator, DIRECT).getDepth(), is(2));
+  }
+
+  @Test
+  public void testShutdownStopsRefill() throws Exception {
+    // GIVEN:
+    final RecordingGenerator generator = new RecordingGenerator();
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final KeyPool pool = new KeyPool(getContext(), generator, executor);
+
+    // WHEN:
+    pool.shutdown();
+    pool.setTargetDepth(2);
+    pool.flush();
+
+    // THEN:
+    assertThat(executor.isShutdown(), is(true));
+    assertThat(pool.getDepth(), is(0));
+    assertThat(generator.aliases, hasSize(0));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testInvalidatedSpareKeySkipped_api23() throws Exception {
+    // GIVEN: two spare keys, the first one invalidated by enrollment change while waiting in the pool
+    final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(CipherStorageKeystoreRsaEcb.ENCRYPTION_KEY_SIZE);
+    final KeyPair keys = keyPairGenerator.generateKeyPair();
+
+    final RecordingGenerator storage = new RecordingGenerator();
+    final KeyPool pool = new KeyPool(getContext(), storage, DIRECT);
+    storage.setKeyPool(pool);
+    pool.setTargetDepth(2);
+
+    final String invalidated = storage.aliases.get(0);
+    final String valid = storage.aliases.get(1);
+    final PrivateKey invalidatedKey = mock(PrivateKey.class);
+    final Certificate certificate = mock(Certificate.class);
+    final KeyStore keyStore = mock(KeyStore.class);
+    final Cipher cipher = spy(Cipher.getInstance(CipherStorageKeystoreRsaEcb.TRANSFORMATION_RSA_ECB_PKCS1));
+
+    doThrow(new KeyPermanentlyInvalidatedException()).when(cipher).init(Cipher.DECRYPT_MODE, invalidatedKey);
+    when(certificate.getPublicKey()).thenReturn(keys.getPublic());
+    when(keyStore.containsAlias(invalidated)).thenReturn(true);
+    when(keyStore.containsAlias(valid)).thenReturn(true);
+    when(keyStore.getKey(invalidated, null)).thenReturn(invalidatedKey);
+    when(keyStore.getKey(valid, null)).thenReturn(keys.getPrivate());
+    when(keyStore.getCertificate(valid)).thenReturn(certificate);
+    storage.setCipher(cipher).setKeyStore(keyStore);
+
+    // WHEN:
+    storage.encrypt("service", "user", "password", SecurityLevel.ANY);
+
+    // THEN: invalidated key dropped, next spare key assigned
+    verify(keyStore).deleteEntry(invalidated);
+    assertThat(pool.resolve("service"), is(valid));
+    assertThat(pool.getDepth(), is(2));
+  }
+
+  /** Records requested aliases instead of talking to keystore. */
+  private static final class RecordingGenerator extends CipherStorageKeystoreRsaEcb {
+    final List<String> aliases = new ArrayList<>();
+    int failAfter = Integer.MAX_VALUE;
+
+    @Override
+    public void generateKeyAndStoreUnderAlias(@NonNull final String alias,
+                                              @NonNull final SecurityLevel requiredLevel)
+      throws GeneralSecurityException {
+      if (aliases.size() >= failAfter) throw new KeyStoreAccessException("Keystore is busy");
+
+      aliases.add(alias);
+    }
+
+    /** Software keys of the test have no keystore key info. */
+    @Override
+    protected boolean validateKeySecurityLevel(@NonNull final SecurityLevel level, @NonNull final Key key) {
+      return true;
+    }
+  }
+}
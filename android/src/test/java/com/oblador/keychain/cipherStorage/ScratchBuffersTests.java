@@ -0,0 +1,116 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import org.junit.Assume;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.security.Key;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+@RunWith(RobolectricTestRunner.class)
+public class ScratchBuffersTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  /** Upper limit of allocations per encrypt + decrypt round trip. Stream based path used 16Kb copy buffer alone. */
+  private static final long MAX_BYTES_PER_ROUND_TRIP = 4 * 1024;
+
+  private static Key softwareKey() {
+    final byte[] raw = new byte[32];
+    new SecureRandom().nextBytes(raw);
+
+    return new SecretKeySpec(raw, "AES");
+  }
+
+  private static CipherStorageKeystoreAesCbc storage() throws Exception {
+    final CipherStorageKeystoreAesCbc instance = new CipherStorageKeystoreAesCbc();
+    // JVM providers know PKCS7 padding as PKCS5
+    instance.setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding"));
+
+    return instance;
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testRoundTrip_api23() throws Exception {
+    // GIVEN: multi-byte characters and value that does not fit into initial scratch buffer
+    final CipherStorageKeystoreAesCbc instance = storage();
+    final Key key = softwareKey();
+    final StringBuilder big = new StringBuilder();
+    for (int i = 0; i < ScratchBuffers.DEFAULT_SIZE; i++) big.append("\u043a\u043b\u044e\u0447");
+
+    // WHEN:
+    final byte[] small = instance.encryptString(key, "\u043f\u0430\u0440\u043e\u043b\u044c \ud83d\udd11");
+    final byte[] large = instance.encryptString(key, big.toString());
+
+    // THEN: IV + exactly one padded block sequence
+    assertThat(small.length, is(CipherStorageBase.IV.IV_LENGTH + 32));
+    assertThat(instance.decryptBytes(key, small), is("\u043f\u0430\u0440\u043e\u043b\u044c \ud83d\udd11"));
+    assertThat(instance.decryptBytes(key, large), is(big.toString()));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testScratchWipedAfterUse_api23() throws Exception {
+    // GIVEN:
+    final CipherStorageKeystoreAesCbc instance = storage();
+    final Key key = softwareKey();
+
+    // WHEN:
+    final byte[] encrypted = instance.encryptString(key, "secret");
+    instance.decryptBytes(key, encrypted);
+
+    // THEN: no plain text left in the thread buffer
+    final byte[] data = instance.scratchBuffers.get().data(0);
+    for (byte b : data) assertThat(b, is((byte) 0));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testAllocationsPerOperation_api23() throws Exception {
+    final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    // GIVEN:
+    final CipherStorageKeystoreAesCbc instance = storage();
+    final Key key = softwareKey();
+    final String value = "eyJhbGciOiJIUzI1NiJ9.short-lived-token";
+    final int iterations = 2_000;
+
+    // warm up JIT, providers and scratch buffers
+    for (int i = 0; i < iterations; i++) instance.decryptBytes(key, instance.encryptString(key, value));
+
+    // WHEN:
+    final long threadId = Thread.currentThread().getId();
+    final long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < iterations; i++) instance.decryptBytes(key, instance.encryptString(key, value));
+    final long perRoundTrip = (threads.getThreadAllocatedBytes(threadId) - before) / iterations;
+
+    // THEN:
+    assertThat(perRoundTrip, lessThan(MAX_BYTES_PER_ROUND_TRIP));
+  }
+}
@@ -0,0 +1,156 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretBytes;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretChars;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class SecretCredentialsTests {
+  /** Cancel test after 10 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(10);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  private static final String PASSWORD = "\u043f\u0430\u0440\u043e\u043b\u044c \ud83d\udd11";
+
+  /** Keystore that knows any alias and returns the same software key. */
+  private static KeyStore mockKeyStore() throws Exception {
+    final byte[] raw = new byte[32];
+    new SecureRandom().nextBytes(raw);
+
+    final KeyStore keyStore = mock(KeyStore.class);
+    when(keyStore.containsAlias(anyString())).thenReturn(true);
+    when(keyStore.getKey(anyString(), isNull())).thenReturn(new SecretKeySpec(raw, "AES"));
+
+    return keyStore;
+  }
+
+  /** AES CBC storage over software key, key info is not available outside of AndroidKeyStore. */
+  private static CipherStorageKeystoreAesCbc aesCbc() throws Exception {
+    final CipherStorageKeystoreAesCbc instance = new CipherStorageKeystoreAesCbc() {
+      @Override
+      protected SecurityLevel getSecurityLevel(final Key key) {
+        return SecurityLevel.SECURE_SOFTWARE;
+      }
+    };
+    // JVM providers know PKCS7 padding as PKCS5
+    instance.setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding"));
+    instance.setKeyStore(mockKeyStore());
+
+    return instance;
+  }
+
+  /** AES GCM storage over software key. */
+  private static CipherStorageKeystoreAesGcm aesGcm() throws Exception {
+    final CipherStorageKeystoreAesGcm instance = new CipherStorageKeystoreAesGcm() {
+      @Override
+      protected SecurityLevel getSecurityLevel(final Key key) {
+        return SecurityLevel.SECURE_SOFTWARE;
+      }
+    };
+    instance.setCipher(Cipher.getInstance(CipherStorageKeystoreAesGcm.ENCRYPTION_TRANSFORMATION));
+    instance.setKeyStore(mockKeyStore());
+
+    return instance;
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testCharsRoundTrip_api23() throws Exception {
+    for (CipherStorage storage : new CipherStorage[]{aesCbc(), aesGcm()}) {
+      // GIVEN:
+      final char[] username = "user".toCharArray();
+      final char[] password = PASSWORD.toCharArray();
+
+      // WHEN:
+      final EncryptionResult encrypted = storage.encrypt("service", username, password, SecurityLevel.ANY);
+      final SecretChars decrypted = storage.decryptToChars("service", encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+      // THEN: caller arrays are not touched, result is exactly sized
+      assertThat(new String(username), is("user"));
+      assertThat(new String(password), is(PASSWORD));
+      assertThat(new String(decrypted.username), is("user"));
+      assertThat(new String(decrypted.password), is(PASSWORD));
+      assertThat(decrypted.password.length, is(PASSWORD.length()));
+      assertThat(decrypted.getSecurityLevel(), is(SecurityLevel.SECURE_SOFTWARE));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testBytesCompatibleWithStrings_api23() throws Exception {
+    for (CipherStorage storage : new CipherStorage[]{aesCbc(), aesGcm()}) {
+      // GIVEN:
+      final byte[] password = PASSWORD.getBytes(CipherStorageBase.UTF8);
+
+      // WHEN: written by bytes API, read by strings API and vice versa
+      final EncryptionResult bytes = storage.encrypt("service", "user".getBytes(CipherStorageBase.UTF8), password, SecurityLevel.ANY);
+      final DecryptionResult asStrings = storage.decrypt("service", bytes.username, bytes.password, SecurityLevel.ANY);
+
+      final EncryptionResult strings = storage.encrypt("service", "user", PASSWORD, SecurityLevel.ANY);
+      final SecretBytes asBytes = storage.decryptToBytes("service", strings.username, strings.password, SecurityLevel.ANY);
+
+      // THEN:
+      assertThat(asStrings.username, is("user"));
+      assertThat(asStrings.password, is(PASSWORD));
+      assertThat(asBytes.username, is("user".getBytes(CipherStorageBase.UTF8)));
+      assertThat(asBytes.password, is(password));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testCloseWipesSecrets_api23() throws Exception {
+    // GIVEN:
+    final CipherStorageKeystoreAesCbc storage = aesCbc();
+    final EncryptionResult encrypted = storage.encrypt("service", "user", PASSWORD, SecurityLevel.ANY);
+    final SecretChars chars;
+    final SecretBytes bytes;
+
+    // WHEN:
+    try (SecretChars secret = storage.decryptToChars("service", encrypted.username, encrypted.password, SecurityLevel.ANY)) {
+      chars = secret;
+      assertThat(new String(secret.password), is(PASSWORD));
+    }
+
+    try (SecretBytes secret = storage.decryptToBytes("service", encrypted.username, encrypted.password, SecurityLevel.ANY)) {
+      bytes = secret;
+    }
+
+    // THEN: nothing left in the result and in the thread scratch buffer
+    for (char c : chars.username) assertThat(c, is('\0'));
+    for (char c : chars.password) assertThat(c, is('\0'));
+    for (byte b : bytes.username) assertThat(b, is((byte) 0));
+    for (byte b : bytes.password) assertThat(b, is((byte) 0));
+    for (byte b : storage.scratchBuffers.get().data(0)) assertThat(b, is((byte) 0));
+  }
+}
@@ -0,0 +1,169 @@
+package com.oblador.keychain.decryptionHandler;
+
+import android.os.Build;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import androidx.annotation.NonNull;
+import androidx.biometric.BiometricPrompt;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.cipherStorage.CipherStorageBase;
+import com.oblador.keychain.cipherStorage.CipherStorageKeystoreRsaEcb;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatchAuthenticationTest {
+
+  /** Batch with prompt that ends as configured, no UI involved. */
+  private static class FakePromptBatch extends BatchAuthentication {
+    final List<CipherStorage.DecryptionContext> prompts = new ArrayList<>();
+    final boolean passed;
+
+    FakePromptBatch(final boolean passed) {
+      super(mock(ReactApplicationContext.class), mock(BiometricPrompt.PromptInfo.class), Runnable::run);
+      this.passed = passed;
+    }
+
+    @NonNull
+    @Override
+    protected DecryptionResultHandler getPromptHandler(@NonNull final CipherStorage storage) {
+      return new DecryptionResultHandlerNonInteractive() {
+        @NonNull
+        @Override
+        public ResultFuture<CipherStorage.DecryptionResult> askAccessPermissions(@NonNull final CipherStorage.DecryptionContext context) {
+          prompts.add(context);
+
+          try {
+            if (!passed) throw new CryptoFailedException("code: 13, msg: Cancel");
+            onDecrypt(((CipherStorageBase) storage).decrypt(context), null);
+          } catch (Throwable fail) {
+            onDecrypt(null, fail);
+          }
+
+          return getFuture();
+        }
+      };
+    }
+  }
+
+  private static CipherStorage.DecryptionContext context(final String alias) {
+    return new CipherStorage.DecryptionContext(alias, null, alias.getBytes(), alias.getBytes());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testOnePromptForAllReads() throws Exception {
+    // GIVEN: three reads that need authentication
+    final CipherStorageBase storage = mock(CipherStorageKeystoreRsaEcb.class);
+    when(storage.isBiometrySupported()).thenReturn(true);
+
+    final FakePromptBatch batch = new FakePromptBatch(true);
+    final List<DecryptionResultHandler> handlers = new ArrayList<>();
+
+    for (String alias : new String[]{"first", "second", "third"}) {
+      final CipherStorage.DecryptionContext context = context(alias);
+      when(storage.decrypt(context)).thenReturn(new CipherStorage.DecryptionResult(alias, alias));
+
+      final DecryptionResultHandler handler = batch.getHandler(storage);
+      handler.askAccessPermissions(context);
+      handlers.add(handler);
+    }
+
+    // WHEN:
+    batch.authenticate();
+
+    // THEN:
+    assertThat(batch.prompts.size(), is(1));
+    assertThat(handlers.get(0).getResult().password, is("first"));
+    assertThat(handlers.get(1).getResult().password, is("second"));
+    assertThat(handlers.get(2).getResult().password, is("third"));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testNextPromptWhenWindowIsOver() throws Exception {
+    // GIVEN: validity window is over before the second read is decrypted
+    final CipherStorageBase storage = mock(CipherStorageKeystoreRsaEcb.class);
+    when(storage.isBiometrySupported()).thenReturn(true);
+
+    final CipherStorage.DecryptionContext first = context("first");
+    final CipherStorage.DecryptionContext second = context("second");
+    when(storage.decrypt(first)).thenReturn(new CipherStorage.DecryptionResult("first", "first"));
+    when(storage.decrypt(second))
+      .thenThrow(new UserNotAuthenticatedException())
+      .thenReturn(new CipherStorage.DecryptionResult("second", "second"));
+
+    final FakePromptBatch batch = new FakePromptBatch(true);
+    final DecryptionResultHandler firstHandler = batch.getHandler(storage);
+    final DecryptionResultHandler secondHandler = batch.getHandler(storage);
+    firstHandler.askAccessPermissions(first);
+    secondHandler.askAccessPermissions(second);
+
+    // WHEN:
+    batch.authenticate();
+
+    // THEN:
+    assertThat(batch.prompts.size(), is(2));
+    assertThat(batch.getPendingCount(), is(0));
+    assertThat(firstHandler.getResult().password, is("first"));
+    assertThat(secondHandler.getResult().password, is("second"));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testCancelledPromptFailsAllReads() throws Exception {
+    // GIVEN:
+    final CipherStorageBase storage = mock(CipherStorageKeystoreRsaEcb.class);
+    when(storage.isBiometrySupported()).thenReturn(true);
+
+    final CipherStorage.DecryptionContext first = context("first");
+    final CipherStorage.DecryptionContext second = context("second");
+    when(storage.decrypt(second)).thenThrow(new UserNotAuthenticatedException());
+
+    final FakePromptBatch batch = new FakePromptBatch(false);
+    final DecryptionResultHandler firstHandler = batch.getHandler(storage);
+    final DecryptionResultHandler secondHandler = batch.getHandler(storage);
+    firstHandler.askAccessPermissions(first);
+    secondHandler.askAccessPermissions(second);
+
+    // WHEN:
+    batch.authenticate();
+
+    // THEN: no second prompt after cancel
+    assertThat(batch.prompts.size(), is(1));
+    assertThat(firstHandler.getResult(), is(nullValue()));
+    assertThat(firstHandler.getError(), Matchers.instanceOf(CryptoFailedException.class));
+    assertThat(secondHandler.getResult(), is(nullValue()));
+    assertThat(secondHandler.getError(), Matchers.instanceOf(CryptoFailedException.class));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testNonBiometricReadsDoNotWait() {
+    // GIVEN:
+    final CipherStorage storage = mock(CipherStorageBase.class);
+    when(storage.isBiometrySupported()).thenReturn(false);
+
+    // WHEN:
+    final DecryptionResultHandler handler = new FakePromptBatch(true).getHandler(storage);
+
+    // THEN:
+    assertThat(handler, Matchers.instanceOf(DecryptionResultHandlerNonInteractive.class));
+  }
+}
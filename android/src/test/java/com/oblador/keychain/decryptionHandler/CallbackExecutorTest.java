@@ -0,0 +1,95 @@
+package com.oblador.keychain.decryptionHandler;
+
+import android.os.Build;
+
+import androidx.biometric.BiometricPrompt;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.cipherStorage.CipherStorageBase;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class CallbackExecutorTest {
+
+  /** Count live threads that deliver prompt callbacks. */
+  private static int countCallbackThreads() {
+    int count = 0;
+
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith(CallbackExecutor.THREAD_NAME)) count++;
+    }
+
+    return count;
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testThreadCountStaysConstant() throws IOException, GeneralSecurityException, InterruptedException {
+    // GIVEN
+    final CipherStorage.DecryptionResult decrypted =
+      new CipherStorage.DecryptionResult("username", "password", SecurityLevel.SECURE_HARDWARE);
+    final CipherStorageBase storage = mock(CipherStorageBase.class);
+    when(storage.decrypt(any(CipherStorage.DecryptionContext.class))).thenReturn(decrypted);
+
+    final ReactApplicationContext mockContext = mock(ReactApplicationContext.class);
+    final BiometricPrompt.PromptInfo promptInfo = mock(BiometricPrompt.PromptInfo.class);
+    final BiometricPrompt.AuthenticationResult authResult = mock(BiometricPrompt.AuthenticationResult.class);
+    final CallbackExecutor executor = new CallbackExecutor();
+    final int before = countCallbackThreads();
+    final int reads = 1000;
+    final CountDownLatch done = new CountDownLatch(reads);
+
+    // WHEN: prompt delivers success through the handler executor, same as BiometricPrompt does
+    for (int i = 0; i < reads; i++) {
+      final DecryptionResultHandlerInteractiveBiometric handler = (i % 2 == 0)
+        ? new DecryptionResultHandlerInteractiveBiometric(mockContext, storage, promptInfo, executor)
+        : new DecryptionResultHandlerInteractiveBiometricManualRetry(mockContext, storage, promptInfo, executor);
+      handler.context = mock(CipherStorage.DecryptionContext.class);
+
+      handler.getFuture().whenComplete((result, error) -> {
+        if (result == decrypted) done.countDown();
+      });
+      handler.executor.execute(() -> handler.onAuthenticationSucceeded(authResult));
+    }
+
+    //THEN
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(executor.getCreatedThreadsCount(), is(1));
+    assertThat(countCallbackThreads(), lessThanOrEqualTo(before + 1));
+
+    executor.shutdown();
+  }
+
+  @Test
+  public void testCallbackAfterShutdownIsDelivered() {
+    // GIVEN
+    final CallbackExecutor executor = new CallbackExecutor();
+    final boolean[] called = new boolean[1];
+
+    // WHEN
+    executor.shutdown();
+    executor.execute(() -> called[0] = true);
+
+    //THEN
+    assertThat(executor.isShutdown(), is(true));
+    assertThat(called[0], is(true));
+  }
+}
@@ -151,6 +151,7 @@ public class DecryptionResultHandlerInteractiveBiometricTest {
     final CipherStorageBase storage = mock(CipherStorageKeystoreRsaEcb.class);
     when(storage.decryptBytes(key, username)).thenReturn(decryptedUsername);
     when(storage.decryptBytes(key, password)).thenReturn(decryptedPassword);
+    when(storage.decrypt(decryptionContext)).thenCallRealMethod();
 
     final BiometricPrompt.PromptInfo promptInfo = mock(BiometricPrompt.PromptInfo.class);
     final BiometricPrompt.AuthenticationResult mockAuthResult = mock(BiometricPrompt.AuthenticationResult.class);
@@ -173,4 +174,71 @@ public class DecryptionResultHandlerInteractiveBiometricTest {
     assertThat(result.password, is(decryptedPassword));
     assertThat(spy.getError(), is(nullValue()));
   }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.M)
+  public void testAskAccessPermissionsDoesNotWaitForPrompt() throws IOException, GeneralSecurityException {
+    // GIVEN
+    final String decryptedUsername = "username";
+    final String decryptedPassword = "password";
+    final byte[] username = decryptedUsername.getBytes();
+    final byte[] password = decryptedPassword.getBytes();
+    final CipherStorage.DecryptionContext decryptionContext = new CipherStorage.DecryptionContext(
+      "key", null, password, username);
+
+    final KeyguardManager keyguardManager = mock(KeyguardManager.class);
+    when(keyguardManager.isKeyguardSecure()).thenReturn(true);
+
+    final ReactApplicationContext mockContext = mock(ReactApplicationContext.class);
+    when(mockContext.getSystemService(Context.KEYGUARD_SERVICE)).thenReturn(keyguardManager);
+    when(mockContext.checkSelfPermission(Manifest.permission.USE_FINGERPRINT)).thenReturn(PERMISSION_GRANTED);
+
+    final CipherStorageBase storage = mock(CipherStorageKeystoreRsaEcb.class);
+    when(storage.decryptBytes(null, username)).thenReturn(decryptedUsername);
+    when(storage.decryptBytes(null, password)).thenReturn(decryptedPassword);
+    when(storage.decrypt(decryptionContext)).thenCallRealMethod();
+
+    final BiometricPrompt.PromptInfo promptInfo = mock(BiometricPrompt.PromptInfo.class);
+    final DecryptionResultHandlerInteractiveBiometric spy = spy(
+      new DecryptionResultHandlerInteractiveBiometric(mockContext, storage, promptInfo));
+    // Can't mock BiometricPrompt stack at the moment
+    doNothing().when(spy).startAuthentication();
+
+    final CipherStorage.DecryptionResult[] delivered = new CipherStorage.DecryptionResult[1];
+
+    // WHEN: prompt is shown, caller subscribes and returns
+    final ResultFuture<CipherStorage.DecryptionResult> future = spy.askAccessPermissions(decryptionContext);
+    future.whenComplete((result, error) -> delivered[0] = result);
+
+    //THEN: nothing is delivered till user authenticates
+    assertThat(future.isDone(), is(false));
+    assertThat(delivered[0], is(nullValue()));
+
+    spy.onAuthenticationSucceeded(mock(BiometricPrompt.AuthenticationResult.class));
+
+    assertThat(future.isDone(), is(true));
+    assertThat(delivered[0].username, is(decryptedUsername));
+    assertThat(delivered[0].password, is(decryptedPassword));
+  }
+
+  @Test
+  public void testFutureCompletesOnce() {
+    // GIVEN
+    final ResultFuture<String> future = new ResultFuture<>();
+    final ResultFuture<Integer> length = future.then(String::length);
+    final int[] calls = new int[1];
+    future.whenComplete((result, error) -> calls[0]++);
+
+    // WHEN
+    final boolean first = future.complete("secret", null);
+    final boolean second = future.complete(null, new CryptoFailedException("late"));
+
+    //THEN: late completion is ignored, listeners called once
+    assertThat(first, is(true));
+    assertThat(second, is(false));
+    assertThat(calls[0], is(1));
+    assertThat(future.getResult(), is("secret"));
+    assertThat(future.getError(), is(nullValue()));
+    assertThat(length.getResult(), is(6));
+  }
 }
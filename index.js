@@ -52,6 +52,9 @@ export const STORAGE_TYPE = Object.freeze({
   FB: 'FacebookConceal',
   AES: 'KeystoreAESCBC',
   RSA: 'KeystoreRSAECB',
+  AES_ENVELOPE: 'KeystoreAESEnvelope',
+  AES_GCM: 'KeystoreAESGCM',
+  RSA_HYBRID: 'KeystoreRSAHybrid',
   KC: 'keychain', // <~ iOS only
 });
 
@@ -113,6 +116,18 @@ export type UserCredentials = {|
   ...Result,
 |};
 
+export type CredentialsEntry = {|
+  +username: string,
+  +password: string,
+  +service?: string,
+|};
+
+export type BatchError = {|
+  +service: string,
+  +error: string,
+  +message: string,
+|};
+
 export type SharedWebCredentials = {|
   +server: string,
   ...UserCredentials,
@@ -200,6 +215,67 @@ export function getGenericPassword(
   return RNKeychainManager.getGenericPasswordForOptions(options);
 }
 
+/**
+ * Saves several `username` and `password` combinations at once.
+ * @param {Array} entries Array of `{ username, password, service }` objects.
+ * @param {object} options A keychain options object shared by all entries.
+ * @return {Promise} Resolves to array with `{ service, storage }` or `{ service, error, message }` per entry
+ */
+export function setGenericPasswords(
+  entries: $ReadOnlyArray<CredentialsEntry>,
+  serviceOrOptions?: string | Options
+): Promise<Array<Result | BatchError>> {
+  const options = normalizeOptions(serviceOrOptions);
+
+  if (!RNKeychainManager.setGenericPasswordsForOptions) {
+    return Promise.all(
+      entries.map((entry) =>
+        RNKeychainManager.setGenericPasswordForOptions(
+          { ...options, service: entry.service },
+          entry.username,
+          entry.password
+        ).catch((error) => ({
+          service: entry.service || '',
+          error: error.code,
+          message: error.message,
+        }))
+      )
+    );
+  }
+
+  return RNKeychainManager.setGenericPasswordsForOptions(options, entries);
+}
+
+/**
+ * Fetches login combinations for several services at once.
+ * @param {Array} services Array of service names.
+ * @param {object} options A keychain options object shared by all services.
+ * @return {Promise} Resolves to array with `{ service, username, password, storage }`, `false` or `{ service, error, message }` per service
+ */
+export function getGenericPasswords(
+  services: $ReadOnlyArray<string>,
+  serviceOrOptions?: string | Options
+): Promise<Array<false | UserCredentials | BatchError>> {
+  const options = normalizeOptions(serviceOrOptions);
+
+  if (!RNKeychainManager.getGenericPasswordsForOptions) {
+    return Promise.all(
+      services.map((service) =>
+        RNKeychainManager.getGenericPasswordForOptions({
+          ...options,
+          service,
+        }).catch((error) => ({
+          service,
+          error: error.code,
+          message: error.message,
+        }))
+      )
+    );
+  }
+
+  return RNKeychainManager.getGenericPasswordsForOptions(options, services);
+}
+
 /**
  * Deletes all generic password keychain entries for `service`.
  * @param {object} options An Keychain options object.
@@ -231,6 +307,24 @@ export function hasInternetCredentials(
   return RNKeychainManager.hasInternetCredentialsForServer(server);
 }
 
+/**
+ * Synchronously checks if we have a login combination for `server`. Answered from
+ * in-memory metadata, does not wait for pending writes of the same `server`.
+ * @param {string} server URL to server.
+ * @return {object} `{service, storage}` when entry exists, otherwise `false`
+ */
+export function hasInternetCredentialsSync(server: string): false | Result {
+  if (!RNKeychainManager.hasInternetCredentialsForServerSync) {
+    throw new Error(
+      `hasInternetCredentialsSync() is not supported on ${Platform.OS} yet`
+    );
+  }
+
+  const storage =
+    RNKeychainManager.hasInternetCredentialsForServerSync(server);
+  return storage ? { service: server, storage } : false;
+}
+
 /**
  * Saves the `username` and `password` combination for `server`.
  * @param {string} server URL to server.
@@ -292,6 +386,18 @@ export function getSupportedBiometryType(): Promise<null | SecBiometryType> {
   return RNKeychainManager.getSupportedBiometryType();
 }
 
+/**
+ * Synchronous variant of `getSupportedBiometryType()` answered from cached device capabilities.
+ * @return {string} `BIOMETRY_TYPE` when supported, otherwise `null`
+ */
+export function getSupportedBiometryTypeSync(): null | SecBiometryType {
+  if (!RNKeychainManager.getSupportedBiometryTypeSync) {
+    return null;
+  }
+
+  return RNKeychainManager.getSupportedBiometryTypeSync();
+}
+
 //* IOS ONLY */
 
 /**
@@ -368,6 +474,20 @@ export function getSecurityLevel(
   return RNKeychainManager.getSecurityLevel(options);
 }
 
+/**
+ * (Android only) Synchronous variant of `getSecurityLevel()` answered from cached device capabilities.
+ * @param {object} options A keychain options object.
+ * @return {string} `SECURITY_LEVEL` when supported, otherwise `null`.
+ */
+export function getSecurityLevelSync(
+  options?: Options
+): null | SecMinimumLevel {
+  if (!RNKeychainManager.getSecurityLevelSync) {
+    return null;
+  }
+  return RNKeychainManager.getSecurityLevelSync(options);
+}
+
 /** Refs: https://www.saltycrane.com/cheat-sheets/flow-type/latest/ */
 
 export default {
@@ -379,13 +499,18 @@ export default {
   STORAGE_TYPE,
   SECURITY_RULES,
   getSecurityLevel,
+  getSecurityLevelSync,
   canImplyAuthentication,
   getSupportedBiometryType,
+  getSupportedBiometryTypeSync,
+  hasInternetCredentialsSync,
   setInternetCredentials,
   getInternetCredentials,
   resetInternetCredentials,
   setGenericPassword,
   getGenericPassword,
+  setGenericPasswords,
+  getGenericPasswords,
   getAllGenericPasswordServices,
   resetGenericPassword,
   requestSharedWebCredentials,
@@ -9,6 +9,18 @@ declare module 'react-native-keychain' {
     password: string;
   }
 
+  export interface CredentialsEntry {
+    username: string;
+    password: string;
+    service?: string;
+  }
+
+  export interface BatchError {
+    service: string;
+    error: string;
+    message: string;
+  }
+
   export interface SharedWebCredentials extends UserCredentials {
     server: string;
   }
@@ -56,6 +68,9 @@ declare module 'react-native-keychain' {
     FB = 'FacebookConceal',
     AES = 'KeystoreAESCBC',
     RSA = 'KeystoreRSAECB',
+    AES_ENVELOPE = 'KeystoreAESEnvelope',
+    AES_GCM = 'KeystoreAESGCM',
+    RSA_HYBRID = 'KeystoreRSAHybrid',
     KC = 'keychain',
   }
 
@@ -93,12 +108,24 @@ declare module 'react-native-keychain' {
     options?: Options
   ): Promise<false | UserCredentials>;
 
+  function setGenericPasswords(
+    entries: CredentialsEntry[],
+    options?: Options
+  ): Promise<Array<Result | BatchError>>;
+
+  function getGenericPasswords(
+    services: string[],
+    options?: Options
+  ): Promise<Array<false | UserCredentials | BatchError>>;
+
   function resetGenericPassword(options?: Options): Promise<boolean>;
 
   function getAllGenericPasswordServices(): Promise<string[]>;
 
   function hasInternetCredentials(server: string): Promise<false | Result>;
 
+  function hasInternetCredentialsSync(server: string): false | Result;
+
   function setInternetCredentials(
     server: string,
     username: string,
@@ -120,6 +147,8 @@ declare module 'react-native-keychain' {
     options?: Options
   ): Promise<null | BIOMETRY_TYPE>;
 
+  function getSupportedBiometryTypeSync(): null | BIOMETRY_TYPE;
+
   /** IOS AND VISIONOS ONLY */
 
   function requestSharedWebCredentials(): Promise<false | SharedWebCredentials>;
@@ -135,4 +164,6 @@ declare module 'react-native-keychain' {
   /** ANDROID ONLY */
 
   function getSecurityLevel(options?: Options): Promise<null | SECURITY_LEVEL>;
+
+  function getSecurityLevelSync(options?: Options): null | SECURITY_LEVEL;
 }